@@ -1,260 +1,383 @@
-/*
- * Copyright 2011-2012 Joseph Cloutier
- * 
- * This file is part of TagTime.
- * 
- * TagTime is free software: you can redistribute it and/or modify it
- * under the terms of the GNU General Public License as published by the
- * Free Software Foundation, either version 3 of the License, or (at your
- * option) any later version.
- * 
- * TagTime is distributed in the hope that it will be useful, but WITHOUT
- * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
- * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
- * for more details.
- * 
- * You should have received a copy of the GNU General Public License
- * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
- */
-
-package tagtime;
-
-import java.awt.AWTException;
-import java.awt.MenuItem;
-import java.awt.MenuShortcut;
-import java.awt.PopupMenu;
-import java.awt.SystemTray;
-import java.awt.TrayIcon;
-import java.awt.Window;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.awt.event.KeyEvent;
-import java.awt.event.WindowListener;
-import java.io.IOException;
-import java.util.Date;
-
-import org.quartz.JobBuilder;
-import org.quartz.JobDetail;
-import org.quartz.Scheduler;
-import org.quartz.SchedulerException;
-import org.quartz.TriggerBuilder;
-import org.quartz.impl.StdSchedulerFactory;
-
-import tagtime.beeminder.BeeminderAPI;
-import tagtime.log.Log;
-import tagtime.ping.PingJob;
-import tagtime.quartz.RandomizedScheduleBuilder;
-import tagtime.quartz.RandomizedTrigger;
-import tagtime.settings.SettingType;
-import tagtime.settings.Settings;
-import tagtime.util.HMSTimeFormatter;
-
-/**
- * An instance of TagTime for one particular user. This class contains
- * all user-specific data and handles all scheduling for that user.
- */
-public class TagTime {
-	public static final String TAG_TIME_INSTANCE = "TagTime Instance";
-	
-	public final String username;
-	
-	public final Settings settings;
-	public final Log log;
-	
-	public final TrayIcon trayIcon;
-	
-	protected Scheduler scheduler;
-	protected final JobDetail jobDetail;
-	public final RandomizedTrigger trigger;
-	
-	public final BeeminderAPI api;
-	
-	/**
-	 * Runs an instance of TagTime for the given user.
-	 * @param username The current user's username. This will be used to
-	 *            find the settings file and submit data to Beeminder,
-	 *            and it cannot be changed without creating a new TagTime
-	 *            object.
-	 */
-	public TagTime(String username) throws IOException {
-		this.username = username;
-		
-		//get the settings file
-		settings = Settings.getInstance(username);
-		
-		//create the log file
-		log = new Log(this);
-		
-		api = new BeeminderAPI(this, settings);
-		
-		String rngKey = settings.getStringValue(SettingType.RNG_KEY);
-		
-		try {
-			//define a job
-			jobDetail = JobBuilder.newJob(PingJob.class)
-									.withIdentity(username)
-									.build();
-			
-			//store a reference to this
-			jobDetail.getJobDataMap().put(TAG_TIME_INSTANCE, this);
-			
-			//set up the trigger and schedule for the job
-			RandomizedScheduleBuilder scheduleBuilder =
-						RandomizedScheduleBuilder.repeatMinutelyForever(
-										settings.getIntValue(SettingType.AVERAGE_GAP))
-									.withRNGKey(rngKey)
-									.withMisfireHandlingInstructionIgnoreMisfires();
-			trigger = (RandomizedTrigger) TriggerBuilder.newTrigger()
-									.withIdentity("trigger for " + username,
-												"group for " + username)
-									.withSchedule(scheduleBuilder)
-									.build();
-			
-			scheduler = StdSchedulerFactory.getDefaultScheduler();
-		} catch(SchedulerException e) {
-			e.printStackTrace();
-			throw new ExceptionInInitializerError("Unable to create the " +
-						"scheduler for " + username + ".");
-		}
-		
-		//if the RNG key wasn't defined, save the automatically-generated one
-		if(rngKey == null || rngKey.equals("")) {
-			settings.setValue(SettingType.RNG_KEY, trigger.getRNGKey());
-		}
-		
-		//create a system tray icon
-		if(SystemTray.isSupported()) {
-			//the settings menu item
-			/*ActionListener settingsListener = new ActionListener() {
-				@Override
-				public void actionPerformed(ActionEvent e) {
-					System.out.println("Settings manager not implemented; sorry. " +
-								"Currently, you have to exit TagTime, manually edit " +
-								settings.username + "_settings.txt, and restart TagTime.");
-				}
-			};
-			MenuItem settingsMenuItem = new MenuItem("Settings", new MenuShortcut(KeyEvent.VK_S));
-			settingsMenuItem.addActionListener(settingsListener);*/
-
-			//the "submit now" menu item
-			ActionListener submitListener = new ActionListener() {
-				@Override
-				public void actionPerformed(ActionEvent e) {
-					api.submit();
-				}
-			};
-			MenuItem submitMenuItem = new MenuItem("Submit data now");
-			submitMenuItem.addActionListener(submitListener);
-			
-			//the quit menu item
-			ActionListener quitListener = new ActionListener() {
-				@Override
-				public void actionPerformed(ActionEvent e) {
-					exit();
-				}
-			};
-			MenuItem quitMenuItem = new MenuItem("Quit", new MenuShortcut(KeyEvent.VK_Q));
-			quitMenuItem.addActionListener(quitListener);
-			
-			//create and populate the icon's popup menu
-			PopupMenu popupMenu = new PopupMenu();
-			//popupMenu.add(settingsMenuItem);
-			popupMenu.add(submitMenuItem);
-			popupMenu.add(quitMenuItem);
-			
-			//create the tray icon
-			trayIcon = new TrayIcon(Main.getIconImage(), "TagTime (" + username + ")", popupMenu);
-		} else {
-			throw new ExceptionInInitializerError("System tray not supported; TagTime " +
-						"requires a system tray icon to function.");
-		}
-	}
-	
-	/**
-	 * Registers the system tray icon and starts the application.
-	 */
-	public void start() {
-		if(!SystemTray.isSupported()) {
-			return;
-		}
-		
-		//put the icon in the tray
-		SystemTray systemTray = SystemTray.getSystemTray();
-		try {
-			systemTray.add(trayIcon);
-		} catch(AWTException e) {
-			System.err.println("Could not register the system tray " +
-							"icon for " + username + ".");
-			
-			//No TagTime for you!
-			return;
-		}
-		
-		//start the scheduler
-		try {
-			//if the scheduler has been shut down, we need a new one
-			if(scheduler.isShutdown()) {
-				//untested, but based to the source, this _should_
-				//produce a new scheduler
-				scheduler = StdSchedulerFactory.getDefaultScheduler();
-			}
-			
-			scheduler.start();
-			scheduler.scheduleJob(jobDetail, trigger);
-		} catch(SchedulerException e) {
-			e.printStackTrace();
-			
-			//cancel
-			systemTray.remove(trayIcon);
-			return;
-		}
-		
-		//record all the pings that were missed while TagTime wasn't running
-		Date now = new Date();
-		log.logMissedPings("off", now.getTime());
-		
-		long timeDiff = (now.getTime() - trigger.getFireTimeBefore(now, true).getTime()) / 1000;
-		assert timeDiff > 0;
-		
-		System.out.println("TagTime is watching you, " + username + "!" +
-					" Last ping would've been " +
-					HMSTimeFormatter.format(timeDiff) +
-					" ago.");
-	}
-	
-	/**
-	 * Saves and cleans up everything used by this instance.
-	 */
-	public void exit() {
-		settings.flush();
-		
-		if(trayIcon != null) {
-			//TODO: Figure out why removing one tray icon causes the
-			//second's popup menu to stop working.
-			SystemTray.getSystemTray().remove(trayIcon);
-		}
-		
-		try {
-			scheduler.shutdown();
-		} catch(SchedulerException e) {
-			e.printStackTrace();
-		}
-		
-		Window[] windows = Window.getWindows();
-		for(Window window : windows) {
-			for(WindowListener listener : window.getWindowListeners()) {
-				window.removeWindowListener(listener);
-			}
-			window.dispose();
-		}
-		
-		System.out.println("Bye, " + username + "!");
-		
-		//if this was the final TagTime instance, the application should
-		//exit at this point
-		
-		//unfortunately, quitting from one instance causes the others not
-		//to be able to quit, so exit all of them for now
-		System.exit(0);
-	}
-}
+/*
+ * Copyright 2011-2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime;
+
+import java.awt.AWTException;
+import java.awt.MenuItem;
+import java.awt.MenuShortcut;
+import java.awt.PopupMenu;
+import java.awt.SystemTray;
+import java.awt.TrayIcon;
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import javax.swing.JFileChooser;
+
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.StdSchedulerFactory;
+
+import tagtime.beeminder.BeeminderAPI;
+import tagtime.beeminder.BeeminderGraph;
+import tagtime.log.Log;
+import tagtime.log.PingExporter;
+import tagtime.ping.PingJob;
+import tagtime.quartz.RandomizedScheduleBuilder;
+import tagtime.quartz.RandomizedTrigger;
+import tagtime.settings.SettingType;
+import tagtime.settings.Settings;
+import tagtime.sink.CsvSink;
+import tagtime.sink.JsonLinesSink;
+import tagtime.sink.SinkPipeline;
+import tagtime.sink.WebhookSink;
+import tagtime.util.HMSTimeFormatter;
+
+/**
+ * An instance of TagTime for one particular user. This class contains
+ * all user-specific data and handles all scheduling for that user.
+ */
+public class TagTime {
+	public static final String TAG_TIME_INSTANCE = "TagTime Instance";
+	
+	public final String username;
+	
+	public final Settings settings;
+	public final Log log;
+	
+	public final TrayIcon trayIcon;
+	
+	protected Scheduler scheduler;
+	protected final JobDetail jobDetail;
+	public final RandomizedTrigger trigger;
+	
+	public final BeeminderAPI api;
+	
+	/**
+	 * Sends each change to the log to Beeminder and any other sinks.
+	 */
+	public final SinkPipeline sinks;
+	
+	/**
+	 * Runs an instance of TagTime for the given user.
+	 * @param username The current user's username. This will be used to
+	 *            find the settings file and submit data to Beeminder,
+	 *            and it cannot be changed without creating a new TagTime
+	 *            object.
+	 */
+	public TagTime(String username) throws IOException {
+		this.username = username;
+		
+		//get the settings file
+		settings = Settings.getInstance(username);
+		
+		//create the log file
+		log = new Log(this);
+		
+		api = new BeeminderAPI(this, settings);
+		
+		sinks = new SinkPipeline(this);
+		sinks.addSink(api);
+		if(settings.getBooleanValue(SettingType.CSV_EXPORT)) {
+			sinks.addSink(new CsvSink(username));
+		}
+		if(settings.getBooleanValue(SettingType.JSON_EXPORT)) {
+			sinks.addSink(new JsonLinesSink(username));
+		}
+		String webhookURL = settings.getStringValue(SettingType.WEBHOOK_URL);
+		if(webhookURL != null && webhookURL.length() > 0) {
+			sinks.addSink(new WebhookSink(webhookURL));
+		}
+		log.addListener(sinks);
+		
+		String rngKey = settings.getStringValue(SettingType.RNG_KEY);
+		
+		try {
+			//define a job
+			jobDetail = JobBuilder.newJob(PingJob.class)
+									.withIdentity(username)
+									.build();
+			
+			//store a reference to this
+			jobDetail.getJobDataMap().put(TAG_TIME_INSTANCE, this);
+			
+			//set up the trigger and schedule for the job
+			RandomizedScheduleBuilder scheduleBuilder =
+						RandomizedScheduleBuilder.repeatMinutelyForever(
+										settings.getIntValue(SettingType.AVERAGE_GAP))
+									.withRNGKey(rngKey)
+									.withMisfireHandlingInstructionIgnoreMisfires();
+			trigger = (RandomizedTrigger) TriggerBuilder.newTrigger()
+									.withIdentity("trigger for " + username,
+												"group for " + username)
+									.withSchedule(scheduleBuilder)
+									.build();
+			
+			scheduler = StdSchedulerFactory.getDefaultScheduler();
+		} catch(SchedulerException e) {
+			e.printStackTrace();
+			throw new ExceptionInInitializerError("Unable to create the " +
+						"scheduler for " + username + ".");
+		}
+		
+		//if the RNG key wasn't defined, save the automatically-generated one
+		if(rngKey == null || rngKey.equals("")) {
+			settings.setValue(SettingType.RNG_KEY, trigger.getRNGKey());
+		}
+		
+		//create a system tray icon
+		if(SystemTray.isSupported()) {
+			//the settings menu item
+			/*ActionListener settingsListener = new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					System.out.println("Settings manager not implemented; sorry. " +
+								"Currently, you have to exit TagTime, manually edit " +
+								settings.username + "_settings.txt, and restart TagTime.");
+				}
+			};
+			MenuItem settingsMenuItem = new MenuItem("Settings", new MenuShortcut(KeyEvent.VK_S));
+			settingsMenuItem.addActionListener(settingsListener);*/
+
+			//the "submit now" menu item
+			ActionListener submitListener = new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					//submitting can take a while, so don't block the UI
+					api.submitAsync(new BeeminderAPI.SubmitCallback() {
+						@Override
+						public void submitFinished(boolean success) {
+							if(!success) {
+								TagTime.this.trayIcon.displayMessage("TagTime",
+											"Some data couldn't be submitted to Beeminder. "
+														+ "It will be retried in the background.",
+											TrayIcon.MessageType.WARNING);
+							}
+						}
+					});
+				}
+			};
+			MenuItem submitMenuItem = new MenuItem("Submit data now");
+			submitMenuItem.addActionListener(submitListener);
+			
+			//the "show totals" menu item
+			ActionListener totalsListener = new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					StringBuilder totals = new StringBuilder();
+					for(BeeminderGraph graph : api.getGraphs()) {
+						if(totals.length() > 0) {
+							totals.append('\n');
+						}
+						totals.append(graph.graphName + ": "
+									+ graph.hourFormatter.format(graph.getHoursThisWeek())
+									+ " hours this week, "
+									+ graph.hourFormatter.format(graph.getHoursThisMonth())
+									+ " this month");
+					}
+					
+					TagTime.this.trayIcon.displayMessage("TagTime",
+								totals.length() > 0 ? totals.toString()
+											: "You don't have any Beeminder graphs.",
+								TrayIcon.MessageType.INFO);
+				}
+			};
+			MenuItem totalsMenuItem = new MenuItem("Show totals");
+			totalsMenuItem.addActionListener(totalsListener);
+			
+			//the export menu item
+			ActionListener exportListener = new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					exportPings();
+				}
+			};
+			MenuItem exportMenuItem = new MenuItem("Export pings...");
+			exportMenuItem.addActionListener(exportListener);
+			
+			//the quit menu item
+			ActionListener quitListener = new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					exit();
+				}
+			};
+			MenuItem quitMenuItem = new MenuItem("Quit", new MenuShortcut(KeyEvent.VK_Q));
+			quitMenuItem.addActionListener(quitListener);
+			
+			//create and populate the icon's popup menu
+			PopupMenu popupMenu = new PopupMenu();
+			//popupMenu.add(settingsMenuItem);
+			popupMenu.add(submitMenuItem);
+			popupMenu.add(totalsMenuItem);
+			popupMenu.add(exportMenuItem);
+			popupMenu.add(quitMenuItem);
+			
+			//create the tray icon
+			trayIcon = new TrayIcon(Main.getIconImage(), "TagTime (" + username + ")", popupMenu);
+		} else {
+			throw new ExceptionInInitializerError("System tray not supported; TagTime " +
+						"requires a system tray icon to function.");
+		}
+	}
+	
+	/**
+	 * Registers the system tray icon and starts the application.
+	 */
+	public void start() {
+		if(!SystemTray.isSupported()) {
+			return;
+		}
+		
+		//put the icon in the tray
+		SystemTray systemTray = SystemTray.getSystemTray();
+		try {
+			systemTray.add(trayIcon);
+		} catch(AWTException e) {
+			System.err.println("Could not register the system tray " +
+							"icon for " + username + ".");
+			
+			//No TagTime for you!
+			return;
+		}
+		
+		//start the scheduler
+		try {
+			//if the scheduler has been shut down, we need a new one
+			if(scheduler.isShutdown()) {
+				//untested, but based to the source, this _should_
+				//produce a new scheduler
+				scheduler = StdSchedulerFactory.getDefaultScheduler();
+			}
+			
+			scheduler.start();
+			scheduler.scheduleJob(jobDetail, trigger);
+		} catch(SchedulerException e) {
+			e.printStackTrace();
+			
+			//cancel
+			systemTray.remove(trayIcon);
+			return;
+		}
+		
+		//record all the pings that were missed while TagTime wasn't running
+		Date now = new Date();
+		log.logMissedPings("off", now.getTime());
+		
+		long timeDiff = (now.getTime() - trigger.getFireTimeBefore(now, true).getTime()) / 1000;
+		assert timeDiff > 0;
+		
+		System.out.println("TagTime is watching you, " + username + "!" +
+					" Last ping would've been " +
+					HMSTimeFormatter.format(timeDiff) +
+					" ago.");
+	}
+	
+	/**
+	 * Asks where to save the pings, then writes all of them there in the
+	 * background: as JSON lines if the file name ends in .json or
+	 * .jsonl, and as CSV otherwise.
+	 */
+	private void exportPings() {
+		JFileChooser fileChooser = new JFileChooser();
+		fileChooser.setSelectedFile(new File(username + "_pings.csv"));
+		if(fileChooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		
+		final File file = fileChooser.getSelectedFile();
+		String name = file.getName().toLowerCase();
+		final PingExporter.Format format = name.endsWith(".json") || name.endsWith(".jsonl")
+					? PingExporter.Format.JSON_LINES : PingExporter.Format.CSV;
+		
+		//a long log can take a while, so don't block the UI
+		Thread exportThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					FileOutputStream out = new FileOutputStream(file);
+					int count;
+					try {
+						count = log.export(0, Long.MAX_VALUE, null, format, out.getChannel());
+					} finally {
+						out.close();
+					}
+					
+					trayIcon.displayMessage("TagTime", "Exported " + count + " pings to "
+								+ file.getName() + ".", TrayIcon.MessageType.INFO);
+				} catch(IOException e) {
+					e.printStackTrace();
+					trayIcon.displayMessage("TagTime", "Unable to export your pings to "
+								+ file.getName() + ".", TrayIcon.MessageType.ERROR);
+				}
+			}
+		}, "Export for " + username);
+		exportThread.setDaemon(true);
+		exportThread.start();
+	}
+	
+	/**
+	 * Saves and cleans up everything used by this instance.
+	 */
+	public void exit() {
+		settings.flush();
+		
+		sinks.close();
+		log.flush();
+		
+		if(trayIcon != null) {
+			//TODO: Figure out why removing one tray icon causes the
+			//second's popup menu to stop working.
+			SystemTray.getSystemTray().remove(trayIcon);
+		}
+		
+		try {
+			scheduler.shutdown();
+		} catch(SchedulerException e) {
+			e.printStackTrace();
+		}
+		
+		Window[] windows = Window.getWindows();
+		for(Window window : windows) {
+			for(WindowListener listener : window.getWindowListeners()) {
+				window.removeWindowListener(listener);
+			}
+			window.dispose();
+		}
+		
+		System.out.println("Bye, " + username + "!");
+		
+		//if this was the final TagTime instance, the application should
+		//exit at this point
+		
+		//unfortunately, quitting from one instance causes the others not
+		//to be able to quit, so exit all of them for now
+		System.exit(0);
+	}
+}
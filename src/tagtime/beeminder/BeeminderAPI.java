@@ -1,507 +1,1130 @@
-/*
- * Copyright 2011-2012 Joseph Cloutier
- * 
- * This file is part of TagTime.
- * 
- * TagTime is free software: you can redistribute it and/or modify it
- * under the terms of the GNU General Public License as published by the
- * Free Software Foundation, either version 3 of the License, or (at your
- * option) any later version.
- * 
- * TagTime is distributed in the hope that it will be useful, but WITHOUT
- * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
- * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
- * for more details.
- * 
- * You should have received a copy of the GNU General Public License
- * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
- */
-
-package tagtime.beeminder;
-
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-
-import org.apache.http.HttpResponse;
-import org.apache.http.NameValuePair;
-import org.apache.http.StatusLine;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpDelete;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpPut;
-import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.util.EntityUtils;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
-
-import tagtime.Main;
-import tagtime.TagTime;
-import tagtime.settings.SettingType;
-import tagtime.settings.Settings;
-
-/**
- * Contains static methods for sending/retrieving information to/from
- * Beeminder, used by the BeeminderGraph class. Instances of this class
- * manage a user's BeeminderGraph objects. <br>
- * TODO: Refactor one of these two responsibilities into a new class.
- */
-public class BeeminderAPI {
-	private static final JSONParser JSON_PARSER = new JSONParser();
-	private static final String API_BASE_URL = "https://www.beeminder.com/api/v1";
-	
-	private final Settings userSettings;
-	private final List<BeeminderGraph> graphData;
-	
-	public BeeminderAPI(TagTime tagTimeInstance, Settings userSettings) throws ClassCastException {
-		this.userSettings = userSettings;
-		
-		String username = tagTimeInstance.username;
-		
-		Collection<String> graphDataEntries = userSettings
-					.getListValue(SettingType.BEEMINDER_GRAPHS);
-		
-		graphData = new ArrayList<BeeminderGraph>(graphDataEntries.size());
-		for(String dataEntry : graphDataEntries) {
-			graphData.add(new BeeminderGraph(tagTimeInstance, username, dataEntry));
-		}
-	}
-	
-	/**
-	 * Submits the current user's data to each registered graph.
-	 */
-	public void submit() {
-		String username = userSettings.username;
-		
-		File logFile = new File(Main.getDataDirectory().getPath()
-					+ "/" + username + ".log");
-		
-		for(BeeminderGraph data : graphData) {
-			data.submitPings(logFile);
-		}
-	}
-	
-	public static long fetchResetDate(HttpClient client,
-				String graphName, TagTime tagTimeInstance) {
-		List<JSONObject> parsedArray = runGetRequest(client,
-					getGraphURL(tagTimeInstance, graphName),
-					tagTimeInstance);
-		if(parsedArray == null) {
-			return 0;
-		}
-		
-		//Unless the API is updated, the request will return one object.
-		JSONObject data = parsedArray.get(0);
-		if(data.containsKey("reset")) {
-			return (Long) data.get("reset");
-		}
-		
-		return 0;
-	}
-	
-	/**
-	 * @param id The id of the data point to retrieve.
-	 * @param timestamp The timestamp to use. Required because Beeminder
-	 *            will not provide it, unlike when fetching all points.
-	 */
-	public static DataPoint fetchDataPoint(HttpClient client, String graphName,
-				TagTime tagTimeInstance, String id, long timestamp) {
-		if(id == null || id.length() == 0) {
-			return null;
-		}
-		
-		List<JSONObject> parsedData = runGetRequest(client,
-					getDataPointURL(tagTimeInstance, graphName, id),
-					tagTimeInstance);
-		
-		if(parsedData == null) {
-			return null;
-		}
-		
-		JSONObject jsonDataPoint = parsedData.get(0);
-		
-		return new DataPoint((String) jsonDataPoint.get("id"),
-					timestamp,
-					(Double) jsonDataPoint.get("value"),
-					(String) jsonDataPoint.get("comment"));
-	}
-	
-	public static List<DataPoint> fetchAllDataPoints(HttpClient client,
-				String graphName, TagTime tagTimeInstance) {
-		List<JSONObject> parsedData = runGetRequest(client,
-					getDataURL(tagTimeInstance, graphName),
-					tagTimeInstance);
-		if(parsedData == null) {
-			return null;
-		}
-		
-		//convert the data to a set of data points
-		List<DataPoint> dataPoints = new ArrayList<DataPoint>();
-		DataPoint dataPoint;
-		DataPoint prevDataPoint = null;
-		int insertIndex;
-		
-		JSONObject jsonDataPoint;
-		for(Object inputDataPoint : parsedData) {
-			if(inputDataPoint instanceof JSONObject) {
-				jsonDataPoint = (JSONObject) inputDataPoint;
-				dataPoint = new DataPoint((String) jsonDataPoint.get("id"),
-										(Long) jsonDataPoint.get("timestamp"),
-										(Double) jsonDataPoint.get("value"),
-										(String) jsonDataPoint.get("comment"));
-				
-				//insert the new data point such that all data points are
-				//in order, iterating backwards so that the most common
-				//case (already being in order) is handled fastest
-				if(prevDataPoint != null && prevDataPoint.timestamp > dataPoint.timestamp) {
-					for(insertIndex = dataPoints.size() - 2; insertIndex >= 0; insertIndex--) {
-						if(dataPoints.get(insertIndex).timestamp <= dataPoint.timestamp) {
-							break;
-						}
-					}
-					dataPoints.add(insertIndex + 1, dataPoint);
-				} else {
-					dataPoints.add(dataPoint);
-				}
-				
-				prevDataPoint = dataPoint;
-			}
-		}
-		
-		return dataPoints;
-	}
-	
-	/**
-	 * Creates a new data point on Beeminder.
-	 * @param saveID
-	 * @return Whether the request completed successfully. If this is
-	 *         false, then Beeminder is probably inaccessible, and no
-	 *         more requests should be sent for now.
-	 */
-	public static boolean createDataPoint(HttpClient client,
-				BeeminderGraph graph, DataPoint dataPoint,
-				boolean saveID) {
-		HttpResponse response = runPostRequest(client, graph.tagTimeInstance,
-					getDataURL(graph.tagTimeInstance, graph.graphName),
-					buildPostData(new String[] {
-								"timestamp", Long.toString(dataPoint.timestamp),
-								"value", graph.hourFormatter.format(dataPoint.hours)}));
-		
-		if(response != null) {
-			if(saveID) {
-				List<JSONObject> parsedResponse = parseResponse(response);
-				
-				if(parsedResponse.size() > 0) {
-					graph.writeToBeeFile((String) parsedResponse.get(0).get("id"),
-								dataPoint.timestamp, dataPoint.hours,
-								dataPoint.comment);
-				}
-			} else {
-				//parseResponse consumes the response, so this only needs
-				//to be called if parseResponse isn't
-				try {
-					EntityUtils.consume(response.getEntity());
-				} catch(IOException e) {
-					e.printStackTrace();
-				}
-			}
-			
-			return true;
-		}
-		
-		System.err.println("Unable to submit your data to Beeminder " +
-					"graph " + graph.graphName + ". Please try again later.");
-		return false;
-	}
-	
-	/**
-	 * Updates an existing data point on Beeminder.
-	 * @return Whether the request completed successfully. If this is
-	 *         false, then Beeminder is probably inaccessible, and no
-	 *         more requests should be sent for now.
-	 */
-	public static boolean updateDataPoint(HttpClient client, BeeminderGraph graph,
-				DataPoint dataPoint) {
-		List<NameValuePair> postData = buildPostData(new String[] {
-					"timestamp", Long.toString(dataPoint.timestamp),
-					"value", graph.hourFormatter.format(dataPoint.hours)});
-		
-		if(dataPoint.comment.length() > 0) {
-			postData.add(new BasicNameValuePair("comment", dataPoint.comment));
-		}
-		
-		if(runPutRequest(client, graph.tagTimeInstance,
-					getDataPointURL(graph.tagTimeInstance, graph.graphName, dataPoint.id),
-					postData)) {
-			return true;
-		}
-		
-		System.err.println("Unable to submit your data to Beeminder " +
-					"graph " + graph.graphName + ". Please try again later.");
-		return false;
-	}
-	
-	/**
-	 * Removes a data point from Beeminder.
-	 * @return Whether the request completed successfully. If this is
-	 *         false, then Beeminder is probably inaccessible, and no
-	 *         more requests should be sent for now.
-	 */
-	public static boolean deleteDataPoint(HttpClient client, BeeminderGraph graph,
-				DataPoint dataPoint) {
-		if(runDeleteRequest(client, graph.tagTimeInstance,
-					getDataPointURL(graph.tagTimeInstance, graph.graphName, dataPoint.id))) {
-			return true;
-		}
-		
-		System.err.println("Unable to submit your data to Beeminder " +
-					"graph " + graph.graphName + ". Please try again later.");
-		return false;
-	}
-	
-	private static boolean runDeleteRequest(HttpClient client, TagTime tagTimeInstance,
-				String targetURL) {
-		HttpDelete deleteRequest = new HttpDelete(targetURL
-					+ getAuthTokenToAppend(tagTimeInstance));
-		
-		System.out.println("DELETE " + deleteRequest.getURI());
-		
-		HttpResponse response;
-		try {
-			response = client.execute(deleteRequest);
-		} catch(Exception e) {
-			e.printStackTrace();
-			return false;
-		}
-		
-		StatusLine status = response.getStatusLine();
-		
-		System.out.println("Response: " + status.getStatusCode()
-					+ " " + status.getReasonPhrase());
-		
-		try {
-			EntityUtils.consume(response.getEntity());
-		} catch(IOException e) {
-			e.printStackTrace();
-		}
-		
-		return true;
-	}
-	
-	/**
-	 * Runs a put request.
-	 * @return Whether the request completed successfully. If this is
-	 *         false, then Beeminder is probably inaccessible, and no
-	 *         more requests should be sent for now.
-	 */
-	private static boolean runPutRequest(HttpClient client, TagTime tagTimeInstance,
-				String dataURL, List<NameValuePair> postData) {
-		//add the authorization token
-		postData.add(new BasicNameValuePair("auth_token",
-					tagTimeInstance.settings.getStringValue(SettingType.AUTH_TOKEN)));
-		
-		//build the request
-		HttpPut putRequest = new HttpPut(dataURL);
-		HttpResponse response;
-		
-		try {
-			UrlEncodedFormEntity entity = new UrlEncodedFormEntity(postData);
-			System.out.println("PUT " + dataURL + "?"
-						+ new BufferedReader(new InputStreamReader(entity.getContent()))
-									.readLine());
-			
-			putRequest.setEntity(entity);
-			
-			response = client.execute(putRequest);
-		} catch(Exception e) {
-			e.printStackTrace();
-			return false;
-		}
-		
-		StatusLine status = response.getStatusLine();
-		
-		System.out.println("Response: " + status.getStatusCode()
-					+ " " + status.getReasonPhrase());
-		
-		try {
-			EntityUtils.consume(response.getEntity());
-		} catch(IOException e) {
-			e.printStackTrace();
-		}
-		
-		return true;
-	}
-	
-	/**
-	 * Runs a post request.
-	 * @return The response if the request completed successfully, or
-	 *         null otherwise. If this is null, then Beeminder is
-	 *         probably inaccessible, and no more requests should be sent
-	 *         for now. Otherwise, make sure to run EntityUtils.consume()
-	 *         on it.
-	 */
-	private static HttpResponse runPostRequest(HttpClient client, TagTime tagTimeInstance,
-				String dataURL, List<NameValuePair> postData) {
-		//add the authorization token
-		postData.add(new BasicNameValuePair("auth_token",
-					tagTimeInstance.settings.getStringValue(SettingType.AUTH_TOKEN)));
-		
-		//build the request
-		HttpPost postRequest = new HttpPost(dataURL);
-		HttpResponse response;
-		
-		try {
-			UrlEncodedFormEntity entity = new UrlEncodedFormEntity(postData);
-			System.out.println("POST " + dataURL + "?"
-						+ new BufferedReader(new InputStreamReader(entity.getContent()))
-									.readLine());
-			
-			postRequest.setEntity(entity);
-			
-			response = client.execute(postRequest);
-		} catch(Exception e) {
-			e.printStackTrace();
-			return null;
-		}
-		
-		StatusLine status = response.getStatusLine();
-		
-		System.out.println("Response: " + status.getStatusCode()
-					+ " " + status.getReasonPhrase());
-		
-		return response;
-	}
-	
-	private static List<JSONObject> runGetRequest(HttpClient client, String url,
-				TagTime tagTimeInstance) {
-		HttpGet getRequest = new HttpGet(
-					url + getAuthTokenToAppend(tagTimeInstance));
-		HttpResponse response;
-		
-		//retrieve the data
-		try {
-			response = client.execute(getRequest);
-		} catch(Exception e) {
-			e.printStackTrace();
-			return null;
-		}
-		
-		if(response.getStatusLine().getStatusCode() == 401) {
-			System.err.println("Invalid authorization token. Visit " +
-						"https://www.beeminder.com/api/v1/auth_token.json to " +
-						"get your token, then add it to your settings file.");
-			return null;
-		}
-		
-		return parseResponse(response);
-	}
-	
-	private static List<JSONObject> parseResponse(HttpResponse response) {
-		OutputStream data;
-		try {
-			data = new ByteArrayOutputStream(response.getEntity().getContent().available());
-			response.getEntity().writeTo(data);
-		} catch(Exception e) {
-			e.printStackTrace();
-			return null;
-		}
-		
-		Object parseResult;
-		try {
-			parseResult = JSON_PARSER.parse(data.toString());
-		} catch(ParseException e) {
-			System.err.println(data.toString());
-			e.printStackTrace();
-			parseResult = null;
-		}
-		
-		//close the stream used to read the response
-		try {
-			data.close();
-		} catch(IOException e) {
-			e.printStackTrace();
-		}
-		
-		//This might be redundant, but leave it even so, in case the HTTP
-		//library changes.
-		try {
-			EntityUtils.consume(response.getEntity());
-		} catch(IOException e) {
-			e.printStackTrace();
-		}
-		
-		//JSONParser.parse() can return multiple object types, depending
-		//on the JSON itself
-		List<JSONObject> parsedArray = null;
-		if(parseResult instanceof JSONArray) {
-			parsedArray = new ArrayList<JSONObject>();
-			for(Object element : (JSONArray) parseResult) {
-				if(element instanceof JSONObject) {
-					parsedArray.add((JSONObject) element);
-				} else {
-					//Currently, it's safe to ignore any sub-arrays.
-					//(Sorry if this messes things up in the future.)
-				}
-			}
-		} else if(parseResult instanceof JSONObject) {
-			parsedArray = new ArrayList<JSONObject>(1);
-			
-			parsedArray.add((JSONObject) parseResult);
-		} else {
-			System.out.println("Unknown result from JSON parser: " + parseResult);
-			parsedArray = new ArrayList<JSONObject>();
-		}
-		
-		return parsedArray;
-	}
-	
-	/**
-	 * @param dataPairs The parameters and values to post, in string
-	 *            form. They will be parsed in order, like so: [param0,
-	 *            value0, param1, value1, ...], and if there are an odd
-	 *            number, the last will be ignored. These parameters do
-	 *            not need to include the authorization token; that will
-	 *            be added.
-	 * @return The data pairs, in the correct format to be used as an
-	 *         HTML entity.
-	 */
-	private static List<NameValuePair> buildPostData(String[] dataPairs) {
-		List<NameValuePair> postData = new ArrayList<NameValuePair>();
-		for(int i = 0; i < dataPairs.length - 1; i += 2) {
-			postData.add(new BasicNameValuePair(dataPairs[i], dataPairs[i + 1]));
-		}
-		
-		return postData;
-	}
-	
-	private static String getGraphURL(TagTime tagTimeInstance, String graphName) {
-		return API_BASE_URL + "/users/" + tagTimeInstance.username
-					+ "/goals/" + graphName + ".json";
-	}
-	
-	private static String getDataURL(TagTime tagTimeInstance, String graphName) {
-		return API_BASE_URL + "/users/" + tagTimeInstance.username
-					+ "/goals/" + graphName + "/datapoints.json";
-	}
-	
-	private static String getDataPointURL(TagTime tagTimeInstance, String graphName,
-									String dataPointID) {
-		return API_BASE_URL + "/users/" + tagTimeInstance.username
-					+ "/goals/" + graphName
-					+ "/datapoints/" + dataPointID + ".json";
-	}
-	
-	private static String getAuthTokenToAppend(TagTime tagTimeInstance) {
-		return "?auth_token=" + tagTimeInstance.settings.getStringValue(SettingType.AUTH_TOKEN);
-	}
-}
+/*
+ * Copyright 2011-2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.beeminder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import tagtime.TagTime;
+import tagtime.settings.SettingType;
+import tagtime.settings.Settings;
+import tagtime.sink.Sink;
+import tagtime.sink.SinkBatch;
+import tagtime.util.CircuitBreaker;
+import tagtime.util.DaemonThreadFactory;
+import tagtime.util.RateLimiter;
+
+/**
+ * Contains static methods for sending/retrieving information to/from
+ * Beeminder, used by the BeeminderGraph class. Instances of this class
+ * manage a user's BeeminderGraph objects. <br>
+ * TODO: Refactor one of these two responsibilities into a new class.
+ */
+public class BeeminderAPI implements Sink {
+	/**
+	 * How long to wait for a connection, and then for a response, in
+	 * milliseconds.
+	 */
+	private static final int CONNECT_TIMEOUT = 10000;
+	private static final int READ_TIMEOUT = 30000;
+	
+	/**
+	 * How long to keep an idle connection open, in milliseconds, if
+	 * Beeminder doesn't say.
+	 */
+	private static final long KEEP_ALIVE_TIME = 30000;
+	
+	/**
+	 * How long to wait before retrying changes that couldn't be sent, in
+	 * milliseconds. The delay doubles after each failed retry, up to the
+	 * maximum.
+	 */
+	private static final long RETRY_MIN_DELAY = 30000;
+	private static final long RETRY_MAX_DELAY = 30 * 60000;
+	
+	/**
+	 * Limits the requests sent by every user and graph in this process,
+	 * so that a large submission doesn't get throttled. This allows
+	 * bursts of 10 requests, and 4 requests per second after that.
+	 */
+	private static final RateLimiter RATE_LIMITER = new RateLimiter(10, 4);
+	
+	/**
+	 * How many times to try a request that was throttled, or (if it is
+	 * safe to repeat) that failed because of a network or server error.
+	 */
+	private static final int MAX_ATTEMPTS = 4;
+	
+	/**
+	 * The delay before the first repeat of a failed request, in
+	 * milliseconds. This doubles with each attempt, and is randomized so
+	 * that several threads don't all retry at once.
+	 */
+	private static final long BACKOFF_DELAY = 1000;
+	
+	private static final Random JITTER = new Random();
+	
+	/**
+	 * After this many network or server errors in a row, stop sending
+	 * requests to that server for a while; see {@link CircuitBreaker}.
+	 * The pause starts at the minimum and doubles each time a probe
+	 * request fails, up to the maximum (both in milliseconds).
+	 */
+	private static final int BREAKER_THRESHOLD = 3;
+	private static final long BREAKER_MIN_OPEN_TIME = 30000;
+	private static final long BREAKER_MAX_OPEN_TIME = 10 * 60000;
+	
+	/**
+	 * One circuit breaker for each server, keyed by scheme, host and
+	 * port, shared by every user and graph in this process.
+	 */
+	private static final Map<String, CircuitBreaker> CIRCUIT_BREAKERS =
+				new HashMap<String, CircuitBreaker>();
+	
+	private final Settings userSettings;
+	private final List<BeeminderGraph> graphData;
+	
+	/**
+	 * The maximum number of graphs to submit to at once.
+	 */
+	private final int submitThreads;
+	
+	/**
+	 * Connections are kept open between requests and between
+	 * submissions, so that each one doesn't need a new TLS handshake.
+	 */
+	private final ThreadSafeClientConnManager connectionManager;
+	private final DefaultHttpClient client;
+	
+	/**
+	 * Runs submissions in the background, one at a time.
+	 */
+	private final ExecutorService submitExecutor;
+	
+	/**
+	 * Submits to up to submitThreads graphs at once, during a
+	 * submission.
+	 */
+	private final ExecutorService graphExecutor;
+	
+	/**
+	 * The submission waiting to start, if any, and the callbacks to run
+	 * when it finishes. Both are guarded by submitLock.
+	 */
+	private final Object submitLock = new Object();
+	private FutureTask<Boolean> queuedSubmission = null;
+	private List<SubmitCallback> queuedCallbacks = null;
+	
+	/**
+	 * Retries each graph's outbox until it is empty.
+	 */
+	private final ScheduledExecutorService scheduler;
+	private final Map<BeeminderGraph, ScheduledFuture<?>> scheduledRetries =
+				new HashMap<BeeminderGraph, ScheduledFuture<?>>();
+	
+	public BeeminderAPI(TagTime tagTimeInstance, Settings userSettings) throws ClassCastException {
+		this.userSettings = userSettings;
+		
+		String username = tagTimeInstance.username;
+		
+		Collection<String> graphDataEntries = userSettings
+					.getListValue(SettingType.BEEMINDER_GRAPHS);
+		
+		graphData = new ArrayList<BeeminderGraph>(graphDataEntries.size());
+		for(String dataEntry : graphDataEntries) {
+			graphData.add(new BeeminderGraph(tagTimeInstance, username, dataEntry));
+		}
+		
+		submitThreads = Math.max(1, userSettings.getIntValue(SettingType.SUBMIT_THREADS));
+		
+		//one connection for each graph being submitted
+		connectionManager = new ThreadSafeClientConnManager(
+					SchemeRegistryFactory.createDefault());
+		connectionManager.setMaxTotal(submitThreads);
+		connectionManager.setDefaultMaxPerRoute(submitThreads);
+		
+		client = new DefaultHttpClient(connectionManager);
+		
+		HttpParams params = client.getParams();
+		HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT);
+		HttpConnectionParams.setSoTimeout(params, READ_TIMEOUT);
+		HttpConnectionParams.setTcpNoDelay(params, true);
+		
+		//ask for compressed responses, and decompress them as they are
+		//read
+		client.addRequestInterceptor(new RequestAcceptEncoding());
+		client.addResponseInterceptor(new ResponseContentEncoding());
+		
+		client.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				long duration = super.getKeepAliveDuration(response, context);
+				return duration > 0 ? duration : KEEP_ALIVE_TIME;
+			}
+		});
+		
+		submitExecutor = Executors.newSingleThreadExecutor(
+					new DaemonThreadFactory("Beeminder submit"));
+		graphExecutor = Executors.newFixedThreadPool(submitThreads,
+					new DaemonThreadFactory("Beeminder graph"));
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+					new DaemonThreadFactory("Beeminder scheduler"));
+		
+		//send anything left over from last time
+		for(BeeminderGraph graph : graphData) {
+			if(graph.hasPendingChanges()) {
+				scheduleRetry(graph, RETRY_MIN_DELAY);
+			}
+		}
+	}
+	
+	/**
+	 * @return The current user's graphs, in the order they are listed
+	 *         in the settings file.
+	 */
+	public List<BeeminderGraph> getGraphs() {
+		return Collections.unmodifiableList(graphData);
+	}
+	
+	/**
+	 * Routes each changed day to the graphs it affects, so that only
+	 * they are submitted, and only the affected days are recalculated.
+	 * Unless SettingType.SUBMIT_DELAY is negative, those graphs are then
+	 * submitted in the background.
+	 */
+	@Override
+	public void write(SinkBatch batch) {
+		final List<BeeminderGraph> affectedGraphs = new ArrayList<BeeminderGraph>(1);
+		for(BeeminderGraph graph : graphData) {
+			boolean affected = false;
+			for(long day : batch.getChangedDays()) {
+				for(List<String> tags : batch.getChangedTagSets(day)) {
+					if(graph.matchesTags(tags)) {
+						graph.markChanged(day);
+						affected = true;
+						break;
+					}
+				}
+			}
+			
+			if(affected) {
+				affectedGraphs.add(graph);
+			}
+		}
+		
+		if(affectedGraphs.isEmpty() || userSettings.getIntValue(SettingType.SUBMIT_DELAY) < 0
+					|| submitExecutor.isShutdown()) {
+			return;
+		}
+		
+		//take turns with other submissions
+		submitExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				submit(affectedGraphs, false);
+			}
+		});
+	}
+	
+	/**
+	 * Called when a background submission finishes.
+	 */
+	public interface SubmitCallback {
+		/**
+		 * This is called on the submission thread, not the event
+		 * dispatch thread.
+		 * @param success Whether every graph was updated. If not, the
+		 *            remaining changes will be retried in the background.
+		 */
+		void submitFinished(boolean success);
+	}
+	
+	/**
+	 * Submits the current user's data in the background, and returns
+	 * immediately. If a submission is already waiting to start, it will
+	 * include the latest data anyway, so no new one is queued.
+	 * @param callback Called once the submission finishes. May be null.
+	 * @return The submission's result; see {@link #submit()}.
+	 */
+	public Future<Boolean> submitAsync(SubmitCallback callback) {
+		synchronized(submitLock) {
+			if(queuedSubmission == null) {
+				final List<SubmitCallback> callbacks = new ArrayList<SubmitCallback>(1);
+				queuedCallbacks = callbacks;
+				queuedSubmission = new FutureTask<Boolean>(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						//once this starts, new data needs a new submission
+						synchronized(submitLock) {
+							queuedSubmission = null;
+							queuedCallbacks = null;
+						}
+						
+						boolean success = false;
+						try {
+							success = submit();
+						} finally {
+							for(SubmitCallback callback : callbacks) {
+								callback.submitFinished(success);
+							}
+						}
+						
+						return success;
+					}
+				});
+				
+				submitExecutor.execute(queuedSubmission);
+			}
+			
+			if(callback != null) {
+				queuedCallbacks.add(callback);
+			}
+			
+			return queuedSubmission;
+		}
+	}
+	
+	/**
+	 * Submits the current user's data to each registered graph. Up to
+	 * SettingType.SUBMIT_THREADS graphs are submitted to at once, and
+	 * this returns once all of them are done, so it should not be called
+	 * from the event dispatch thread; use
+	 * {@link #submitAsync(SubmitCallback)} instead.
+	 * @return Whether every graph was updated.
+	 */
+	public boolean submit() {
+		return submit(graphData, true);
+	}
+	
+	/**
+	 * Submits the current user's data to the given graphs.
+	 * @param checkUpdateAll Whether to check SettingType.UPDATE_ALL_DATA.
+	 *            This should only be done when submitting to every graph,
+	 *            since the setting is cleared afterwards.
+	 * @return Whether every graph was updated.
+	 */
+	private boolean submit(List<BeeminderGraph> graphs, boolean checkUpdateAll) {
+		if(graphs.size() == 0) {
+			return true;
+		}
+		if(graphExecutor.isShutdown()) {
+			return false;
+		}
+		
+		//connections may have timed out since the last submission
+		connectionManager.closeExpiredConnections();
+		connectionManager.closeIdleConnections(KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS);
+		
+		//check this once for all graphs; from now on, each graph keeps
+		//track of whether it needs to be updated
+		final boolean updateAllData = checkUpdateAll
+					&& userSettings.getBooleanValue(SettingType.UPDATE_ALL_DATA);
+		if(updateAllData) {
+			userSettings.setValue(SettingType.UPDATE_ALL_DATA, false);
+		}
+		
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(graphs.size());
+		for(final BeeminderGraph data : graphs) {
+			results.add(graphExecutor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return data.submitPings(client, updateAllData);
+				}
+			}));
+		}
+		
+		//wait for every graph, so that one graph's failure doesn't
+		//affect the others
+		boolean success = true;
+		for(int i = 0; i < results.size(); i++) {
+			try {
+				if(!results.get(i).get()) {
+					success = false;
+					System.err.println("Unable to finish submitting to your "
+								+ graphs.get(i).graphName + " graph. The rest "
+								+ "will be sent once Beeminder can be reached.");
+					scheduleRetry(graphs.get(i), RETRY_MIN_DELAY);
+				}
+			} catch(InterruptedException e) {
+				e.printStackTrace();
+				for(Future<Boolean> result : results) {
+					result.cancel(true);
+				}
+				Thread.currentThread().interrupt();
+				return false;
+			} catch(ExecutionException e) {
+				e.getCause().printStackTrace();
+				success = false;
+				scheduleRetry(graphs.get(i), RETRY_MIN_DELAY);
+			}
+		}
+		
+		return success;
+	}
+	
+	/**
+	 * Sends the given graph's outbox after the given delay, and keeps
+	 * retrying (waiting longer each time) until it succeeds. Does nothing
+	 * if a retry is already scheduled.
+	 */
+	private void scheduleRetry(final BeeminderGraph graph, final long delay) {
+		synchronized(scheduledRetries) {
+			ScheduledFuture<?> scheduled = scheduledRetries.get(graph);
+			if(scheduled != null && !scheduled.isDone() || scheduler.isShutdown()) {
+				return;
+			}
+			
+			scheduledRetries.put(graph, scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					synchronized(scheduledRetries) {
+						scheduledRetries.remove(graph);
+					}
+					
+					connectionManager.closeExpiredConnections();
+					
+					boolean success;
+					try {
+						success = graph.submitOutbox(client);
+					} catch(RuntimeException e) {
+						e.printStackTrace();
+						success = false;
+					}
+					
+					if(!success) {
+						scheduleRetry(graph, Math.min(delay * 2, RETRY_MAX_DELAY));
+					}
+				}
+			}, delay, TimeUnit.MILLISECONDS));
+		}
+	}
+	
+	/**
+	 * Closes all connections to Beeminder. No more data can be
+	 * submitted after this is called, but anything not yet sent will be
+	 * sent the next time TagTime starts.
+	 */
+	@Override
+	public void close() {
+		submitExecutor.shutdownNow();
+		graphExecutor.shutdownNow();
+		scheduler.shutdownNow();
+		connectionManager.shutdown();
+	}
+	
+	/**
+	 * Retrieves the graph's reset date along with its data points, and
+	 * records the goal's details in the given metadata.
+	 * @param updatedSince If this is at least 0, only data points
+	 *            updated after this Unix timestamp (in seconds) will be
+	 *            retrieved, and Beeminder will only be asked for them if
+	 *            the goal has changed since the metadata was recorded.
+	 * @return The parsed goal, or null if it could not be retrieved. If
+	 *         the goal hasn't changed, this has no data points, and the
+	 *         metadata is marked as up to date.
+	 */
+	static DataPointHandler fetchGoal(HttpClient client, String graphName,
+				TagTime tagTimeInstance, long updatedSince, GoalMetadata metadata) {
+		String url = getGraphURL(tagTimeInstance, graphName) + "?datapoints=true";
+		if(updatedSince >= 0) {
+			url += "&diff_since=" + updatedSince;
+		}
+		
+		HttpGet getRequest = new HttpGet(appendAuthToken(url, tagTimeInstance));
+		
+		//only a partial download can be skipped; a full one is needed
+		//even if nothing changed. The validators only apply to the URL
+		//they came from, and each diff_since value is a different URL.
+		if(updatedSince >= 0) {
+			String eTag = metadata.getETag(url);
+			if(eTag != null) {
+				getRequest.setHeader("If-None-Match", eTag);
+			}
+			String lastModified = metadata.getLastModified(url);
+			if(lastModified != null) {
+				getRequest.setHeader("If-Modified-Since", lastModified);
+			}
+		}
+		
+		HttpResponse response = executeGetRequest(client, getRequest, url);
+		if(response == null) {
+			return null;
+		}
+		
+		if(response.getStatusLine().getStatusCode() == 304) {
+			try {
+				EntityUtils.consume(response.getEntity());
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+			
+			metadata.revalidate();
+			return new DataPointHandler();
+		}
+		
+		DataPointHandler handler = parseDataPoints(response);
+		if(handler != null) {
+			Header eTag = response.getFirstHeader("ETag");
+			Header lastModified = response.getFirstHeader("Last-Modified");
+			metadata.update(handler.getResetDate(), handler.getUnits(),
+						handler.getGoalUpdatedAt(), url,
+						eTag != null ? eTag.getValue() : null,
+						lastModified != null ? lastModified.getValue() : null);
+		}
+		
+		return handler;
+	}
+	
+	private static DataPointHandler parseDataPoints(HttpResponse response) {
+		HttpEntity entity = response.getEntity();
+		
+		//build the data points as the response is read, rather than
+		//reading the whole response first
+		DataPointHandler handler = new DataPointHandler();
+		try {
+			Reader reader = getContentReader(entity);
+			try {
+				new JSONParser().parse(reader, handler);
+			} finally {
+				reader.close();
+			}
+		} catch(ParseException e) {
+			e.printStackTrace();
+			return null;
+		} catch(IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		
+		return handler;
+	}
+	
+	/**
+	 * Creates several new data points on Beeminder, using as few
+	 * requests as possible. Each data point's id is filled in as
+	 * Beeminder assigns it. If some were already created by an earlier
+	 * request whose response was lost, Beeminder updates those instead,
+	 * so this is safe to repeat.
+	 * @param dataPoints The data points to create, in order.
+	 * @return Whether all requests completed successfully. If this is
+	 *         false, then Beeminder is probably inaccessible, and no
+	 *         more requests should be sent for now.
+	 */
+	@SuppressWarnings("unchecked")
+	public static boolean createDataPoints(HttpClient client,
+				BeeminderGraph graph, List<DataPoint> dataPoints) {
+		int batchSize = Math.max(1, graph.tagTimeInstance.settings
+					.getIntValue(SettingType.CREATE_BATCH_SIZE));
+		
+		for(int start = 0; start < dataPoints.size(); start += batchSize) {
+			List<DataPoint> batch = dataPoints.subList(start,
+						Math.min(start + batchSize, dataPoints.size()));
+			
+			JSONArray jsonDataPoints = new JSONArray();
+			JSONObject jsonDataPoint;
+			for(DataPoint dataPoint : batch) {
+				jsonDataPoint = new JSONObject();
+				jsonDataPoint.put("timestamp", dataPoint.timestamp);
+				jsonDataPoint.put("value",
+							new BigDecimal(graph.hourFormatter.format(dataPoint.hours)));
+				if(dataPoint.comment.length() > 0) {
+					jsonDataPoint.put("comment", dataPoint.comment);
+				}
+				jsonDataPoint.put("requestid", getRequestID(graph, dataPoint));
+				jsonDataPoints.add(jsonDataPoint);
+			}
+			
+			HttpResponse response = runPostRequest(client, graph.tagTimeInstance,
+						getCreateAllURL(graph.tagTimeInstance, graph.graphName),
+						buildPostData(new String[] {
+									"datapoints", jsonDataPoints.toJSONString()}), true);
+			
+			if(response == null) {
+				System.err.println("Unable to submit your data to Beeminder " +
+							"graph " + graph.graphName + ". Please try again later.");
+				return false;
+			}
+			
+			//Beeminder returns the new data points in the order they were
+			//sent
+			List<JSONObject> parsedResponse = parseResponse(response);
+			if(parsedResponse == null || parsedResponse.size() != batch.size()) {
+				System.err.println("Unexpected response when submitting to " +
+							"Beeminder graph " + graph.graphName + ".");
+				return false;
+			}
+			
+			for(int i = 0; i < batch.size(); i++) {
+				batch.get(i).id = (String) parsedResponse.get(i).get("id");
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Updates an existing data point on Beeminder.
+	 * @return Whether the request completed successfully. If this is
+	 *         false, then Beeminder is probably inaccessible, and no
+	 *         more requests should be sent for now.
+	 */
+	public static boolean updateDataPoint(HttpClient client, BeeminderGraph graph,
+				DataPoint dataPoint) {
+		List<NameValuePair> postData = buildPostData(new String[] {
+					"timestamp", Long.toString(dataPoint.timestamp),
+					"value", graph.hourFormatter.format(dataPoint.hours)});
+		
+		if(dataPoint.comment.length() > 0) {
+			postData.add(new BasicNameValuePair("comment", dataPoint.comment));
+		}
+		
+		if(runPutRequest(client, graph.tagTimeInstance,
+					getDataPointURL(graph.tagTimeInstance, graph.graphName, dataPoint.id),
+					postData)) {
+			return true;
+		}
+		
+		System.err.println("Unable to submit your data to Beeminder " +
+					"graph " + graph.graphName + ". Please try again later.");
+		return false;
+	}
+	
+	/**
+	 * Removes a data point from Beeminder.
+	 * @return Whether the request completed successfully. If this is
+	 *         false, then Beeminder is probably inaccessible, and no
+	 *         more requests should be sent for now.
+	 */
+	public static boolean deleteDataPoint(HttpClient client, BeeminderGraph graph,
+				DataPoint dataPoint) {
+		if(runDeleteRequest(client, graph.tagTimeInstance,
+					getDataPointURL(graph.tagTimeInstance, graph.graphName, dataPoint.id))) {
+			return true;
+		}
+		
+		System.err.println("Unable to submit your data to Beeminder " +
+					"graph " + graph.graphName + ". Please try again later.");
+		return false;
+	}
+	
+	private static boolean runDeleteRequest(HttpClient client, TagTime tagTimeInstance,
+				String targetURL) {
+		HttpDelete deleteRequest = new HttpDelete(
+					appendAuthToken(targetURL, tagTimeInstance));
+		
+		System.out.println("DELETE " + deleteRequest.getURI());
+		
+		HttpResponse response = execute(client, deleteRequest, true);
+		if(response == null) {
+			return false;
+		}
+		
+		StatusLine status = response.getStatusLine();
+		
+		System.out.println("Response: " + status.getStatusCode()
+					+ " " + status.getReasonPhrase());
+		
+		try {
+			EntityUtils.consume(response.getEntity());
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		
+		//if the data point is already gone, there's nothing to do
+		return status.getStatusCode() / 100 == 2 || status.getStatusCode() == 404;
+	}
+	
+	/**
+	 * Runs a put request.
+	 * @return Whether the request completed successfully. If this is
+	 *         false, then Beeminder is probably inaccessible, and no
+	 *         more requests should be sent for now.
+	 */
+	private static boolean runPutRequest(HttpClient client, TagTime tagTimeInstance,
+				String dataURL, List<NameValuePair> postData) {
+		//add the authorization token
+		postData.add(new BasicNameValuePair("auth_token",
+					tagTimeInstance.settings.getStringValue(SettingType.AUTH_TOKEN)));
+		
+		//build the request
+		HttpPut putRequest = new HttpPut(dataURL);
+		HttpResponse response;
+		
+		try {
+			UrlEncodedFormEntity entity = new UrlEncodedFormEntity(postData);
+			System.out.println("PUT " + dataURL + "?"
+						+ new BufferedReader(new InputStreamReader(entity.getContent()))
+									.readLine());
+			
+			putRequest.setEntity(entity);
+		} catch(Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+		
+		response = execute(client, putRequest, true);
+		if(response == null) {
+			return false;
+		}
+		
+		StatusLine status = response.getStatusLine();
+		
+		System.out.println("Response: " + status.getStatusCode()
+					+ " " + status.getReasonPhrase());
+		
+		try {
+			EntityUtils.consume(response.getEntity());
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		
+		return status.getStatusCode() / 100 == 2;
+	}
+	
+	/**
+	 * Runs a post request.
+	 * @return The response if the request completed successfully, or
+	 *         null otherwise. If this is null, then Beeminder is
+	 *         probably inaccessible, and no more requests should be sent
+	 *         for now. Otherwise, make sure to run EntityUtils.consume()
+	 *         on it.
+	 * @param idempotent Whether sending the request twice has the same
+	 *            effect as sending it once. If not, it won't be repeated
+	 *            after network or server errors, since it might have
+	 *            taken effect.
+	 */
+	private static HttpResponse runPostRequest(HttpClient client, TagTime tagTimeInstance,
+				String dataURL, List<NameValuePair> postData, boolean idempotent) {
+		//add the authorization token
+		postData.add(new BasicNameValuePair("auth_token",
+					tagTimeInstance.settings.getStringValue(SettingType.AUTH_TOKEN)));
+		
+		//build the request
+		HttpPost postRequest = new HttpPost(dataURL);
+		HttpResponse response;
+		
+		try {
+			UrlEncodedFormEntity entity = new UrlEncodedFormEntity(postData);
+			System.out.println("POST " + dataURL + "?"
+						+ new BufferedReader(new InputStreamReader(entity.getContent()))
+									.readLine());
+			
+			postRequest.setEntity(entity);
+		} catch(Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+		
+		response = execute(client, postRequest, idempotent);
+		if(response == null) {
+			return null;
+		}
+		
+		StatusLine status = response.getStatusLine();
+		
+		System.out.println("Response: " + status.getStatusCode()
+					+ " " + status.getReasonPhrase());
+		
+		if(status.getStatusCode() / 100 != 2) {
+			try {
+				EntityUtils.consume(response.getEntity());
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+			return null;
+		}
+		
+		return response;
+	}
+	
+	/**
+	 * @param url The URL being requested, without the authorization
+	 *            token, for error messages.
+	 * @return The response, or null if the request failed. A 304 (not
+	 *         modified) response counts as success. Make sure to run
+	 *         EntityUtils.consume() on it.
+	 */
+	private static HttpResponse executeGetRequest(HttpClient client, HttpGet getRequest,
+				String url) {
+		//retrieve the data
+		HttpResponse response = execute(client, getRequest, true);
+		if(response == null) {
+			return null;
+		}
+		
+		int statusCode = response.getStatusLine().getStatusCode();
+		if(statusCode / 100 != 2 && statusCode != 304) {
+			if(statusCode == 401) {
+				System.err.println("Invalid authorization token. Visit " +
+							"https://www.beeminder.com/api/v1/auth_token.json to " +
+							"get your token, then add it to your settings file.");
+			} else {
+				System.err.println("Unable to retrieve " + url + ": "
+							+ response.getStatusLine());
+			}
+			
+			try {
+				EntityUtils.consume(response.getEntity());
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+			return null;
+		}
+		
+		return response;
+	}
+	
+	/**
+	 * Sends a request once the shared rate limiter allows it. If
+	 * Beeminder throttles the request, it is repeated after the delay
+	 * Beeminder asks for, and all other requests wait as well. If the
+	 * request is idempotent, it is also repeated after network errors
+	 * and server errors.
+	 * @param idempotent Whether sending the request twice has the same
+	 *            effect as sending it once.
+	 * @return The last response, or null if no response was received.
+	 *         Make sure to run EntityUtils.consume() on it.
+	 */
+	private static HttpResponse execute(HttpClient client, HttpUriRequest request,
+				boolean idempotent) {
+		HttpResponse response;
+		int statusCode;
+		long delay;
+		
+		CircuitBreaker breaker = getCircuitBreaker(request.getURI());
+		
+		for(int attempt = 1;; attempt++) {
+			//don't wait for a connection that will probably time out
+			if(!breaker.allowRequest()) {
+				System.err.println("Not sending " + request.getMethod() + " "
+							+ request.getURI().getPath() + ": Beeminder can't be "
+							+ "reached. Trying again in "
+							+ (breaker.getRemainingOpenTime() + 999) / 1000 + " seconds.");
+				return null;
+			}
+			
+			try {
+				RATE_LIMITER.acquire();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			
+			try {
+				response = client.execute(request);
+			} catch(IOException e) {
+				if(breaker.recordFailure()) {
+					//stop here; the stack trace wouldn't help
+					System.err.println(request.getMethod() + " "
+								+ request.getURI().getPath() + " failed (" + e
+								+ "). Pausing requests to Beeminder for "
+								+ (breaker.getRemainingOpenTime() + 999) / 1000 + " seconds.");
+					return null;
+				}
+				
+				if(!idempotent || attempt >= MAX_ATTEMPTS) {
+					e.printStackTrace();
+					return null;
+				}
+				
+				System.err.println(request.getMethod() + " " + request.getURI().getPath()
+							+ " failed (" + e + "); retrying.");
+				if(!sleep(getBackoffDelay(attempt))) {
+					return null;
+				}
+				continue;
+			} catch(RuntimeException e) {
+				e.printStackTrace();
+				return null;
+			}
+			
+			statusCode = response.getStatusLine().getStatusCode();
+			if(statusCode / 100 == 5) {
+				if(breaker.recordFailure()) {
+					System.err.println("Beeminder is having trouble (" + response.getStatusLine()
+								+ "). Pausing requests for "
+								+ (breaker.getRemainingOpenTime() + 999) / 1000 + " seconds.");
+				}
+			} else {
+				breaker.recordSuccess();
+			}
+			
+			//a throttled request wasn't processed, so it's always safe to
+			//repeat
+			if(attempt >= MAX_ATTEMPTS || statusCode != 429
+						&& !(statusCode / 100 == 5 && idempotent)) {
+				return response;
+			}
+			
+			System.err.println(request.getMethod() + " " + request.getURI().getPath()
+						+ ": " + response.getStatusLine() + "; retrying.");
+			
+			delay = getRetryAfter(response);
+			try {
+				EntityUtils.consume(response.getEntity());
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+			
+			if(delay >= 0) {
+				//Beeminder wants every request to wait, not just this one
+				RATE_LIMITER.pause(delay);
+			} else if(!sleep(getBackoffDelay(attempt))) {
+				return null;
+			}
+		}
+	}
+	
+	private static CircuitBreaker getCircuitBreaker(URI uri) {
+		//URLs without a port use the scheme's default, and should share
+		//a breaker with URLs that name it
+		int port = uri.getPort();
+		if(port < 0) {
+			port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+		}
+		String endpoint = uri.getScheme().toLowerCase() + "://"
+					+ uri.getHost().toLowerCase() + ":" + port;
+		
+		synchronized(CIRCUIT_BREAKERS) {
+			CircuitBreaker breaker = CIRCUIT_BREAKERS.get(endpoint);
+			if(breaker == null) {
+				breaker = new CircuitBreaker(BREAKER_THRESHOLD,
+							BREAKER_MIN_OPEN_TIME, BREAKER_MAX_OPEN_TIME);
+				CIRCUIT_BREAKERS.put(endpoint, breaker);
+			}
+			return breaker;
+		}
+	}
+	
+	/**
+	 * @return The number of milliseconds the response's Retry-After
+	 *         header asks for, or -1 if there is no valid header.
+	 */
+	private static long getRetryAfter(HttpResponse response) {
+		Header header = response.getFirstHeader("Retry-After");
+		if(header == null) {
+			return -1;
+		}
+		
+		//this may be either a number of seconds or a date
+		String value = header.getValue().trim();
+		try {
+			return Math.max(0, Long.parseLong(value) * 1000);
+		} catch(NumberFormatException e) {
+			try {
+				return Math.max(0, DateUtils.parseDate(value).getTime()
+							- System.currentTimeMillis());
+			} catch(DateParseException e2) {
+				return -1;
+			}
+		}
+	}
+	
+	private static long getBackoffDelay(int attempt) {
+		double jitter = 0.5 + JITTER.nextDouble();
+		return (long) (BACKOFF_DELAY * (1L << (attempt - 1)) * jitter);
+	}
+	
+	/**
+	 * @return False if the thread was interrupted.
+	 */
+	private static boolean sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+			return true;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	/**
+	 * @return A reader for the given entity's content, using the charset
+	 *         it specifies (or UTF-8 if none).
+	 */
+	private static Reader getContentReader(HttpEntity entity) throws IOException {
+		String charset = EntityUtils.getContentCharSet(entity);
+		return new BufferedReader(new InputStreamReader(entity.getContent(),
+					charset != null ? charset : "UTF-8"));
+	}
+	
+	private static List<JSONObject> parseResponse(HttpResponse response) {
+		Object parseResult;
+		try {
+			//parse straight from the response rather than copying it
+			//first (and JSONParser isn't thread-safe, and graphs are
+			//submitted to concurrently)
+			Reader reader = getContentReader(response.getEntity());
+			try {
+				parseResult = new JSONParser().parse(reader);
+			} finally {
+				reader.close();
+			}
+		} catch(ParseException e) {
+			e.printStackTrace();
+			parseResult = null;
+		} catch(Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+		
+		//This might be redundant, but leave it even so, in case the HTTP
+		//library changes.
+		try {
+			EntityUtils.consume(response.getEntity());
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		
+		//JSONParser.parse() can return multiple object types, depending
+		//on the JSON itself
+		List<JSONObject> parsedArray = null;
+		if(parseResult instanceof JSONArray) {
+			parsedArray = new ArrayList<JSONObject>();
+			for(Object element : (JSONArray) parseResult) {
+				if(element instanceof JSONObject) {
+					parsedArray.add((JSONObject) element);
+				} else {
+					//Currently, it's safe to ignore any sub-arrays.
+					//(Sorry if this messes things up in the future.)
+				}
+			}
+		} else if(parseResult instanceof JSONObject) {
+			parsedArray = new ArrayList<JSONObject>(1);
+			
+			parsedArray.add((JSONObject) parseResult);
+		} else {
+			System.out.println("Unknown result from JSON parser: " + parseResult);
+			parsedArray = new ArrayList<JSONObject>();
+		}
+		
+		return parsedArray;
+	}
+	
+	/**
+	 * @return The request ID for creating the given data point. This
+	 *         depends only on the user, graph, and day, so if the data
+	 *         point was already created (for example, by a request that
+	 *         timed out after Beeminder received it), Beeminder updates
+	 *         it rather than creating a duplicate.
+	 */
+	private static String getRequestID(BeeminderGraph graph, DataPoint dataPoint) {
+		return "tagtime-" + graph.tagTimeInstance.username + "-" + graph.graphName
+					+ "-" + dataPoint.timestamp;
+	}
+	
+	/**
+	 * @param dataPairs The parameters and values to post, in string
+	 *            form. They will be parsed in order, like so: [param0,
+	 *            value0, param1, value1, ...], and if there are an odd
+	 *            number, the last will be ignored. These parameters do
+	 *            not need to include the authorization token; that will
+	 *            be added.
+	 * @return The data pairs, in the correct format to be used as an
+	 *         HTML entity.
+	 */
+	private static List<NameValuePair> buildPostData(String[] dataPairs) {
+		List<NameValuePair> postData = new ArrayList<NameValuePair>();
+		for(int i = 0; i < dataPairs.length - 1; i += 2) {
+			postData.add(new BasicNameValuePair(dataPairs[i], dataPairs[i + 1]));
+		}
+		
+		return postData;
+	}
+	
+	private static String getGraphURL(TagTime tagTimeInstance, String graphName) {
+		return getBaseURL(tagTimeInstance) + "/users/" + tagTimeInstance.username
+					+ "/goals/" + graphName + ".json";
+	}
+	
+	private static String getCreateAllURL(TagTime tagTimeInstance, String graphName) {
+		return getBaseURL(tagTimeInstance) + "/users/" + tagTimeInstance.username
+					+ "/goals/" + graphName + "/datapoints/create_all.json";
+	}
+	
+	private static String getDataPointURL(TagTime tagTimeInstance, String graphName,
+									String dataPointID) {
+		return getBaseURL(tagTimeInstance) + "/users/" + tagTimeInstance.username
+					+ "/goals/" + graphName
+					+ "/datapoints/" + dataPointID + ".json";
+	}
+	
+	private static String getBaseURL(TagTime tagTimeInstance) {
+		String url = tagTimeInstance.settings.getStringValue(SettingType.API_URL);
+		
+		//allow the URL to be entered with or without a trailing slash
+		return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+	}
+	
+	private static String appendAuthToken(String url, TagTime tagTimeInstance) {
+		return url + (url.indexOf('?') < 0 ? "?" : "&") + "auth_token="
+					+ tagTimeInstance.settings.getStringValue(SettingType.AUTH_TOKEN);
+	}
+}
@@ -1,398 +1,483 @@
-/*
- * Copyright 2011-2012 Joseph Cloutier
- * 
- * This file is part of TagTime.
- * 
- * TagTime is free software: you can redistribute it and/or modify it
- * under the terms of the GNU General Public License as published by the
- * Free Software Foundation, either version 3 of the License, or (at your
- * option) any later version.
- * 
- * TagTime is distributed in the hope that it will be useful, but WITHOUT
- * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
- * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
- * for more details.
- * 
- * You should have received a copy of the GNU General Public License
- * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
- */
-
-package tagtime.beeminder;
-
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.math.RoundingMode;
-import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
-
-import tagtime.Main;
-import tagtime.TagTime;
-import tagtime.log.LogParser;
-import tagtime.settings.SettingType;
-import tagtime.util.TagMatcher;
-
-/**
- * Information about and functions related to a single Beeminder graph.
- */
-public class BeeminderGraph {
-	private static final List<String> RESET_STRINGS =
-				Arrays.asList(new String[] {"Reset today", "Unfroze today"});
-	
-	/**
-	 * Submit time spent as hours, rounded to the given number of decimal
-	 * places.
-	 */
-	public final DecimalFormat hourFormatter;
-	
-	/**
-	 * 10 ^ (the number of decimal places being used)
-	 * <p>
-	 * To compare two amounts of time, multiply them by this value, then
-	 * round them and see if the rounded values are equal.
-	 * </p>
-	 */
-	private final int roundingMultiplier;
-	
-	public final TagTime tagTimeInstance;
-	
-	/**
-	 * The name of the Beeminder graph.
-	 */
-	public final String graphName;
-	
-	private final TagMatcher tagMatcher;
-	
-	/**
-	 * Parses a graph's data and sets up a .bee file to track which tags
-	 * have been submitted to the graph.
-	 * @param username The user's Beeminder username.
-	 * @param dataEntry The data entry for the current graph. This must
-	 *            be in the format "graphName|tags".
-	 */
-	public BeeminderGraph(TagTime tagTimeInstance, String username, String dataEntry) {
-		if(username == null || dataEntry == null) {
-			throw new IllegalArgumentException("Both parameters to the " +
-						"BeeminderGraphData constructor must be defined.");
-		}
-		
-		this.tagTimeInstance = tagTimeInstance;
-		
-		int decimalDigits = tagTimeInstance.settings
-					.getIntValue(SettingType.PRECISION);
-		hourFormatter = new DecimalFormat();
-		hourFormatter.setGroupingUsed(false);
-		hourFormatter.setRoundingMode(RoundingMode.HALF_UP);
-		hourFormatter.setMaximumFractionDigits(decimalDigits);
-		roundingMultiplier = (int) Math.pow(10, decimalDigits);
-		
-		//find the graph name
-		int graphDelim = dataEntry.indexOf('|');
-		if(graphDelim < 0 || graphDelim >= dataEntry.length() - 1) {
-			throw new IllegalArgumentException("dataEntry must be in " +
-						"format \"graphname|tags\"");
-		}
-		graphName = dataEntry.substring(0, graphDelim);
-		
-		//get the tags
-		String[] tags = dataEntry.substring(graphDelim + 1).split("\\s+");
-		
-		List<String> acceptedTags = new ArrayList<String>(3);
-		List<String> rejectedTags = new ArrayList<String>(0);
-		
-		//enter the tags in the correct lists
-		for(String tag : tags) {
-			if(tag.charAt(0) == '-') {
-				rejectedTags.add(tag.substring(1).toLowerCase());
-			} else {
-				acceptedTags.add(tag.toLowerCase());
-			}
-		}
-		
-		//make sure some tags were entered
-		if(acceptedTags.size() == 0 && rejectedTags.size() == 0) {
-			throw new IllegalArgumentException("No tags provided.");
-		}
-		
-		tagMatcher = new TagMatcher(acceptedTags, rejectedTags);
-	}
-	
-	/**
-	 * Submits all matching pings from the given file that have not yet
-	 * been submitted. If SettingType.UPDATE_ALL_DATA is true, also
-	 * updates the data points that already exist on the server.
-	 * @param logFile A reference to the log file to read from.
-	 */
-	public void submitPings(File logFile) {
-		HttpClient client = new DefaultHttpClient();
-		
-		DataPoint beeminderDataPoint;
-		List<DataPoint> beeminderDataPoints = null;
-		
-		//if not updating all data points, retrieve only the latest
-		//one (this will set the value of "resetDate" such that only
-		//changes after this data point are sent to Beeminder)
-		if(!tagTimeInstance.settings.getBooleanValue(SettingType.UPDATE_ALL_DATA)) {
-			beeminderDataPoint = getDataPointFromBeeFile();
-			
-			if(beeminderDataPoint != null) {
-				beeminderDataPoints = new ArrayList<DataPoint>(1);
-				beeminderDataPoints.add(beeminderDataPoint);
-			}
-		} else {
-			tagTimeInstance.settings.setValue(SettingType.UPDATE_ALL_DATA, false);
-		}
-		
-		//if updating all data points, retrieve them now (and if the
-		//latest point couldn't be fetched, act as if UPDATE_ALL_DATA had
-		//been true)
-		if(beeminderDataPoints == null) {
-			beeminderDataPoints = BeeminderAPI.fetchAllDataPoints(client,
-						graphName, tagTimeInstance);
-			
-			if(beeminderDataPoints == null) {
-				//an error message has (probably) already been printed
-				client.getConnectionManager().shutdown();
-				tagTimeInstance.settings.setValue(SettingType.UPDATE_ALL_DATA, true);
-				return;
-			}
-			
-			//store the final data point's data
-			if(beeminderDataPoints.size() > 0) {
-				writeToBeeFile(beeminderDataPoints.get(
-							beeminderDataPoints.size() - 1));
-			}
-		}
-		
-		long resetDate = Math.max(beeminderDataPoints.get(0).timestamp,
-					BeeminderAPI.fetchResetDate(client, graphName,
-								tagTimeInstance));
-		resetDate = DataPoint.getStartOfDay(resetDate);
-		
-		//check the Beeminder list for data points that fall on the same
-		//day, and merge them (the first point gets marked as needing to
-		//be removed, and the second gets marked as needing to be updated)
-		for(int i = 1; i < beeminderDataPoints.size(); i++) {
-			beeminderDataPoint = beeminderDataPoints.get(i);
-			
-			//Special case: each time the graph is reset, Beeminder
-			//adds a "Reset today" data point. Do not remove these,
-			//and use them to set the reset date if necessary.
-			if(RESET_STRINGS.contains(beeminderDataPoint.comment)) {
-				if(beeminderDataPoint.timestamp > resetDate) {
-					resetDate = beeminderDataPoint.timestamp;
-				}
-				
-				//skip the check after this one as well
-				i++;
-				
-				//if this data point has any "hours" value besides 0,
-				//insert a new data point with that value, and set
-				//this one back to 0
-				if(beeminderDataPoint.hours != 0) {
-					//i is already 1 greater than the reset data
-					//point's index
-					beeminderDataPoints.add(i, new DataPoint(beeminderDataPoint.timestamp,
-								beeminderDataPoint.hours));
-					beeminderDataPoint.hours = 0;
-					beeminderDataPoint.toBeUpdated = true;
-				}
-			} else {
-				beeminderDataPoint.checkMerge(beeminderDataPoints.get(i - 1));
-			}
-		}
-		
-		DataPoint actualDataPoint;
-		List<DataPoint> actualDataPoints = LogParser.parse(logFile, tagMatcher);
-		
-		/*
-		 * Merge actualDataPoints into beeminderDataPoints to produce a
-		 * single list with all relevant data points.
-		 * 
-		 * This resulting list will consist of two types of data points:
-		 * those that should be on Beeminder (whether or not they already
-		 * are), and those that are currently on Beeminder and need to be
-		 * removed.
-		 * 
-		 * In other words, this process annotates beeminderDataPoints
-		 * with all the changes needed to make it match actualDataPoints.
-		 * 
-		 * (Note that both lists are already sorted by timestamp.)
-		 */
-
-		int i1 = 0, i2 = 0;
-		
-		//first part of the merge: compare data points from the two lists
-		//until one list runs out
-		while(i1 < beeminderDataPoints.size() && i2 < actualDataPoints.size()) {
-			beeminderDataPoint = beeminderDataPoints.get(i1);
-			
-			//skip data points already marked as "to be removed," and
-			//data points representing the graph being reset
-			if(beeminderDataPoint.isToBeRemoved()
-						|| RESET_STRINGS.contains(beeminderDataPoint.comment)) {
-				i1++;
-				continue;
-			}
-			
-			actualDataPoint = actualDataPoints.get(i2);
-			
-			//if the data points are for the same day, make sure the time
-			//values match, then advance both indices
-			if(beeminderDataPoint.timestamp == actualDataPoint.timestamp) {
-				//if the time values don't match, update the Beeminder
-				//data point
-				if(!roundedValuesEqual(beeminderDataPoint.hours, actualDataPoint.hours)) {
-					beeminderDataPoint.hours = actualDataPoint.hours;
-					beeminderDataPoint.toBeUpdated = true;
-				}
-				
-				i1++;
-				i2++;
-			}
-
-			//if the Beeminder data point comes before the actual data
-			//point, then that Beeminder data point corresponds to a data
-			//point that no longer exists
-			else if(beeminderDataPoint.timestamp < actualDataPoint.timestamp) {
-				beeminderDataPoint.toBeRemoved = true;
-				i1++;
-			}
-
-			//if the actual data point comes first, then it needs to be
-			//created in front of the current Beeminder data point,
-			//UNLESS this is before the graph was last reset
-			else if(actualDataPoint.timestamp >= resetDate) {
-				beeminderDataPoints.add(i1, actualDataPoint);
-				
-				//this produces a match
-				i1++;
-				i2++;
-			} else {
-				//skip all pre-reset data points
-				i2++;
-			}
-		}
-		
-		//second part of the merge: remove unmatched Beeminder data points
-		for(; i1 < beeminderDataPoints.size(); i1++) {
-			beeminderDataPoint = beeminderDataPoints.get(i1);
-			
-			//never remove "reset" data points
-			if(!RESET_STRINGS.contains(beeminderDataPoint.comment)) {
-				beeminderDataPoints.get(i1).toBeRemoved = true;
-			}
-		}
-		
-		//third part of the merge: add unmatched actual data points that
-		//come after the reset date
-		for(; i2 < actualDataPoints.size(); i2++) {
-			actualDataPoint = actualDataPoints.get(i2);
-			if(actualDataPoint.timestamp >= resetDate) {
-				beeminderDataPoints.add(actualDataPoint);
-			}
-		}
-		
-		//submit the changes to all data points in the merged list
-		final int numDataPoints = beeminderDataPoints.size();
-		for(int i = 0; i < numDataPoints; i++) {
-			beeminderDataPoint = beeminderDataPoints.get(i);
-			if(!beeminderDataPoint.submit(client, this,
-						//save the last data point's id, if it is new
-						i == numDataPoints - 1)) {
-				tagTimeInstance.settings.setValue(SettingType.UPDATE_ALL_DATA, true);
-				break;
-			}
-		}
-		
-		client.getConnectionManager().shutdown();
-		
-		System.out.println("Done submitting to your " + graphName + " graph.");
-	}
-	
-	private boolean roundedValuesEqual(double time1, double time2) {
-		return Math.round(time1 * roundingMultiplier) == Math.round(time2 * roundingMultiplier);
-	}
-	
-	private void writeToBeeFile(DataPoint dataPoint) {
-		writeToBeeFile(dataPoint.id, dataPoint.timestamp, dataPoint.hours, dataPoint.comment);
-	}
-	
-	public void writeToBeeFile(String id, long timestamp, double hours,
-				String comment) {
-		if(id == null) {
-			throw new IllegalArgumentException("id cannot be null!");
-		}
-		
-		BufferedWriter fileWriter;
-		
-		try {
-			fileWriter = new BufferedWriter(new FileWriter(
-						Main.getDataDirectory().getPath() + "/"
-									+ tagTimeInstance.username + "_"
-									+ graphName + ".bee"));
-		} catch(IOException e) {
-			e.printStackTrace();
-			return;
-		}
-		
-		try {
-			fileWriter.append(id + " " + timestamp + " " + hourFormatter.format(hours)
-						+ " " + comment);
-			fileWriter.flush();
-		} catch(IOException e) {
-			e.printStackTrace();
-		}
-		
-		try {
-			fileWriter.close();
-		} catch(IOException e) {
-			e.printStackTrace();
-		}
-	}
-	
-	private static final Pattern BEE_FILE_PATTERN = Pattern.compile("(\\w+) "
-				+ "(\\d+) (\\d+(?:\\.\\d+)) (.*)");
-	
-	private DataPoint getDataPointFromBeeFile() {
-		String fileContents;
-		
-		try {
-			BufferedReader fileReader = new BufferedReader(new FileReader(
-							Main.getDataDirectory().getPath() + "/"
-										+ tagTimeInstance.username + "_"
-										+ graphName + ".bee"));
-			fileContents = fileReader.readLine();
-			fileReader.close();
-		} catch(FileNotFoundException e) {
-			e.printStackTrace();
-			return null;
-		} catch(IOException e) {
-			e.printStackTrace();
-			return null;
-		}
-		
-		Matcher matcher = BEE_FILE_PATTERN.matcher(fileContents);
-		if(!matcher.matches()) {
-			return null;
-		}
-		
-		String id = matcher.group(1);
-		long timestamp = Long.parseLong(matcher.group(2));
-		double hours = Double.parseDouble(matcher.group(3));
-		String comment = matcher.group(4);
-		
-		return new DataPoint(id, timestamp, hours, comment);
-	}
-}
+/*
+ * Copyright 2011-2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.beeminder;
+
+import java.io.File;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.http.client.HttpClient;
+
+import tagtime.Main;
+import tagtime.TagTime;
+import tagtime.settings.SettingType;
+import tagtime.util.DayHashTree;
+import tagtime.util.TagMatcher;
+
+/**
+ * Information about and functions related to a single Beeminder graph.
+ */
+public class BeeminderGraph {
+	/**
+	 * Submit time spent as hours, rounded to the given number of decimal
+	 * places.
+	 */
+	public final DecimalFormat hourFormatter;
+	
+	/**
+	 * 10 ^ (the number of decimal places being used)
+	 * <p>
+	 * To compare two amounts of time, multiply them by this value, then
+	 * round them and see if the rounded values are equal.
+	 * </p>
+	 */
+	private final int roundingMultiplier;
+	
+	public final TagTime tagTimeInstance;
+	
+	/**
+	 * The name of the Beeminder graph.
+	 */
+	public final String graphName;
+	
+	private final TagMatcher tagMatcher;
+	
+	/**
+	 * A copy of the graph's data points on Beeminder.
+	 */
+	private final DataPointMirror mirror;
+	
+	/**
+	 * The goal's reset date and other details.
+	 */
+	private final GoalMetadata metadata;
+	
+	/**
+	 * Changes that have not yet been sent to Beeminder.
+	 */
+	private final Outbox outbox;
+	
+	/**
+	 * Recorded in remoteHashes for a day that needs changes no matter
+	 * what was logged on it. This never matches a local value.
+	 */
+	private static final long NEEDS_CHANGES = Long.MIN_VALUE;
+	
+	/**
+	 * The time logged on each day, as it would be submitted (multiplied
+	 * by roundingMultiplier and rounded), and the same for the data
+	 * points in the mirror. Only the days where these differ need to be
+	 * planned.
+	 * <p>
+	 * Days before hashesResetDay are left out of both, since data points
+	 * are never created before the reset date, and data from before the
+	 * last reset is left as it is.
+	 * </p>
+	 */
+	private final DayHashTree localHashes = new DayHashTree();
+	private final DayHashTree remoteHashes = new DayHashTree();
+	private long hashesResetDay = -1;
+	
+	/**
+	 * The days whose time has changed since localHashes was updated.
+	 * Both this and rebuildHashes are guarded by changedDays.
+	 */
+	private final SortedSet<Long> changedDays = new TreeSet<Long>();
+	
+	/**
+	 * Whether the hashes need to be built from scratch. This starts out
+	 * true, because the log file may have been edited while TagTime
+	 * wasn't running.
+	 */
+	private boolean rebuildHashes = true;
+	
+	/**
+	 * Parses a graph's data and loads the local copy of the data points
+	 * that have been submitted to the graph.
+	 * @param username The user's Beeminder username.
+	 * @param dataEntry The data entry for the current graph. This must
+	 *            be in the format "graphName|tags".
+	 */
+	public BeeminderGraph(TagTime tagTimeInstance, String username, String dataEntry) {
+		if(username == null || dataEntry == null) {
+			throw new IllegalArgumentException("Both parameters to the " +
+						"BeeminderGraphData constructor must be defined.");
+		}
+		
+		this.tagTimeInstance = tagTimeInstance;
+		
+		int decimalDigits = tagTimeInstance.settings
+					.getIntValue(SettingType.PRECISION);
+		hourFormatter = new DecimalFormat();
+		hourFormatter.setGroupingUsed(false);
+		hourFormatter.setRoundingMode(RoundingMode.HALF_UP);
+		hourFormatter.setMaximumFractionDigits(decimalDigits);
+		roundingMultiplier = (int) Math.pow(10, decimalDigits);
+		
+		//find the graph name
+		int graphDelim = dataEntry.indexOf('|');
+		if(graphDelim < 0 || graphDelim >= dataEntry.length() - 1) {
+			throw new IllegalArgumentException("dataEntry must be in " +
+						"format \"graphname|tags\"");
+		}
+		graphName = dataEntry.substring(0, graphDelim);
+		
+		//get the tags
+		String[] tags = dataEntry.substring(graphDelim + 1).split("\\s+");
+		
+		List<String> acceptedTags = new ArrayList<String>(3);
+		List<String> rejectedTags = new ArrayList<String>(0);
+		List<String> requiredTags = new ArrayList<String>(0);
+		
+		//enter the tags in the correct lists
+		for(String tag : tags) {
+			if(tag.charAt(0) == '-') {
+				rejectedTags.add(tag.substring(1).toLowerCase());
+			} else if(tag.charAt(0) == '+') {
+				requiredTags.add(tag.substring(1).toLowerCase());
+			} else {
+				acceptedTags.add(tag.toLowerCase());
+			}
+		}
+		
+		//make sure some tags were entered
+		if(acceptedTags.size() == 0 && rejectedTags.size() == 0
+					&& requiredTags.size() == 0) {
+			throw new IllegalArgumentException("No tags provided.");
+		}
+		
+		tagMatcher = new TagMatcher(acceptedTags, rejectedTags, requiredTags);
+		
+		mirror = new DataPointMirror(new File(Main.getDataDirectory(),
+					username + "_" + graphName + ".mirror"));
+		metadata = new GoalMetadata(new File(Main.getDataDirectory(),
+					username + "_" + graphName + ".goal"));
+		outbox = new Outbox(new File(Main.getDataDirectory(),
+					username + "_" + graphName + ".outbox"));
+	}
+	
+	/**
+	 * Submits all matching pings from the log file that have not yet
+	 * been submitted. This may be called from any thread.
+	 * @param client The client to send requests with. This will not be
+	 *            shut down afterwards.
+	 * @param updateAllData Whether to download all data points from
+	 *            Beeminder again, rather than only the ones that changed
+	 *            since the last submission.
+	 * @return Whether all changes were submitted. If not, the remaining
+	 *         changes are saved in the outbox; use
+	 *         {@link #submitOutbox(HttpClient)} to retry them.
+	 */
+	public synchronized boolean submitPings(HttpClient client, boolean updateAllData) {
+		//bring the mirror up to date, downloading everything only if
+		//necessary, and not asking Beeminder at all if it was asked
+		//recently
+		DataPointHandler goal;
+		boolean remoteChanged = false;
+		
+		//a goal with no data points has no update time to ask for
+		//changes since, so use the time of the download instead
+		long fetchedAt = System.currentTimeMillis() / 1000;
+		
+		if(updateAllData || !mirror.isComplete()) {
+			goal = BeeminderAPI.fetchGoal(client, graphName, tagTimeInstance, -1, metadata);
+			if(goal == null) {
+				//an error message has (probably) already been printed
+				return false;
+			}
+			mirror.replace(goal.getDataPoints(), goal.getDataPoints().size() > 0
+						? goal.getLastUpdated() : fetchedAt);
+			remoteChanged = true;
+		} else if(!metadata.isFresh(tagTimeInstance.settings
+					.getIntValue(SettingType.GOAL_CACHE_TIME) * 1000L)) {
+			goal = BeeminderAPI.fetchGoal(client, graphName, tagTimeInstance,
+						mirror.getLastUpdated(), metadata);
+			if(goal == null) {
+				return false;
+			}
+			if(goal.getDataPoints().size() > 0) {
+				mirror.update(goal.getDataPoints(), goal.getLastUpdated());
+				remoteChanged = true;
+			} else if(mirror.getLastUpdated() == 0) {
+				//a mirror of an empty goal may have been saved without a
+				//download time, which would ask for every data point
+				mirror.update(goal.getDataPoints(), fetchedAt);
+			}
+		}
+		
+		long resetDate = metadata.getResetDate();
+		List<DataPoint> remoteDataPoints = mirror.getDataPoints();
+		long resetDay = ChangeSetPlanner.getResetDay(remoteDataPoints, resetDate);
+		
+		SortedSet<Long> days;
+		boolean rebuild;
+		synchronized(changedDays) {
+			days = new TreeSet<Long>(changedDays);
+			changedDays.clear();
+			rebuild = rebuildHashes;
+			rebuildHashes = false;
+		}
+		
+		//both trees leave out the days before the reset day, so if that
+		//moves, both need rebuilding
+		if(resetDay != hashesResetDay) {
+			hashesResetDay = resetDay;
+			rebuild = true;
+		}
+		
+		if(rebuild || remoteChanged) {
+			rebuildRemoteHashes(remoteDataPoints);
+		}
+		
+		//the rollup is kept up to date as pings are logged, so there is
+		//no need to parse the log file here
+		if(rebuild) {
+			localHashes.clear();
+			for(DataPoint local : tagTimeInstance.log.getDailyTotals(tagMatcher)) {
+				putLocalHash(local);
+			}
+		} else if(days.size() > 0) {
+			for(Long day : days) {
+				localHashes.remove(day);
+			}
+			for(DataPoint local : tagTimeInstance.log.getDailyTotals(tagMatcher, days)) {
+				putLocalHash(local);
+			}
+		}
+		
+		//only plan the days that don't match (and the new plan includes
+		//anything still in the outbox)
+		days = localHashes.findDifferences(remoteHashes);
+		outbox.replace(ChangeSetPlanner.plan(remoteDataPoints,
+					tagTimeInstance.log.getDailyTotals(tagMatcher, days), resetDate,
+					roundingMultiplier, days));
+		
+		return submitOutbox(client);
+	}
+	
+	private void putLocalHash(DataPoint local) {
+		if(local.timestamp >= hashesResetDay) {
+			localHashes.put(local.timestamp, Math.round(local.hours * roundingMultiplier));
+		}
+	}
+	
+	private void rebuildRemoteHashes(List<DataPoint> remoteDataPoints) {
+		remoteHashes.clear();
+		
+		//the data points are sorted, so each day's are together
+		int start = 0;
+		for(int i = 1; i <= remoteDataPoints.size(); i++) {
+			if(i == remoteDataPoints.size()
+						|| remoteDataPoints.get(i).timestamp != remoteDataPoints.get(start).timestamp) {
+				putRemoteHash(remoteDataPoints.get(start).timestamp,
+							remoteDataPoints.subList(start, i));
+				start = i;
+			}
+		}
+	}
+	
+	/**
+	 * Records the given day's data points in remoteHashes. A day
+	 * matches the log file only if it has a single data point with the
+	 * same value, apart from reset data points with no time.
+	 */
+	private void putRemoteHash(long day, List<DataPoint> dataPoints) {
+		if(day < hashesResetDay) {
+			return;
+		}
+		
+		DataPoint found = null;
+		for(DataPoint dataPoint : dataPoints) {
+			if(ChangeSetPlanner.RESET_STRINGS.contains(dataPoint.comment)) {
+				if(dataPoint.hours != 0) {
+					remoteHashes.put(day, NEEDS_CHANGES);
+					return;
+				}
+			} else if(found != null) {
+				//these will be merged
+				remoteHashes.put(day, NEEDS_CHANGES);
+				return;
+			} else {
+				found = dataPoint;
+			}
+		}
+		
+		if(found != null) {
+			remoteHashes.put(day, Math.round(found.hours * roundingMultiplier));
+		} else {
+			remoteHashes.remove(day);
+		}
+	}
+	
+	/**
+	 * Sends any changes left in the outbox by a previous submission.
+	 * This may be called from any thread.
+	 * @return Whether the outbox is now empty.
+	 */
+	public synchronized boolean submitOutbox(HttpClient client) {
+		if(outbox.isEmpty()) {
+			return true;
+		}
+		
+		ChangeSet changes = outbox.getChanges();
+		ChangeSet remaining = submitChanges(client, changes);
+		
+		mirror.save();
+		outbox.replace(remaining);
+		
+		//update the hashes of the days that were sent
+		SortedSet<Long> days = new TreeSet<Long>();
+		addDays(days, changes.getCreates());
+		addDays(days, changes.getUpdates());
+		addDays(days, changes.getDeletes());
+		for(Long day : days) {
+			putRemoteHash(day, mirror.getDataPoints(day));
+		}
+		
+		if(remaining.isEmpty()) {
+			System.out.println("Done submitting to your " + graphName + " graph.");
+			return true;
+		}
+		
+		return false;
+	}
+	
+	private static void addDays(SortedSet<Long> days, List<DataPoint> dataPoints) {
+		for(DataPoint dataPoint : dataPoints) {
+			days.add(dataPoint.timestamp);
+		}
+	}
+	
+	/**
+	 * @return Whether some changes have yet to be sent to Beeminder.
+	 */
+	public boolean hasPendingChanges() {
+		return !outbox.isEmpty();
+	}
+	
+	/**
+	 * Sends the given changes to Beeminder, and copies each one that
+	 * succeeds to the mirror. New data points are created in batches.
+	 * @return The changes that were not sent. If a request fails, the
+	 *         rest are not attempted.
+	 */
+	private ChangeSet submitChanges(HttpClient client, ChangeSet changes) {
+		List<DataPoint> deletes = changes.getDeletes();
+		List<DataPoint> updates = changes.getUpdates();
+		List<DataPoint> creates = changes.getCreates();
+		
+		int i;
+		for(i = 0; i < deletes.size(); i++) {
+			if(!BeeminderAPI.deleteDataPoint(client, this, deletes.get(i))) {
+				return new ChangeSet(creates, updates, deletes.subList(i, deletes.size()));
+			}
+			mirror.remove(deletes.get(i).id);
+		}
+		
+		for(i = 0; i < updates.size(); i++) {
+			if(!BeeminderAPI.updateDataPoint(client, this, updates.get(i))) {
+				return new ChangeSet(creates, updates.subList(i, updates.size()),
+							Collections.<DataPoint>emptyList());
+			}
+			mirror.put(updates.get(i));
+		}
+		
+		if(creates.isEmpty()) {
+			return ChangeSet.EMPTY;
+		}
+		
+		//the change set can't be modified, and creating data points
+		//fills in their ids
+		List<DataPoint> newDataPoints = new ArrayList<DataPoint>(creates.size());
+		for(DataPoint dataPoint : creates) {
+			newDataPoints.add(new DataPoint(dataPoint));
+		}
+		
+		BeeminderAPI.createDataPoints(client, this, newDataPoints);
+		
+		//some batches may have succeeded even if others didn't
+		List<DataPoint> unsent = new ArrayList<DataPoint>();
+		for(DataPoint dataPoint : newDataPoints) {
+			if(dataPoint.id != null) {
+				mirror.put(dataPoint);
+			} else {
+				unsent.add(dataPoint);
+			}
+		}
+		
+		return new ChangeSet(unsent, Collections.<DataPoint>emptyList(),
+					Collections.<DataPoint>emptyList());
+	}
+	
+	/**
+	 * Records that the time this graph was credited with on the given
+	 * day may have changed, so that the next submission recalculates
+	 * that day. This may be called from any thread.
+	 * @param day The Unix timestamp (in seconds) of the start of the day.
+	 */
+	public void markChanged(long day) {
+		synchronized(changedDays) {
+			changedDays.add(day);
+		}
+	}
+	
+	/**
+	 * @return The hours this graph has been credited with between the
+	 *         days containing the given Unix timestamps (in seconds),
+	 *         including both days, according to the log file.
+	 */
+	public double getHours(long from, long to) {
+		return tagTimeInstance.log.getHours(tagMatcher, from, to);
+	}
+	
+	/**
+	 * @return The hours this graph has been credited with so far this
+	 *         week.
+	 */
+	public double getHoursThisWeek() {
+		Calendar calendar = Calendar.getInstance();
+		calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+		return getHours(calendar.getTimeInMillis() / 1000, System.currentTimeMillis() / 1000);
+	}
+	
+	/**
+	 * @return The hours this graph has been credited with so far this
+	 *         month.
+	 */
+	public double getHoursThisMonth() {
+		Calendar calendar = Calendar.getInstance();
+		calendar.set(Calendar.DAY_OF_MONTH, 1);
+		return getHours(calendar.getTimeInMillis() / 1000, System.currentTimeMillis() / 1000);
+	}
+	
+	/**
+	 * @return Whether pings with the given tags count towards this
+	 *         graph.
+	 */
+	public boolean matchesTags(List<String> tags) {
+		return tagMatcher.matchesTags(tags);
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.beeminder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes needed to make a graph's data points on Beeminder match
+ * the log file, as planned by {@link ChangeSetPlanner}. A change set
+ * can't be modified once created, and its data points are copies, so
+ * it can safely be passed between threads.
+ */
+public class ChangeSet {
+	public static final ChangeSet EMPTY = new ChangeSet(Collections.<DataPoint>emptyList(),
+				Collections.<DataPoint>emptyList(), Collections.<DataPoint>emptyList());
+	
+	private final List<DataPoint> creates;
+	private final List<DataPoint> updates;
+	private final List<DataPoint> deletes;
+	
+	/**
+	 * @param creates The data points to create. These have no id.
+	 * @param updates The data points to update, with their new values.
+	 * @param deletes The data points to delete.
+	 */
+	public ChangeSet(List<DataPoint> creates, List<DataPoint> updates,
+				List<DataPoint> deletes) {
+		this.creates = copy(creates);
+		this.updates = copy(updates);
+		this.deletes = copy(deletes);
+	}
+	
+	/**
+	 * @return The data points to create, sorted by timestamp. Don't
+	 *         modify these; use {@link DataPoint#DataPoint(DataPoint)}
+	 *         to make a copy first.
+	 */
+	public List<DataPoint> getCreates() {
+		return creates;
+	}
+	
+	/**
+	 * @return The data points to update, in no particular order.
+	 */
+	public List<DataPoint> getUpdates() {
+		return updates;
+	}
+	
+	/**
+	 * @return The data points to delete, in no particular order.
+	 */
+	public List<DataPoint> getDeletes() {
+		return deletes;
+	}
+	
+	public boolean isEmpty() {
+		return creates.isEmpty() && updates.isEmpty() && deletes.isEmpty();
+	}
+	
+	public int size() {
+		return creates.size() + updates.size() + deletes.size();
+	}
+	
+	@Override
+	public String toString() {
+		return creates.size() + " to create, " + updates.size() + " to update, "
+					+ deletes.size() + " to delete";
+	}
+	
+	private static List<DataPoint> copy(List<DataPoint> dataPoints) {
+		List<DataPoint> copies = new ArrayList<DataPoint>(dataPoints.size());
+		for(DataPoint dataPoint : dataPoints) {
+			copies.add(new DataPoint(dataPoint));
+		}
+		
+		return Collections.unmodifiableList(copies);
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.beeminder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Works out which changes to make to a graph's data points on Beeminder,
+ * without sending any requests.
+ */
+public class ChangeSetPlanner {
+	/**
+	 * Each time a graph is reset, Beeminder adds a data point with one of
+	 * these comments. These are never removed, and mark the date before
+	 * which no new data points should be created.
+	 */
+	public static final List<String> RESET_STRINGS =
+				Arrays.asList(new String[] {"Reset today", "Unfroze today"});
+	
+	/**
+	 * Plans the changes needed to make the data points on Beeminder
+	 * match the log file. Both lists are only read once each, in order.
+	 * @param remoteDataPoints The data points currently on Beeminder,
+	 *            sorted by timestamp.
+	 * @param localDataPoints The time logged on each day, sorted by
+	 *            timestamp, with at most one data point per day.
+	 * @param resetDate The Unix timestamp (in seconds) of the day the
+	 *            graph was last reset, according to Beeminder. Data
+	 *            points before this (or before the first data point on
+	 *            Beeminder, or before a reset data point) will not be
+	 *            created.
+	 * @param roundingMultiplier 10 ^ (the number of decimal places being
+	 *            submitted). Amounts that round to the same value are
+	 *            considered equal.
+	 */
+	public static ChangeSet plan(List<DataPoint> remoteDataPoints,
+				List<DataPoint> localDataPoints, long resetDate,
+				int roundingMultiplier) {
+		if(remoteDataPoints.size() > 0) {
+			resetDate = Math.max(resetDate, remoteDataPoints.get(0).timestamp);
+		}
+		
+		return planFrom(remoteDataPoints, localDataPoints, resetDate, roundingMultiplier);
+	}
+	
+	/**
+	 * Plans the changes needed on the given days only, for use when the
+	 * other days are known not to need any.
+	 * The parameters are the same as for
+	 * {@link #plan(List, List, long, int)}, except for:
+	 * @param localDataPoints The time logged on each of the given days.
+	 *            Other days are ignored.
+	 * @param days The Unix timestamps (in seconds) of the start of each
+	 *            day to plan.
+	 */
+	public static ChangeSet plan(List<DataPoint> remoteDataPoints,
+				List<DataPoint> localDataPoints, long resetDate,
+				int roundingMultiplier, Set<Long> days) {
+		//the reset date depends on every data point, not just the ones on
+		//these days
+		resetDate = getResetDay(remoteDataPoints, resetDate);
+		
+		List<DataPoint> remoteOnDays = new ArrayList<DataPoint>();
+		for(DataPoint remote : remoteDataPoints) {
+			if(days.contains(remote.timestamp)) {
+				remoteOnDays.add(remote);
+			}
+		}
+		
+		List<DataPoint> localOnDays = new ArrayList<DataPoint>(days.size());
+		for(DataPoint local : localDataPoints) {
+			if(days.contains(local.timestamp)) {
+				localOnDays.add(local);
+			}
+		}
+		
+		return planFrom(remoteOnDays, localOnDays, resetDate, roundingMultiplier);
+	}
+	
+	/**
+	 * @param resetDate The goal's reset date, according to Beeminder.
+	 * @return The Unix timestamp (in seconds) of the start of the first
+	 *         day on which data points may be created: the day of the
+	 *         reset date, the first data point on Beeminder, or the last
+	 *         reset data point, whichever is latest.
+	 */
+	public static long getResetDay(List<DataPoint> remoteDataPoints, long resetDate) {
+		if(remoteDataPoints.size() > 0) {
+			resetDate = Math.max(resetDate, remoteDataPoints.get(0).timestamp);
+		}
+		
+		for(DataPoint remote : remoteDataPoints) {
+			if(RESET_STRINGS.contains(remote.comment)) {
+				resetDate = Math.max(resetDate, remote.timestamp);
+			}
+		}
+		
+		return DataPoint.getStartOfDay(resetDate);
+	}
+	
+	/**
+	 * @param resetDate No data points will be created before the day
+	 *            containing this Unix timestamp (in seconds), or before
+	 *            a reset data point.
+	 */
+	private static ChangeSet planFrom(List<DataPoint> remoteDataPoints,
+				List<DataPoint> localDataPoints, long resetDate,
+				int roundingMultiplier) {
+		List<DataPoint> creates = new ArrayList<DataPoint>();
+		List<DataPoint> updates = new ArrayList<DataPoint>();
+		List<DataPoint> deletes = new ArrayList<DataPoint>();
+		
+		/*
+		 * First pass: reduce the remote data points to at most one per
+		 * day. When several fall on the same day, the last one is kept
+		 * and given the others' time and comments, and the others are
+		 * deleted. Reset data points are left alone (except that any
+		 * time on them is removed), and move the reset date forward.
+		 */
+		List<DataPoint> remaining = new ArrayList<DataPoint>(remoteDataPoints.size());
+		List<Boolean> merged = new ArrayList<Boolean>(remoteDataPoints.size());
+		DataPoint previous = null;
+		for(DataPoint remote : remoteDataPoints) {
+			if(RESET_STRINGS.contains(remote.comment)) {
+				resetDate = Math.max(resetDate, remote.timestamp);
+				
+				if(remote.hours != 0) {
+					DataPoint update = new DataPoint(remote);
+					update.hours = 0;
+					updates.add(update);
+				}
+				continue;
+			}
+			
+			if(previous != null && previous.timestamp == remote.timestamp) {
+				DataPoint combined = new DataPoint(remote);
+				combined.hours += previous.hours;
+				if(previous.comment.length() > 0) {
+					combined.comment = combined.comment.length() > 0
+								? previous.comment + "; " + combined.comment
+								: previous.comment;
+				}
+				
+				deletes.add(previous);
+				remaining.set(remaining.size() - 1, combined);
+				merged.set(merged.size() - 1, true);
+				previous = combined;
+			} else {
+				remaining.add(remote);
+				merged.add(false);
+				previous = remote;
+			}
+		}
+		
+		resetDate = DataPoint.getStartOfDay(resetDate);
+		
+		/*
+		 * Second pass: merge-join the two lists by day. Days only on
+		 * Beeminder are deleted, days only in the log file are created
+		 * (unless they come before the reset date), and days in both are
+		 * updated if their values differ.
+		 */
+		int i1 = 0, i2 = 0;
+		DataPoint remote, local;
+		while(i1 < remaining.size() || i2 < localDataPoints.size()) {
+			remote = i1 < remaining.size() ? remaining.get(i1) : null;
+			local = i2 < localDataPoints.size() ? localDataPoints.get(i2) : null;
+			
+			if(remote != null && local != null && remote.timestamp == local.timestamp) {
+				if(merged.get(i1) || Math.round(remote.hours * roundingMultiplier)
+							!= Math.round(local.hours * roundingMultiplier)) {
+					DataPoint update = new DataPoint(remote);
+					update.hours = local.hours;
+					updates.add(update);
+				}
+				
+				i1++;
+				i2++;
+			} else if(local == null || remote != null && remote.timestamp < local.timestamp) {
+				//this day no longer has any time logged
+				deletes.add(remote);
+				i1++;
+			} else {
+				if(local.timestamp >= resetDate) {
+					creates.add(new DataPoint(local.timestamp, local.hours));
+				}
+				i2++;
+			}
+		}
+		
+		return new ChangeSet(creates, updates, deletes);
+	}
+}
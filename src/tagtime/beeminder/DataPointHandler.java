@@ -0,0 +1,239 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.beeminder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.simple.parser.ContentHandler;
+
+/**
+ * Builds data points as a JSON array of them (or a goal with a
+ * "datapoints" array) is parsed, without storing the rest of the JSON.
+ * Pass this to
+ * {@link org.json.simple.parser.JSONParser#parse(java.io.Reader, ContentHandler)}
+ * , then call {@link #getDataPoints()}.
+ */
+class DataPointHandler implements ContentHandler {
+	private final List<DataPoint> dataPoints = new ArrayList<DataPoint>();
+	
+	/**
+	 * Whether dataPoints needs to be sorted.
+	 */
+	private boolean outOfOrder = false;
+	
+	/**
+	 * How many arrays and objects the parser is inside.
+	 */
+	private int depth = 0;
+	
+	/**
+	 * The depth of the objects representing data points: 2 if the JSON
+	 * is an array of data points, 3 if it is a goal containing them, and
+	 * -1 outside of the array of data points.
+	 */
+	private int dataPointDepth = -1;
+	
+	/**
+	 * The key of the current entry in the outer object, if any.
+	 */
+	private String goalKey;
+	
+	/**
+	 * The key of the current entry in the current data point, if any.
+	 */
+	private String key;
+	
+	private String id;
+	private long timestamp;
+	private double value;
+	private String comment;
+	
+	private long lastUpdated = -1;
+	private long resetDate = 0;
+	private String units = "";
+	private long goalUpdatedAt = -1;
+	
+	/**
+	 * @return The data points, sorted by timestamp. Data points with the
+	 *         same timestamp are left in the order Beeminder sent them.
+	 */
+	public List<DataPoint> getDataPoints() {
+		if(outOfOrder) {
+			//this sort is stable, as required
+			Collections.sort(dataPoints, DataPoint.TIMESTAMP_ORDER);
+			outOfOrder = false;
+		}
+		
+		return dataPoints;
+	}
+	
+	/**
+	 * @return The latest update time of any data point, as a Unix
+	 *         timestamp in seconds, or -1 if there were none.
+	 */
+	public long getLastUpdated() {
+		return lastUpdated;
+	}
+	
+	/**
+	 * @return The goal's reset date, as a Unix timestamp in seconds, or 0
+	 *         if it was not included.
+	 */
+	public long getResetDate() {
+		return resetDate;
+	}
+	
+	/**
+	 * @return The goal's units, or an empty string if they were not
+	 *         included.
+	 */
+	public String getUnits() {
+		return units;
+	}
+	
+	/**
+	 * @return The time the goal was last changed, as a Unix timestamp in
+	 *         seconds, or -1 if it was not included.
+	 */
+	public long getGoalUpdatedAt() {
+		return goalUpdatedAt;
+	}
+	
+	@Override
+	public void startJSON() {
+	}
+	
+	@Override
+	public void endJSON() {
+	}
+	
+	@Override
+	public boolean startArray() {
+		depth++;
+		
+		if(depth == 1) {
+			dataPointDepth = 2;
+		} else if(depth == 2 && "datapoints".equals(goalKey)) {
+			dataPointDepth = 3;
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public boolean endArray() {
+		//objects in any later array aren't data points
+		if(depth == dataPointDepth - 1) {
+			dataPointDepth = -1;
+		}
+		
+		depth--;
+		return true;
+	}
+	
+	@Override
+	public boolean startObject() {
+		depth++;
+		
+		if(depth == dataPointDepth) {
+			id = null;
+			timestamp = 0;
+			value = 0;
+			comment = "";
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public boolean endObject() {
+		if(depth == dataPointDepth && id != null) {
+			DataPoint dataPoint = new DataPoint(id, timestamp, value, comment);
+			
+			if(dataPoints.size() > 0
+						&& dataPoints.get(dataPoints.size() - 1).timestamp > dataPoint.timestamp) {
+				outOfOrder = true;
+			}
+			dataPoints.add(dataPoint);
+		}
+		
+		depth--;
+		return true;
+	}
+	
+	@Override
+	public boolean startObjectEntry(String key) {
+		if(depth == 1) {
+			goalKey = key;
+		} else if(depth == dataPointDepth) {
+			this.key = key;
+		}
+		return true;
+	}
+	
+	@Override
+	public boolean endObjectEntry() {
+		if(depth == 1) {
+			goalKey = null;
+		} else if(depth == dataPointDepth) {
+			key = null;
+		}
+		return true;
+	}
+	
+	@Override
+	public boolean primitive(Object primitive) {
+		if(primitive == null) {
+			return true;
+		}
+		
+		if(depth == 1) {
+			if("reset".equals(goalKey) && primitive instanceof Number) {
+				resetDate = ((Number) primitive).longValue();
+			} else if("updated_at".equals(goalKey) && primitive instanceof Number) {
+				goalUpdatedAt = ((Number) primitive).longValue();
+			} else if("gunits".equals(goalKey)) {
+				units = primitive.toString();
+			}
+			return true;
+		}
+		
+		if(depth != dataPointDepth || key == null) {
+			return true;
+		}
+		
+		if(key.equals("id")) {
+			id = primitive.toString();
+		} else if(key.equals("timestamp") && primitive instanceof Number) {
+			timestamp = ((Number) primitive).longValue();
+		} else if(key.equals("value") && primitive instanceof Number) {
+			//whole numbers are parsed as Longs
+			value = ((Number) primitive).doubleValue();
+		} else if(key.equals("comment")) {
+			comment = primitive.toString();
+		} else if(key.equals("updated_at") && primitive instanceof Number) {
+			lastUpdated = Math.max(lastUpdated, ((Number) primitive).longValue());
+		}
+		
+		return true;
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.beeminder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import tagtime.util.AtomicFile;
+
+/**
+ * <p>
+ * A local copy of every data point on a Beeminder graph, saved in the
+ * data directory. After the first download, only data points changed
+ * since the last download need to be fetched, and changes TagTime makes
+ * are copied here as they succeed.
+ * </p>
+ * <p>
+ * The first line of the file is <code>U lastUpdated</code>, where
+ * <code>lastUpdated</code> is the latest update time Beeminder reported
+ * for any data point. Each following line is one data point, in the
+ * format <code>id timestamp hours comment</code>.
+ * </p>
+ * <p>
+ * Beeminder doesn't report data points deleted on its website, so set
+ * SettingType.UPDATE_ALL_DATA to true to download everything again.
+ * </p>
+ */
+public class DataPointMirror {
+	private final File mirrorFile;
+	
+	/**
+	 * The data points, sorted by timestamp.
+	 */
+	private final List<DataPoint> dataPoints = new ArrayList<DataPoint>();
+	
+	/**
+	 * The Unix timestamp (in seconds) of the latest change Beeminder has
+	 * reported (or of the last download, if the goal had no data points),
+	 * or -1 if nothing has been downloaded.
+	 */
+	private long lastUpdated = -1;
+	
+	public DataPointMirror(File mirrorFile) {
+		this.mirrorFile = mirrorFile;
+		
+		load();
+	}
+	
+	/**
+	 * @return Whether all data points have been downloaded at least
+	 *         once.
+	 */
+	public synchronized boolean isComplete() {
+		return lastUpdated >= 0;
+	}
+	
+	/**
+	 * @return The time to pass to Beeminder to find data points that
+	 *         have changed since the last download.
+	 */
+	public synchronized long getLastUpdated() {
+		return lastUpdated;
+	}
+	
+	/**
+	 * @return A copy of each data point, sorted by timestamp. These can
+	 *         be modified without affecting the mirror.
+	 */
+	public synchronized List<DataPoint> getDataPoints() {
+		List<DataPoint> copies = new ArrayList<DataPoint>(dataPoints.size());
+		for(DataPoint dataPoint : dataPoints) {
+			copies.add(new DataPoint(dataPoint.id, dataPoint.timestamp,
+						dataPoint.hours, dataPoint.comment));
+		}
+		
+		return copies;
+	}
+	
+	/**
+	 * @param day The Unix timestamp (in seconds) of the start of a day.
+	 * @return A copy of each data point on the given day.
+	 */
+	public synchronized List<DataPoint> getDataPoints(long day) {
+		//find the first data point on the day
+		int low = 0, high = dataPoints.size();
+		int middle;
+		while(low < high) {
+			middle = (low + high) >>> 1;
+			if(dataPoints.get(middle).timestamp < day) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		
+		List<DataPoint> copies = new ArrayList<DataPoint>(1);
+		DataPoint dataPoint;
+		for(int i = low; i < dataPoints.size() && dataPoints.get(i).timestamp == day; i++) {
+			dataPoint = dataPoints.get(i);
+			copies.add(new DataPoint(dataPoint.id, dataPoint.timestamp,
+						dataPoint.hours, dataPoint.comment));
+		}
+		
+		return copies;
+	}
+	
+	/**
+	 * Replaces all data points with a full download.
+	 * @param newDataPoints Every data point on the graph, sorted by
+	 *            timestamp.
+	 * @param updated The latest update time of any of them, or if there
+	 *            are none, the time they were downloaded.
+	 */
+	public synchronized void replace(List<DataPoint> newDataPoints, long updated) {
+		dataPoints.clear();
+		for(DataPoint dataPoint : newDataPoints) {
+			dataPoints.add(dataPoint);
+		}
+		lastUpdated = Math.max(updated, 0);
+		
+		save();
+	}
+	
+	/**
+	 * Applies a partial download.
+	 * @param changedDataPoints The data points that have been created or
+	 *            updated since {@link #getLastUpdated()}.
+	 * @param updated The latest update time of any of them.
+	 */
+	public synchronized void update(List<DataPoint> changedDataPoints, long updated) {
+		for(DataPoint dataPoint : changedDataPoints) {
+			put(dataPoint);
+		}
+		lastUpdated = Math.max(lastUpdated, updated);
+		
+		save();
+	}
+	
+	/**
+	 * Records that a data point was created or updated. Call
+	 * {@link #save()} afterwards.
+	 */
+	public synchronized void put(DataPoint dataPoint) {
+		if(dataPoint.id == null) {
+			throw new IllegalArgumentException("Only data points that exist " +
+						"on Beeminder can be mirrored.");
+		}
+		
+		remove(dataPoint.id);
+		
+		//most changes are to recent data points, so search backwards
+		int index = dataPoints.size();
+		while(index > 0 && dataPoints.get(index - 1).timestamp > dataPoint.timestamp) {
+			index--;
+		}
+		
+		dataPoints.add(index, new DataPoint(dataPoint.id, dataPoint.timestamp,
+					dataPoint.hours, dataPoint.comment));
+	}
+	
+	/**
+	 * Records that a data point was deleted. Call {@link #save()}
+	 * afterwards.
+	 */
+	public synchronized void remove(String id) {
+		for(int i = dataPoints.size() - 1; i >= 0; i--) {
+			if(dataPoints.get(i).id.equals(id)) {
+				dataPoints.remove(i);
+				return;
+			}
+		}
+	}
+	
+	private void load() {
+		if(!mirrorFile.exists()) {
+			return;
+		}
+		
+		try {
+			BufferedReader fileReader = new BufferedReader(new FileReader(mirrorFile));
+			
+			try {
+				String line = fileReader.readLine();
+				if(line == null || !line.startsWith("U ")) {
+					throw new IOException(mirrorFile.getName() + " is damaged.");
+				}
+				long updated = Long.parseLong(line.substring(2));
+				
+				String[] fields;
+				while((line = fileReader.readLine()) != null) {
+					fields = line.split(" ", 4);
+					if(fields.length < 3) {
+						continue;
+					}
+					
+					dataPoints.add(new DataPoint(fields[0], Long.parseLong(fields[1]),
+								Double.parseDouble(fields[2]),
+								fields.length > 3 ? fields[3] : ""));
+				}
+				
+				//only mark the mirror as complete once it has all loaded
+				lastUpdated = updated;
+			} finally {
+				fileReader.close();
+			}
+		} catch(Exception e) {
+			e.printStackTrace();
+			
+			//download everything again
+			dataPoints.clear();
+			lastUpdated = -1;
+		}
+	}
+	
+	/**
+	 * Saves any changes made with {@link #put(DataPoint)} or
+	 * {@link #remove(String)}.
+	 */
+	public synchronized void save() {
+		if(lastUpdated < 0) {
+			return;
+		}
+		
+		StringBuilder records = new StringBuilder();
+		records.append("U " + lastUpdated + "\n");
+		for(DataPoint dataPoint : dataPoints) {
+			records.append(dataPoint.id + " " + dataPoint.timestamp + " "
+						+ dataPoint.hours + " "
+						+ dataPoint.comment.replaceAll("[\r\n]", " ") + "\n");
+		}
+		
+		AtomicFile.write(mirrorFile, records.toString());
+	}
+}
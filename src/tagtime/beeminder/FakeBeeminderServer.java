@@ -0,0 +1,542 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.beeminder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>
+ * A stand-in for the parts of the Beeminder API that TagTime uses, which
+ * keeps all goals and data points in memory. Use this to try out
+ * submissions without a network connection, to measure how fast they
+ * are, or to test them. Goals are created as soon as they are used, and
+ * any auth token is accepted.
+ * </p>
+ * <p>
+ * Run it with
+ * <code>java tagtime.beeminder.FakeBeeminderServer [port] [latency] [errorRate] [throttleRate]</code>
+ * , then set API_URL to the address it prints. Each request waits
+ * <code>latency</code> milliseconds, then fails with a 500 error with
+ * probability <code>errorRate</code>, or is throttled (429) with
+ * probability <code>throttleRate</code>.
+ * </p>
+ * <p>
+ * Responses to GET requests include an ETag, and a request with a
+ * matching If-None-Match header gets a 304 response with no body.
+ * </p>
+ */
+public class FakeBeeminderServer {
+	private static final Pattern GOAL_PATTERN = Pattern.compile(
+				"/users/([^/]+)/goals/([^/.]+)\\.json");
+	private static final Pattern DATA_POINTS_PATTERN = Pattern.compile(
+				"/users/([^/]+)/goals/([^/]+)/datapoints\\.json");
+	private static final Pattern CREATE_ALL_PATTERN = Pattern.compile(
+				"/users/([^/]+)/goals/([^/]+)/datapoints/create_all\\.json");
+	private static final Pattern DATA_POINT_PATTERN = Pattern.compile(
+				"/users/([^/]+)/goals/([^/]+)/datapoints/([^/.]+)\\.json");
+	
+	private final HttpServer server;
+	
+	private volatile long latency = 0;
+	private volatile double errorRate = 0;
+	private volatile double throttleRate = 0;
+	
+	private final Random random = new Random();
+	
+	/**
+	 * Each goal, keyed by "username/goalname".
+	 */
+	private final Map<String, Goal> goals = new HashMap<String, Goal>();
+	
+	private int nextID = 1;
+	
+	private int requestCount = 0;
+	
+	/**
+	 * The number of upcoming requests to throttle no matter what the
+	 * throttle rate is.
+	 */
+	private int throttleCount = 0;
+	
+	/**
+	 * @param port The port to listen on, or 0 to choose any free port.
+	 */
+	public FakeBeeminderServer(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					FakeBeeminderServer.this.handle(exchange);
+				} catch(RuntimeException e) {
+					e.printStackTrace();
+					respond(exchange, 500, error("Internal error"));
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+	}
+	
+	public void start() {
+		server.start();
+	}
+	
+	public void stop() {
+		server.stop(0);
+	}
+	
+	/**
+	 * @return The URL to use for SettingType.API_URL.
+	 */
+	public String getBaseURL() {
+		return "http://localhost:" + server.getAddress().getPort() + "/api/v1";
+	}
+	
+	/**
+	 * Sets how many milliseconds to wait before answering each request.
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+	
+	/**
+	 * Sets the fraction of requests that fail with a 500 error.
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+	
+	/**
+	 * Sets the fraction of requests that are throttled with a 429
+	 * error, asking the client to wait one second.
+	 */
+	public void setThrottleRate(double throttleRate) {
+		this.throttleRate = throttleRate;
+	}
+	
+	/**
+	 * Throttles the next few requests, so that retries can be tested
+	 * without relying on chance.
+	 */
+	public synchronized void throttleNext(int count) {
+		throttleCount = count;
+	}
+	
+	/**
+	 * @return The number of requests received so far.
+	 */
+	public synchronized int getRequestCount() {
+		return requestCount;
+	}
+	
+	/**
+	 * Sets a goal's reset date, as Beeminder would when the goal is
+	 * restarted.
+	 */
+	public synchronized void setResetDate(String username, String goalName, long reset) {
+		Goal goal = getGoal(username, goalName);
+		goal.reset = reset;
+		goal.updatedAt = now();
+	}
+	
+	/**
+	 * @return The number of data points on the given goal.
+	 */
+	public synchronized int getDataPointCount(String username, String goalName) {
+		return getGoal(username, goalName).dataPoints.size();
+	}
+	
+	/**
+	 * Adds a data point to a goal, as if it had been entered on
+	 * Beeminder's website.
+	 * @return The new data point's ID.
+	 */
+	public synchronized String addDataPoint(String username, String goalName,
+				long timestamp, double value, String comment) {
+		return getGoal(username, goalName).create(Long.toString(timestamp),
+					Double.toString(value), comment, null).id;
+	}
+	
+	/**
+	 * @return A copy of the data points on the given goal, sorted by
+	 *         timestamp.
+	 */
+	public synchronized List<DataPoint> getDataPoints(String username, String goalName) {
+		List<DataPoint> dataPoints = new ArrayList<DataPoint>();
+		for(FakeDataPoint dataPoint : getGoal(username, goalName).dataPoints.values()) {
+			dataPoints.add(new DataPoint(dataPoint.id, dataPoint.timestamp,
+						dataPoint.value, dataPoint.comment));
+		}
+		Collections.sort(dataPoints, DataPoint.TIMESTAMP_ORDER);
+		return dataPoints;
+	}
+	
+	private void handle(HttpExchange exchange) throws IOException {
+		boolean throttle;
+		synchronized(this) {
+			requestCount++;
+			
+			throttle = throttleCount > 0;
+			if(throttle) {
+				throttleCount--;
+			}
+		}
+		
+		if(latency > 0) {
+			try {
+				Thread.sleep(latency);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		double roll = random.nextDouble();
+		if(throttle || roll < throttleRate) {
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			respond(exchange, 429, error("Too many requests"));
+			return;
+		} else if(roll < throttleRate + errorRate) {
+			respond(exchange, 500, error("Injected error"));
+			return;
+		}
+		
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		if(path.startsWith("/api/v1")) {
+			path = path.substring("/api/v1".length());
+		}
+		
+		Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+		if(method.equals("POST") || method.equals("PUT")) {
+			params.putAll(parseParams(readBody(exchange.getRequestBody())));
+		}
+		
+		Object response;
+		Matcher matcher;
+		synchronized(this) {
+			if((matcher = GOAL_PATTERN.matcher(path)).matches() && method.equals("GET")) {
+				response = getGoal(matcher.group(1), matcher.group(2)).toJSON(params);
+			} else if((matcher = DATA_POINTS_PATTERN.matcher(path)).matches()) {
+				Goal goal = getGoal(matcher.group(1), matcher.group(2));
+				if(method.equals("GET")) {
+					response = goal.dataPointsToJSON(-1);
+				} else if(method.equals("POST")) {
+					response = goal.create(params.get("timestamp"), params.get("value"),
+								params.get("comment"), params.get("requestid")).toJSON();
+				} else {
+					response = null;
+				}
+			} else if((matcher = CREATE_ALL_PATTERN.matcher(path)).matches()
+						&& method.equals("POST")) {
+				response = createAll(getGoal(matcher.group(1), matcher.group(2)),
+							params.get("datapoints"));
+			} else if((matcher = DATA_POINT_PATTERN.matcher(path)).matches()) {
+				Goal goal = getGoal(matcher.group(1), matcher.group(2));
+				FakeDataPoint dataPoint = goal.dataPoints.get(matcher.group(3));
+				if(dataPoint == null) {
+					respond(exchange, 404, error("No such data point"));
+					return;
+				}
+				
+				if(method.equals("GET")) {
+					response = dataPoint.toJSON();
+				} else if(method.equals("PUT")) {
+					dataPoint.update(params.get("timestamp"), params.get("value"),
+								params.get("comment"));
+					goal.updatedAt = now();
+					response = dataPoint.toJSON();
+				} else if(method.equals("DELETE")) {
+					goal.dataPoints.remove(dataPoint.id);
+					goal.updatedAt = now();
+					response = dataPoint.toJSON();
+				} else {
+					response = null;
+				}
+			} else {
+				response = null;
+			}
+		}
+		
+		if(response == null) {
+			respond(exchange, 404, error("Unknown request " + method + " " + path));
+		} else {
+			respond(exchange, 200, response);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private JSONArray createAll(Goal goal, String json) {
+		JSONArray created = new JSONArray();
+		Object parsed = json != null ? JSONValue.parse(json) : null;
+		if(!(parsed instanceof JSONArray)) {
+			return created;
+		}
+		
+		JSONObject jsonDataPoint;
+		for(Object element : (JSONArray) parsed) {
+			if(element instanceof JSONObject) {
+				jsonDataPoint = (JSONObject) element;
+				created.add(goal.create(String.valueOf(jsonDataPoint.get("timestamp")),
+							String.valueOf(jsonDataPoint.get("value")),
+							(String) jsonDataPoint.get("comment"),
+							(String) jsonDataPoint.get("requestid")).toJSON());
+			}
+		}
+		
+		return created;
+	}
+	
+	private Goal getGoal(String username, String goalName) {
+		String key = username + "/" + goalName;
+		Goal goal = goals.get(key);
+		if(goal == null) {
+			goal = new Goal(goalName);
+			goals.put(key, goal);
+		}
+		return goal;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static JSONObject error(String message) {
+		JSONObject error = new JSONObject();
+		error.put("errors", message);
+		return error;
+	}
+	
+	private static void respond(HttpExchange exchange, int status, Object json)
+				throws IOException {
+		String jsonString = JSONValue.toJSONString(json);
+		
+		//let clients skip downloading a response they already have
+		if(status == 200 && exchange.getRequestMethod().equals("GET")) {
+			String eTag = "\"" + Integer.toHexString(jsonString.hashCode()) + "\"";
+			exchange.getResponseHeaders().set("ETag", eTag);
+			if(eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+		}
+		
+		byte[] body = jsonString.getBytes("UTF-8");
+		
+		String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if(acceptEncoding != null && acceptEncoding.contains("gzip")) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+			gzip.write(body);
+			gzip.close();
+			body = compressed.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+	
+	private static String readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while((read = in.read(buffer)) != -1) {
+			body.write(buffer, 0, read);
+		}
+		return body.toString("UTF-8");
+	}
+	
+	private static Map<String, String> parseParams(String query)
+				throws UnsupportedEncodingException {
+		Map<String, String> params = new HashMap<String, String>();
+		if(query == null || query.length() == 0) {
+			return params;
+		}
+		
+		int equals;
+		for(String pair : query.split("&")) {
+			equals = pair.indexOf('=');
+			if(equals > 0) {
+				params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+							URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+	
+	private static long now() {
+		return System.currentTimeMillis() / 1000;
+	}
+	
+	private class Goal {
+		private final String slug;
+		private long reset = 0;
+		private long updatedAt = now();
+		
+		/**
+		 * The data points, in the order they were created.
+		 */
+		private final Map<String, FakeDataPoint> dataPoints =
+					new LinkedHashMap<String, FakeDataPoint>();
+		
+		private Goal(String slug) {
+			this.slug = slug;
+		}
+		
+		/**
+		 * Creates a data point, or if one with the same request ID
+		 * already exists, updates that one instead.
+		 */
+		private FakeDataPoint create(String timestamp, String value, String comment,
+					String requestID) {
+			if(requestID != null) {
+				for(FakeDataPoint existing : dataPoints.values()) {
+					if(requestID.equals(existing.requestID)) {
+						existing.update(timestamp, value, comment);
+						updatedAt = now();
+						return existing;
+					}
+				}
+			}
+			
+			FakeDataPoint dataPoint = new FakeDataPoint(Integer.toString(nextID++));
+			dataPoint.requestID = requestID;
+			dataPoint.update(timestamp, value, comment != null ? comment : "");
+			dataPoints.put(dataPoint.id, dataPoint);
+			updatedAt = now();
+			return dataPoint;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private JSONObject toJSON(Map<String, String> params) {
+			JSONObject goal = new JSONObject();
+			goal.put("slug", slug);
+			goal.put("reset", reset);
+			goal.put("gunits", "hours");
+			goal.put("updated_at", updatedAt);
+			
+			if("true".equals(params.get("datapoints"))) {
+				long diffSince = -1;
+				if(params.containsKey("diff_since")) {
+					diffSince = Long.parseLong(params.get("diff_since"));
+				}
+				goal.put("datapoints", dataPointsToJSON(diffSince));
+			}
+			
+			return goal;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private JSONArray dataPointsToJSON(long updatedSince) {
+			JSONArray array = new JSONArray();
+			for(FakeDataPoint dataPoint : dataPoints.values()) {
+				if(dataPoint.updatedAt > updatedSince) {
+					array.add(dataPoint.toJSON());
+				}
+			}
+			return array;
+		}
+	}
+	
+	private static class FakeDataPoint {
+		private final String id;
+		private long timestamp;
+		private double value;
+		private String comment = "";
+		private long updatedAt;
+		private String requestID;
+		
+		private FakeDataPoint(String id) {
+			this.id = id;
+		}
+		
+		private void update(String timestamp, String value, String comment) {
+			if(timestamp != null) {
+				this.timestamp = Long.parseLong(timestamp);
+			}
+			if(value != null) {
+				this.value = Double.parseDouble(value);
+			}
+			if(comment != null) {
+				this.comment = comment;
+			}
+			updatedAt = now();
+		}
+		
+		@SuppressWarnings("unchecked")
+		private JSONObject toJSON() {
+			JSONObject json = new JSONObject();
+			json.put("id", id);
+			json.put("timestamp", timestamp);
+			json.put("value", value);
+			json.put("comment", comment);
+			json.put("updated_at", updatedAt);
+			if(requestID != null) {
+				json.put("requestid", requestID);
+			}
+			return json;
+		}
+	}
+	
+	public static void main(String[] args) throws IOException {
+		FakeBeeminderServer server = new FakeBeeminderServer(
+					args.length > 0 ? Integer.parseInt(args[0]) : 0);
+		if(args.length > 1) {
+			server.setLatency(Long.parseLong(args[1]));
+		}
+		if(args.length > 2) {
+			server.setErrorRate(Double.parseDouble(args[2]));
+		}
+		if(args.length > 3) {
+			server.setThrottleRate(Double.parseDouble(args[3]));
+		}
+		
+		server.start();
+		System.out.println("Fake Beeminder server running. Set API_URL to "
+					+ server.getBaseURL());
+	}
+}
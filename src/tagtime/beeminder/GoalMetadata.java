@@ -0,0 +1,226 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.beeminder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+import tagtime.util.AtomicFile;
+
+/**
+ * <p>
+ * The last known state of a Beeminder goal (other than its data
+ * points), saved in the data directory. While this is recent enough,
+ * submissions don't need to ask Beeminder about the goal at all, and
+ * after that they can ask whether it has changed rather than downloading
+ * it again.
+ * </p>
+ * <p>
+ * The file has one value per line, in the format <code>name value</code>.
+ * </p>
+ */
+public class GoalMetadata {
+	private final File metadataFile;
+	
+	private long resetDate = 0;
+	private String units = "";
+	
+	/**
+	 * The Unix timestamp (in seconds) of the goal's last change,
+	 * according to Beeminder, or -1 if unknown.
+	 */
+	private long updatedAt = -1;
+	
+	/**
+	 * The ETag and Last-Modified headers from the last response, if
+	 * Beeminder sent them, and the URL (without the auth token) that
+	 * response was for. They only describe the response to that URL.
+	 */
+	private String eTag = null;
+	private String lastModified = null;
+	private String validatorURL = null;
+	
+	/**
+	 * When Beeminder last confirmed these values, in milliseconds, or -1
+	 * if it never has.
+	 */
+	private long checkedAt = -1;
+	
+	public GoalMetadata(File metadataFile) {
+		this.metadataFile = metadataFile;
+		
+		load();
+	}
+	
+	/**
+	 * @param maxAge The number of milliseconds for which the values can
+	 *            be used without checking them again.
+	 * @return Whether Beeminder confirmed these values less than
+	 *         <code>maxAge</code> milliseconds ago.
+	 */
+	public synchronized boolean isFresh(long maxAge) {
+		long now = System.currentTimeMillis();
+		
+		//don't trust a time in the future, in case the clock changed
+		return checkedAt >= 0 && checkedAt <= now && now - checkedAt < maxAge;
+	}
+	
+	/**
+	 * @return The Unix timestamp (in seconds) of the day the goal was
+	 *         last reset, or 0 if unknown.
+	 */
+	public synchronized long getResetDate() {
+		return resetDate;
+	}
+	
+	/**
+	 * @return The goal's units, or an empty string if unknown.
+	 */
+	public synchronized String getUnits() {
+		return units;
+	}
+	
+	/**
+	 * @return The Unix timestamp (in seconds) of the goal's last change,
+	 *         or -1 if unknown.
+	 */
+	public synchronized long getUpdatedAt() {
+		return updatedAt;
+	}
+	
+	/**
+	 * @param url The URL about to be requested, without the auth token.
+	 * @return The value to send in an If-None-Match header, or null if
+	 *         there is none for that URL.
+	 */
+	public synchronized String getETag(String url) {
+		return url.equals(validatorURL) ? eTag : null;
+	}
+	
+	/**
+	 * @param url The URL about to be requested, without the auth token.
+	 * @return The value to send in an If-Modified-Since header, or null
+	 *         if there is none for that URL.
+	 */
+	public synchronized String getLastModified(String url) {
+		return url.equals(validatorURL) ? lastModified : null;
+	}
+	
+	/**
+	 * Records values just downloaded from Beeminder, and saves them.
+	 * @param url The URL that was requested, without the auth token.
+	 * @param eTag The response's ETag header, or null.
+	 * @param lastModified The response's Last-Modified header, or null.
+	 */
+	public synchronized void update(long resetDate, String units, long updatedAt,
+				String url, String eTag, String lastModified) {
+		this.resetDate = resetDate;
+		this.units = units != null ? units : "";
+		this.updatedAt = updatedAt;
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+		validatorURL = eTag != null || lastModified != null ? url : null;
+		checkedAt = System.currentTimeMillis();
+		
+		save();
+	}
+	
+	/**
+	 * Records that Beeminder confirmed the values haven't changed, and
+	 * saves that.
+	 */
+	public synchronized void revalidate() {
+		checkedAt = System.currentTimeMillis();
+		
+		save();
+	}
+	
+	private void load() {
+		if(!metadataFile.exists()) {
+			return;
+		}
+		
+		try {
+			BufferedReader fileReader = new BufferedReader(new FileReader(metadataFile));
+			
+			try {
+				String line;
+				String name;
+				String value;
+				int space;
+				while((line = fileReader.readLine()) != null) {
+					space = line.indexOf(' ');
+					if(space < 0) {
+						continue;
+					}
+					
+					name = line.substring(0, space);
+					value = line.substring(space + 1);
+					
+					if(name.equals("reset")) {
+						resetDate = Long.parseLong(value);
+					} else if(name.equals("units")) {
+						units = value;
+					} else if(name.equals("updated")) {
+						updatedAt = Long.parseLong(value);
+					} else if(name.equals("etag")) {
+						eTag = value;
+					} else if(name.equals("modified")) {
+						lastModified = value;
+					} else if(name.equals("validated")) {
+						validatorURL = value;
+					} else if(name.equals("checked")) {
+						checkedAt = Long.parseLong(value);
+					}
+				}
+			} finally {
+				fileReader.close();
+			}
+		} catch(Exception e) {
+			e.printStackTrace();
+			
+			//ask Beeminder again
+			checkedAt = -1;
+			eTag = null;
+			lastModified = null;
+			validatorURL = null;
+		}
+	}
+	
+	private void save() {
+		StringBuilder fields = new StringBuilder();
+		fields.append("reset " + resetDate + "\n");
+		fields.append("units " + units.replaceAll("[\r\n]", " ") + "\n");
+		fields.append("updated " + updatedAt + "\n");
+		if(eTag != null) {
+			fields.append("etag " + eTag + "\n");
+		}
+		if(lastModified != null) {
+			fields.append("modified " + lastModified + "\n");
+		}
+		if(validatorURL != null) {
+			fields.append("validated " + validatorURL + "\n");
+		}
+		fields.append("checked " + checkedAt + "\n");
+		
+		AtomicFile.write(metadataFile, fields.toString());
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.beeminder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import tagtime.util.AtomicFile;
+
+/**
+ * <p>
+ * The changes to a graph that have not yet been sent to Beeminder, saved
+ * in the data directory so that they survive until Beeminder can be
+ * reached again (even if TagTime is closed in the meantime).
+ * </p>
+ * <p>
+ * The outbox holds at most one change set. Since each change set is
+ * planned against everything Beeminder has confirmed so far, a new one
+ * includes whatever was still pending, so it simply replaces the old
+ * one. As a result, several changes to the same day are only ever sent
+ * as one request.
+ * </p>
+ * <p>
+ * The file has one change per line, in the format
+ * <code>type id timestamp hours comment</code>, where <code>type</code>
+ * is C, U, or D (create, update, or delete), and <code>id</code> is -
+ * for new data points.
+ * </p>
+ */
+public class Outbox {
+	private final File outboxFile;
+	
+	private ChangeSet changes;
+	
+	public Outbox(File outboxFile) {
+		this.outboxFile = outboxFile;
+		
+		load();
+	}
+	
+	/**
+	 * @return The changes waiting to be sent.
+	 */
+	public synchronized ChangeSet getChanges() {
+		return changes;
+	}
+	
+	public synchronized boolean isEmpty() {
+		return changes.isEmpty();
+	}
+	
+	/**
+	 * Replaces the changes waiting to be sent, and saves them.
+	 */
+	public synchronized void replace(ChangeSet newChanges) {
+		changes = newChanges;
+		
+		save();
+	}
+	
+	private void load() {
+		List<DataPoint> creates = new ArrayList<DataPoint>();
+		List<DataPoint> updates = new ArrayList<DataPoint>();
+		List<DataPoint> deletes = new ArrayList<DataPoint>();
+		
+		if(outboxFile.exists()) {
+			try {
+				BufferedReader fileReader = new BufferedReader(new FileReader(outboxFile));
+				
+				try {
+					String line;
+					String[] fields;
+					DataPoint dataPoint;
+					while((line = fileReader.readLine()) != null) {
+						fields = line.split(" ", 5);
+						if(fields.length < 4) {
+							continue;
+						}
+						
+						dataPoint = new DataPoint(fields[1].equals("-") ? null : fields[1],
+									Long.parseLong(fields[2]), Double.parseDouble(fields[3]),
+									fields.length > 4 ? fields[4] : "");
+						
+						if(fields[0].equals("C")) {
+							creates.add(dataPoint);
+						} else if(fields[0].equals("U") && dataPoint.id != null) {
+							updates.add(dataPoint);
+						} else if(fields[0].equals("D") && dataPoint.id != null) {
+							deletes.add(dataPoint);
+						}
+					}
+				} finally {
+					fileReader.close();
+				}
+			} catch(Exception e) {
+				//the next submission will plan these changes again
+				e.printStackTrace();
+				creates.clear();
+				updates.clear();
+				deletes.clear();
+			}
+		}
+		
+		changes = new ChangeSet(creates, updates, deletes);
+	}
+	
+	private void save() {
+		if(changes.isEmpty()) {
+			if(outboxFile.exists() && !outboxFile.delete()) {
+				System.err.println("Unable to update " + outboxFile.getName() + ".");
+			}
+			return;
+		}
+		
+		StringBuilder records = new StringBuilder();
+		write(records, "C", changes.getCreates());
+		write(records, "U", changes.getUpdates());
+		write(records, "D", changes.getDeletes());
+		
+		AtomicFile.write(outboxFile, records.toString());
+	}
+	
+	private static void write(StringBuilder records, String type, List<DataPoint> dataPoints) {
+		for(DataPoint dataPoint : dataPoints) {
+			records.append(type + " " + (dataPoint.id != null ? dataPoint.id : "-")
+						+ " " + dataPoint.timestamp + " " + dataPoint.hours + " "
+						+ dataPoint.comment.replaceAll("[\r\n]", " ") + "\n");
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import tagtime.beeminder.DataPoint;
+import tagtime.util.FenwickTree;
+import tagtime.util.ITagMatcher;
+
+/**
+ * <p>
+ * Running totals of the time in an {@link HoursRollup}, stored in
+ * {@link FenwickTree}s so that the total for any range of days takes
+ * O(log n) time. There is one tree per tag and one per ITagMatcher
+ * (that is, per graph).
+ * </p>
+ * <p>
+ * A tree is built from the rollup's rows the first time it is asked
+ * for. After that, the rollup passes along each amount of time it
+ * records, including while it is rebuilt. Only the rollup should call
+ * this, while holding its lock.
+ * </p>
+ */
+public class HoursIndex {
+	private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+	
+	/**
+	 * The rollup's tag combinations and rows. These are shared, not
+	 * copied.
+	 */
+	private final List<List<String>> tagSets;
+	private final SortedMap<Long, long[]> secondsPerDay;
+	
+	/**
+	 * The start of the day with index 0, or -1 if no day has been seen
+	 * since the trees were last emptied.
+	 */
+	private long firstDay = -1;
+	
+	/**
+	 * Seconds logged per day, keyed by lowercase tag.
+	 */
+	private final Map<String, FenwickTree> tagTrees = new HashMap<String, FenwickTree>();
+	
+	/**
+	 * Seconds logged per day, keyed by matcher object.
+	 */
+	private final Map<ITagMatcher, FenwickTree> matcherTrees =
+				new IdentityHashMap<ITagMatcher, FenwickTree>();
+	
+	HoursIndex(List<List<String>> tagSets, SortedMap<Long, long[]> secondsPerDay) {
+		this.tagSets = tagSets;
+		this.secondsPerDay = secondsPerDay;
+	}
+	
+	/**
+	 * Updates every tree after the rollup added time to a row.
+	 * @param day The start of the day.
+	 * @param tagSet The ID of the tag combination.
+	 */
+	void add(long day, int tagSet, long seconds) {
+		if(tagTrees.isEmpty() && matcherTrees.isEmpty()) {
+			return;
+		}
+		
+		if(firstDay == -1) {
+			firstDay = day;
+		}
+		
+		int index = getDayIndex(day);
+		if(index < 0) {
+			//the rollup already includes this time
+			rebuildTrees();
+			return;
+		}
+		
+		List<String> tags = tagSets.get(tagSet);
+		
+		FenwickTree tree;
+		for(String tag : tags) {
+			tree = tagTrees.get(tag);
+			if(tree != null) {
+				tree.add(index, seconds);
+			}
+		}
+		
+		for(Map.Entry<ITagMatcher, FenwickTree> entry : matcherTrees.entrySet()) {
+			if(entry.getKey().matchesTags(tags)) {
+				entry.getValue().add(index, seconds);
+			}
+		}
+	}
+	
+	/**
+	 * Empties every tree, but keeps track of which ones exist, so that
+	 * the rollup can refill them as it is rebuilt.
+	 */
+	void clear() {
+		firstDay = -1;
+		for(Map.Entry<String, FenwickTree> entry : tagTrees.entrySet()) {
+			entry.setValue(new FenwickTree(1));
+		}
+		for(Map.Entry<ITagMatcher, FenwickTree> entry : matcherTrees.entrySet()) {
+			entry.setValue(new FenwickTree(1));
+		}
+	}
+	
+	/**
+	 * @return The hours logged with the given tag (ignoring case)
+	 *         between the days containing the two given timestamps,
+	 *         including both days.
+	 */
+	double getHours(String tag, long from, long to) {
+		tag = tag.toLowerCase();
+		
+		FenwickTree tree = tagTrees.get(tag);
+		if(tree == null) {
+			tree = buildTree(getAcceptedTagSets(tag));
+			tagTrees.put(tag, tree);
+		}
+		
+		return sum(tree, from, to);
+	}
+	
+	/**
+	 * @return The hours logged by pings accepted by the given
+	 *         ITagMatcher between the days containing the two given
+	 *         timestamps, including both days. Reuse the same matcher
+	 *         for later calls, as trees are stored per matcher object.
+	 */
+	double getHours(ITagMatcher tagMatcher, long from, long to) {
+		FenwickTree tree = matcherTrees.get(tagMatcher);
+		if(tree == null) {
+			tree = buildTree(getAcceptedTagSets(tagMatcher));
+			matcherTrees.put(tagMatcher, tree);
+		}
+		
+		return sum(tree, from, to);
+	}
+	
+	private double sum(FenwickTree tree, long from, long to) {
+		if(firstDay == -1) {
+			return 0;
+		}
+		
+		return tree.sum(Math.max(getDayIndex(DataPoint.getStartOfDay(from)), 0),
+					getDayIndex(DataPoint.getStartOfDay(to)) + 1) / 3600.0;
+	}
+	
+	/**
+	 * Replaces every tree with one built from the rollup's rows, starting
+	 * from the rollup's first day.
+	 */
+	private void rebuildTrees() {
+		firstDay = -1;
+		for(Map.Entry<String, FenwickTree> entry : tagTrees.entrySet()) {
+			entry.setValue(buildTree(getAcceptedTagSets(entry.getKey())));
+		}
+		for(Map.Entry<ITagMatcher, FenwickTree> entry : matcherTrees.entrySet()) {
+			entry.setValue(buildTree(getAcceptedTagSets(entry.getKey())));
+		}
+	}
+	
+	private FenwickTree buildTree(boolean[] accepted) {
+		if(firstDay == -1 && !secondsPerDay.isEmpty()) {
+			firstDay = secondsPerDay.firstKey();
+		}
+		
+		FenwickTree tree = new FenwickTree(secondsPerDay.isEmpty() ? 1
+					: getDayIndex(secondsPerDay.lastKey()) + 1);
+		
+		long[] row;
+		long seconds;
+		for(Map.Entry<Long, long[]> day : secondsPerDay.entrySet()) {
+			row = day.getValue();
+			seconds = 0;
+			for(int i = 0; i < row.length; i++) {
+				if(accepted[i]) {
+					seconds += row[i];
+				}
+			}
+			if(seconds != 0) {
+				tree.add(getDayIndex(day.getKey()), seconds);
+			}
+		}
+		
+		return tree;
+	}
+	
+	private boolean[] getAcceptedTagSets(String tag) {
+		boolean[] accepted = new boolean[tagSets.size()];
+		for(int i = 0; i < accepted.length; i++) {
+			accepted[i] = tagSets.get(i).contains(tag);
+		}
+		return accepted;
+	}
+	
+	private boolean[] getAcceptedTagSets(ITagMatcher tagMatcher) {
+		boolean[] accepted = new boolean[tagSets.size()];
+		for(int i = 0; i < accepted.length; i++) {
+			accepted[i] = tagMatcher.matchesTags(tagSets.get(i));
+		}
+		return accepted;
+	}
+	
+	/**
+	 * @param day The start of a day.
+	 * @return The number of days between the first day and the given
+	 *         one. Days are not always 24 hours long, so this rounds to
+	 *         the nearest whole day.
+	 */
+	private int getDayIndex(long day) {
+		return (int) Math.round((day - firstDay) / (double) SECONDS_PER_DAY);
+	}
+}
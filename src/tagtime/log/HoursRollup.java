@@ -0,0 +1,630 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import tagtime.beeminder.DataPoint;
+import tagtime.util.AtomicFile;
+import tagtime.util.ITagMatcher;
+
+/**
+ * <p>
+ * A summary of the log file, recording how many seconds were logged on
+ * each day for each combination of tags. This is saved next to the log
+ * file and updated as pings are logged, so that a graph's daily totals
+ * can be found by adding up a few rows per day rather than re-reading
+ * every ping.
+ * </p>
+ * <p>
+ * Time is grouped by the full set of tags on each ping (rather than by
+ * individual tags) so that pings with several matching tags are only
+ * counted once, and so that rejected tags still work.
+ * </p>
+ * <p>
+ * The file is a list of records, one per line, which are replayed in
+ * order when loading:
+ * <ul>
+ * <li><code>T id tags...</code> defines a tag combination.</li>
+ * <li><code>H day id seconds</code> adds time to a day's total for a
+ * tag combination.</li>
+ * <li><code>P timestamp id count</code> records the latest ping, which
+ * will be credited once the following ping is logged, and the number
+ * of pings recorded so far.</li>
+ * </ul>
+ * </p>
+ */
+public class HoursRollup {
+	private final File rollupFile;
+	
+	/**
+	 * Each tag combination, sorted and converted to lower case, indexed
+	 * by ID.
+	 */
+	private final List<List<String>> tagSets = new ArrayList<List<String>>();
+	
+	/**
+	 * The ID of each tag combination, keyed by the space-separated tags.
+	 */
+	private final Map<String, Integer> tagSetIDs = new HashMap<String, Integer>();
+	
+	/**
+	 * For each day, the number of seconds logged for each tag
+	 * combination, indexed by ID.
+	 */
+	private final TreeMap<Long, long[]> secondsPerDay = new TreeMap<Long, long[]>();
+	
+	/**
+	 * Running totals over the rows above, for range queries.
+	 */
+	private final HoursIndex hoursIndex = new HoursIndex(tagSets, secondsPerDay);
+	
+	private long lastPingTime = -1;
+	private int lastTagSet = -1;
+	
+	/**
+	 * The number of pings recorded, or -1 if the file didn't say.
+	 */
+	private int pingCount = 0;
+	
+	/**
+	 * The number of records in the file, used to decide when it is
+	 * worth rewriting it.
+	 */
+	private int recordCount = 0;
+	
+	public HoursRollup(File rollupFile) {
+		this.rollupFile = rollupFile;
+		
+		load();
+	}
+	
+	/**
+	 * @param lastLogTimestamp The timestamp of the last ping in the log.
+	 * @param logPingCount The number of pings in the log.
+	 * @return Whether this rollup includes exactly the pings in the
+	 *         log. Comparing the count as well catches pings that were
+	 *         added or removed earlier in the file.
+	 */
+	public synchronized boolean isUpToDate(long lastLogTimestamp, int logPingCount) {
+		return lastPingTime == lastLogTimestamp && pingCount == logPingCount;
+	}
+	
+	/**
+	 * Adds a ping that was logged after every ping recorded so far. The
+	 * previous ping is credited with the time between the two.
+	 * @param timestamp The ping's Unix timestamp, in seconds.
+	 * @param tags The ping's tags.
+	 */
+	public synchronized void record(long timestamp, List<String> tags) {
+		if(timestamp <= lastPingTime) {
+			throw new IllegalArgumentException("Pings must be recorded in order.");
+		}
+		
+		StringBuilder records = new StringBuilder();
+		
+		int tagSet = getTagSetID(tags, records);
+		addPing(timestamp, tagSet, records);
+		
+		append(records.toString());
+	}
+	
+	/**
+	 * Discards all data and rebuilds it from the given pings. Use this
+	 * if a ping was inserted out of order or the log file was edited.
+	 */
+	public synchronized void rebuild(IPingSnapshot pings) {
+		clear();
+		
+		//the file is rewritten at the end, so nothing needs recording
+		TagSetFinder finder = new TagSetFinder(pings);
+		PingCursor cursor = new PingCursor(pings);
+		while(cursor.next()) {
+			addPing(cursor.getTimestamp(), finder.find(cursor), null);
+		}
+		
+		save();
+	}
+	
+	/**
+	 * @return The total time logged on each day by pings accepted by the
+	 *         given ITagMatcher, sorted by timestamp. Days with no time
+	 *         are omitted.
+	 */
+	public synchronized List<DataPoint> getDailyTotals(ITagMatcher tagMatcher) {
+		boolean[] accepted = getAcceptedTagSets(tagMatcher);
+		
+		List<DataPoint> timePerDay = new ArrayList<DataPoint>();
+		
+		long seconds;
+		for(Map.Entry<Long, long[]> day : secondsPerDay.entrySet()) {
+			seconds = getSeconds(day.getValue(), accepted);
+			if(seconds > 0) {
+				timePerDay.add(new DataPoint(day.getKey(), seconds / 3600.0));
+			}
+		}
+		
+		return timePerDay;
+	}
+	
+	/**
+	 * @param days The start of each day to include.
+	 * @return The total time logged on the given days by pings accepted
+	 *         by the given ITagMatcher, sorted by timestamp. Days with no
+	 *         time are omitted.
+	 */
+	public synchronized List<DataPoint> getDailyTotals(ITagMatcher tagMatcher,
+				SortedSet<Long> days) {
+		boolean[] accepted = getAcceptedTagSets(tagMatcher);
+		
+		List<DataPoint> timePerDay = new ArrayList<DataPoint>(days.size());
+		
+		long seconds;
+		for(Long day : days) {
+			seconds = getSeconds(secondsPerDay.get(day), accepted);
+			if(seconds > 0) {
+				timePerDay.add(new DataPoint(day, seconds / 3600.0));
+			}
+		}
+		
+		return timePerDay;
+	}
+	
+	/**
+	 * @param day The start of the day.
+	 * @return The hours logged on the given day with each tag, sorted by
+	 *         tag. Time is counted towards every tag on each ping.
+	 */
+	public synchronized SortedMap<String, Double> getHoursByTag(long day) {
+		SortedMap<String, Double> hoursByTag = new TreeMap<String, Double>();
+		
+		long[] row = secondsPerDay.get(day);
+		if(row == null) {
+			return hoursByTag;
+		}
+		
+		Double hours;
+		for(int i = 0; i < row.length; i++) {
+			if(row[i] == 0) {
+				continue;
+			}
+			
+			for(String tag : tagSets.get(i)) {
+				hours = hoursByTag.get(tag);
+				hoursByTag.put(tag, (hours != null ? hours : 0) + row[i] / 3600.0);
+			}
+		}
+		
+		return hoursByTag;
+	}
+	
+	/**
+	 * @return The hours logged with the given tag (ignoring case)
+	 *         between the days containing the two given Unix timestamps
+	 *         (in seconds), including both days.
+	 */
+	public synchronized double getHours(String tag, long from, long to) {
+		return hoursIndex.getHours(tag, from, to);
+	}
+	
+	/**
+	 * @return The hours logged by pings accepted by the given
+	 *         ITagMatcher between the days containing the two given Unix
+	 *         timestamps (in seconds), including both days.
+	 */
+	public synchronized double getHours(ITagMatcher tagMatcher, long from, long to) {
+		return hoursIndex.getHours(tagMatcher, from, to);
+	}
+	
+	/**
+	 * Checks each tag combination once, rather than once per day.
+	 * @return Whether the given ITagMatcher accepts each tag combination,
+	 *         indexed by ID.
+	 */
+	private boolean[] getAcceptedTagSets(ITagMatcher tagMatcher) {
+		boolean[] accepted = new boolean[tagSets.size()];
+		for(int i = 0; i < accepted.length; i++) {
+			accepted[i] = tagMatcher.matchesTags(tagSets.get(i));
+		}
+		return accepted;
+	}
+	
+	/**
+	 * @param row One day's seconds per tag combination, or null.
+	 * @return The seconds logged for accepted tag combinations.
+	 */
+	private static long getSeconds(long[] row, boolean[] accepted) {
+		if(row == null) {
+			return 0;
+		}
+		
+		long seconds = 0;
+		for(int i = 0; i < row.length; i++) {
+			if(accepted[i]) {
+				seconds += row[i];
+			}
+		}
+		return seconds;
+	}
+	
+	/**
+	 * Finds the ID for the given tags, defining a new tag combination if
+	 * necessary.
+	 * @param records The buffer to write the new definition to, or null.
+	 */
+	private int getTagSetID(List<String> tags, StringBuilder records) {
+		TreeSet<String> sortedTags = new TreeSet<String>();
+		for(String tag : tags) {
+			sortedTags.add(tag.toLowerCase());
+		}
+		
+		StringBuilder key = new StringBuilder();
+		for(String tag : sortedTags) {
+			if(key.length() > 0) {
+				key.append(' ');
+			}
+			key.append(tag);
+		}
+		
+		Integer id = tagSetIDs.get(key.toString());
+		if(id == null) {
+			id = defineTagSet(key.toString());
+			if(records != null) {
+				records.append("T " + id + " " + key + "\n");
+			}
+		}
+		
+		return id;
+	}
+	
+	private int defineTagSet(String key) {
+		int id = tagSets.size();
+		tagSets.add(key.length() > 0 ? Arrays.asList(key.split(" "))
+					: new ArrayList<String>(0));
+		tagSetIDs.put(key, id);
+		return id;
+	}
+	
+	/**
+	 * Credits the previous ping with the time since it occurred, then
+	 * makes the given ping the latest one.
+	 * @param records The buffer to write the changes to, or null.
+	 */
+	private void addPing(long timestamp, int tagSet, StringBuilder records) {
+		if(lastPingTime != -1) {
+			//use the gap after the ping, so its value can't be known in advance
+			long day = DataPoint.getStartOfDay(lastPingTime);
+			long seconds = timestamp - lastPingTime;
+			addSeconds(day, lastTagSet, seconds);
+			if(records != null) {
+				records.append("H " + day + " " + lastTagSet + " " + seconds + "\n");
+			}
+		}
+		
+		lastPingTime = timestamp;
+		lastTagSet = tagSet;
+		pingCount++;
+		if(records != null) {
+			records.append("P " + timestamp + " " + tagSet + " " + pingCount + "\n");
+		}
+	}
+	
+	private void addSeconds(long day, int tagSet, long seconds) {
+		long[] row = secondsPerDay.get(day);
+		if(row == null || row.length <= tagSet) {
+			long[] newRow = new long[tagSets.size()];
+			if(row != null) {
+				System.arraycopy(row, 0, newRow, 0, row.length);
+			}
+			row = newRow;
+			secondsPerDay.put(day, row);
+		}
+		
+		row[tagSet] += seconds;
+		hoursIndex.add(day, tagSet, seconds);
+	}
+	
+	private void clear() {
+		tagSets.clear();
+		tagSetIDs.clear();
+		secondsPerDay.clear();
+		hoursIndex.clear();
+		lastPingTime = -1;
+		lastTagSet = -1;
+		pingCount = 0;
+	}
+	
+	private void load() {
+		if(!rollupFile.exists()) {
+			return;
+		}
+		
+		try {
+			BufferedReader fileReader = new BufferedReader(new FileReader(rollupFile));
+			String line;
+			String[] fields;
+			
+			while((line = fileReader.readLine()) != null) {
+				recordCount++;
+				
+				fields = line.split(" ", 3);
+				if(fields.length < 3) {
+					continue;
+				}
+				
+				try {
+					if(fields[0].equals("T")) {
+						//IDs are assigned in order, so a definition out of
+						//order means the file is damaged
+						if(Integer.parseInt(fields[1]) != tagSets.size()) {
+							throw new IOException("Tag combination " + fields[1]
+										+ " defined out of order.");
+						}
+						defineTagSet(fields[2]);
+					} else if(fields[0].equals("H")) {
+						String[] values = fields[2].split(" ");
+						if(values.length < 2) {
+							continue;
+						}
+						addSeconds(Long.parseLong(fields[1]),
+									Integer.parseInt(values[0]),
+									Long.parseLong(values[1]));
+					} else if(fields[0].equals("P")) {
+						String[] values = fields[2].split(" ");
+						lastPingTime = Long.parseLong(fields[1]);
+						lastTagSet = Integer.parseInt(values[0]);
+						pingCount = values.length > 1 ? Integer.parseInt(values[1]) : -1;
+					}
+				} catch(NumberFormatException e) {
+					continue;
+				}
+			}
+			
+			fileReader.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+			
+			//the owner will rebuild the rollup once it sees that it is
+			//out of date
+			clear();
+			return;
+		}
+		
+		//most records are for time that has since been combined with
+		//other records, so compact the file once in a while
+		int rowCount = 0;
+		for(long[] row : secondsPerDay.values()) {
+			rowCount += row.length;
+		}
+		if(recordCount > 2 * (rowCount + tagSets.size()) + 16) {
+			save();
+		}
+	}
+	
+	/**
+	 * Rewrites the file with one record for each non-empty row.
+	 */
+	private void save() {
+		StringBuilder records = new StringBuilder();
+		recordCount = 0;
+		
+		for(int i = 0; i < tagSets.size(); i++) {
+			records.append("T " + i + " ");
+			for(int j = 0; j < tagSets.get(i).size(); j++) {
+				if(j > 0) {
+					records.append(' ');
+				}
+				records.append(tagSets.get(i).get(j));
+			}
+			records.append('\n');
+			recordCount++;
+		}
+		
+		long[] row;
+		for(Map.Entry<Long, long[]> day : secondsPerDay.entrySet()) {
+			row = day.getValue();
+			for(int i = 0; i < row.length; i++) {
+				if(row[i] != 0) {
+					records.append("H " + day.getKey() + " " + i + " " + row[i] + "\n");
+					recordCount++;
+				}
+			}
+		}
+		
+		if(lastPingTime != -1) {
+			records.append("P " + lastPingTime + " " + lastTagSet + " " + pingCount + "\n");
+			recordCount++;
+		}
+		
+		//a crash while rewriting must not lose the records that were
+		//already there
+		AtomicFile.write(rollupFile, records.toString());
+	}
+	
+	private void append(String records) {
+		for(int i = records.indexOf('\n'); i != -1; i = records.indexOf('\n', i + 1)) {
+			recordCount++;
+		}
+		
+		//a partly written record is skipped when loading, and the rollup
+		//is then rebuilt because its ping count is out of date
+		try {
+			BufferedWriter fileWriter = new BufferedWriter(new FileWriter(rollupFile, true));
+			fileWriter.write(records);
+			fileWriter.close();
+		} catch(IOException e) {
+			System.err.println("Unable to update " + rollupFile.getName() + ".");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Finds the tag combination of each ping in a snapshot by tag ID, so
+	 * that tag names are only read once per combination rather than
+	 * once per ping.
+	 */
+	private class TagSetFinder {
+		private final IPingSnapshot pings;
+		
+		/**
+		 * For each tag ID, the lowest ID of a tag that only differs from
+		 * it by case, or -1 if that hasn't been looked up yet.
+		 */
+		private final int[] caseIDs;
+		private final Map<String, Integer> caseIDsByTag = new HashMap<String, Integer>();
+		
+		/**
+		 * A hash table from the sorted, distinct case IDs of a ping to
+		 * the ID of its tag combination.
+		 */
+		private int[][] keys = new int[64][];
+		private int[] combinationIDs = new int[64];
+		private int keyCount = 0;
+		
+		private int[] ids = new int[16];
+		private final List<String> tags = new ArrayList<String>();
+		
+		public TagSetFinder(IPingSnapshot pings) {
+			this.pings = pings;
+			
+			caseIDs = new int[pings.getDistinctTagCount()];
+			Arrays.fill(caseIDs, -1);
+		}
+		
+		/**
+		 * @return The ID of the tag combination of the cursor's current
+		 *         ping, defining it if necessary.
+		 */
+		public int find(PingCursor cursor) {
+			int tagCount = cursor.getTagCount();
+			if(ids.length < tagCount) {
+				ids = new int[tagCount * 2];
+			}
+			for(int i = 0; i < tagCount; i++) {
+				ids[i] = getCaseID(cursor.getTagID(i));
+			}
+			
+			//sort, and remove tags that appear twice
+			Arrays.sort(ids, 0, tagCount);
+			int length = 0;
+			for(int i = 0; i < tagCount; i++) {
+				if(length == 0 || ids[length - 1] != ids[i]) {
+					ids[length++] = ids[i];
+				}
+			}
+			
+			int slot = findSlot(keys, ids, length);
+			if(keys[slot] != null) {
+				return combinationIDs[slot];
+			}
+			
+			tags.clear();
+			for(int i = 0; i < length; i++) {
+				tags.add(pings.getTag(ids[i]));
+			}
+			int tagSet = getTagSetID(tags, null);
+			
+			keys[slot] = Arrays.copyOf(ids, length);
+			combinationIDs[slot] = tagSet;
+			keyCount++;
+			if(keyCount * 2 > keys.length) {
+				rehash();
+			}
+			
+			return tagSet;
+		}
+		
+		private int getCaseID(int id) {
+			if(caseIDs[id] == -1) {
+				String tag = pings.getTag(id).toLowerCase();
+				Integer caseID = caseIDsByTag.get(tag);
+				if(caseID == null) {
+					caseID = id;
+					caseIDsByTag.put(tag, caseID);
+				}
+				caseIDs[id] = caseID;
+			}
+			
+			return caseIDs[id];
+		}
+		
+		/**
+		 * @return The slot holding the given key, or the empty slot where
+		 *         it belongs.
+		 */
+		private int findSlot(int[][] table, int[] key, int length) {
+			int hash = 1;
+			for(int i = 0; i < length; i++) {
+				hash = hash * 31 + key[i];
+			}
+			hash ^= hash >>> 16;
+			
+			int mask = table.length - 1;
+			for(int slot = hash & mask;; slot = (slot + 1) & mask) {
+				if(table[slot] == null || equal(table[slot], key, length)) {
+					return slot;
+				}
+			}
+		}
+		
+		private boolean equal(int[] a, int[] b, int length) {
+			if(a.length != length) {
+				return false;
+			}
+			for(int i = 0; i < length; i++) {
+				if(a[i] != b[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		private void rehash() {
+			int[][] newKeys = new int[keys.length * 2][];
+			int[] newCombinationIDs = new int[newKeys.length];
+			
+			int slot;
+			for(int i = 0; i < keys.length; i++) {
+				if(keys[i] != null) {
+					slot = findSlot(newKeys, keys[i], keys[i].length);
+					newKeys[slot] = keys[i];
+					newCombinationIDs[slot] = combinationIDs[i];
+				}
+			}
+			
+			keys = newKeys;
+			combinationIDs = newCombinationIDs;
+		}
+	}
+}
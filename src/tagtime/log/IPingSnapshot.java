@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import java.util.List;
+
+/**
+ * A read-only view of the pings in an {@link IPingStore} at a particular
+ * moment. Pings logged afterwards will not show up in this view, so it
+ * is safe to read from any thread without locking.
+ * <p>
+ * Pings are numbered from 0 in timestamp order, and tags are referred to
+ * by ID. Apart from {@link #getTag(int)} and
+ * {@link #getTags(int, List)}, none of these methods create objects, so
+ * use IDs (or a {@link PingCursor}) when reading many pings.
+ * </p>
+ */
+public interface IPingSnapshot {
+	/**
+	 * @return The number of pings in this snapshot.
+	 */
+	public int size();
+	
+	/**
+	 * @return The Unix timestamp (in seconds) of the given ping.
+	 */
+	public long getTimestamp(int ping);
+	
+	/**
+	 * @return The number of tags on the given ping.
+	 */
+	public int getTagCount(int ping);
+	
+	/**
+	 * @param index The position of the tag on the ping, from 0 to
+	 *            <code>getTagCount(ping) - 1</code>.
+	 * @return The ID of one of the given ping's tags.
+	 */
+	public int getTagID(int ping, int index);
+	
+	/**
+	 * Adds the given ping's tags to the given list, in the order they
+	 * were logged.
+	 * @return The given list.
+	 */
+	public List<String> getTags(int ping, List<String> list);
+	
+	/**
+	 * @return The number of distinct tags used in this snapshot. IDs
+	 *         range from 0 to this value minus 1.
+	 */
+	public int getDistinctTagCount();
+	
+	/**
+	 * @return The tag with the given ID.
+	 */
+	public String getTag(int id);
+	
+	/**
+	 * @return The ID of the given tag, or -1 if no ping in this snapshot
+	 *         uses it.
+	 */
+	public int findTagID(String tag);
+	
+	/**
+	 * @return The index of the first ping at or after the given time,
+	 *         or <code>size()</code> if every ping is before it.
+	 */
+	public int findPing(long timestamp);
+}
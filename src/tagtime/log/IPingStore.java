@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Holds every ping in a user's log file, so that the log file only needs
+ * to be read once.
+ */
+public interface IPingStore {
+	/**
+	 * Discards all pings and reads them again from the given log file.
+	 */
+	public void load(File logFile);
+	
+	/**
+	 * Adds a ping, keeping the pings in order. A ping with the same
+	 * timestamp as others goes after them, as it does in the log file.
+	 * This is fastest if the ping comes after all others.
+	 * @param timestamp The ping's Unix timestamp, in seconds.
+	 */
+	public void add(long timestamp, List<String> tags);
+	
+	/**
+	 * @return A read-only view of the pings stored so far.
+	 */
+	public IPingSnapshot snapshot();
+}
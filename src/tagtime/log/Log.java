@@ -1,260 +1,478 @@
-/*
- * Copyright 2011-2012 Joseph Cloutier
- * 
- * This file is part of TagTime.
- * 
- * TagTime is free software: you can redistribute it and/or modify it
- * under the terms of the GNU General Public License as published by the
- * Free Software Foundation, either version 3 of the License, or (at your
- * option) any later version.
- * 
- * TagTime is distributed in the hope that it will be useful, but WITHOUT
- * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
- * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
- * for more details.
- * 
- * You should have received a copy of the GNU General Public License
- * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
- */
-
-package tagtime.log;
-
-import java.io.File;
-import java.io.IOException;
-import java.text.DateFormat;
-import java.util.Date;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import tagtime.Main;
-import tagtime.TagTime;
-import tagtime.quartz.RandomizedTrigger;
-import tagtime.util.BackwardsAccessFile;
-
-/**
- * Keeps a persistent log of all tag data, and (optionally) submits the
- * data to Beeminder. It additionally tracks what data has and has not
- * been submitted yet, so if the user is offline and Beeminder can't be
- * reached, the data can be submitted later.
- */
-public class Log {
-	private static final Pattern LINE_PARSER = Pattern.compile(
-				"^(\\d+) (\\w+(?: [\\w]+)*) +\\[");
-	
-	public final TagTime tagTimeInstance;
-	
-	private final BackwardsAccessFile logFile;
-	
-	private long lastTimestamp = -1;
-	private String lastTags = null;
-	
-	public Log(TagTime tagTimeInstance) throws IOException {
-		this.tagTimeInstance = tagTimeInstance;
-		
-		File filePath = new File(Main.getDataDirectory().getPath() + "/" +
-					tagTimeInstance.settings.username + ".log");
-		
-		//this will create the file if necessary
-		logFile = new BackwardsAccessFile(filePath, "rw");
-		
-		findLastEntry();
-	}
-	
-	/**
-	 * Records the given ping in the log.
-	 * @param timestamp The time, in milliseconds, corresponding to the
-	 *            data. Assuming this data was generated by a standard
-	 *            tag popup window, this should be the time the window
-	 *            was created.
-	 * @param data The data to log. This should include both
-	 *            user-generated tags and any automatically-generated
-	 *            data, but it does not need to include a timestamp.
-	 */
-	public synchronized void log(long timestamp, String data) {
-		//convert to Unix time (that is, use seconds, not milliseconds)
-		long timestampInSeconds = timestamp / 1000;
-		
-		//if the given value equals the final timestamp, increment it
-		if(timestampInSeconds == lastTimestamp) {
-			timestampInSeconds++;
-			timestamp += 1000;
-		}
-		
-		StringBuffer extraData = null;
-		
-		try {
-			logFile.seek(logFile.length());
-		} catch(IOException e) {
-			e.printStackTrace();
-		}
-		
-		if(timestampInSeconds > lastTimestamp) {
-			lastTimestamp = timestampInSeconds;
-			
-			if(data.indexOf(" RETRO") == -1) {
-				lastTags = data;
-			}
-		} else {
-			//special case: check if this ping goes immediately before
-			//the final line of the file
-			long prevTimestamp = timestampInSeconds + 1;
-			try {
-				logFile.seekLastLine("");
-				String prevLine = logFile.readPreviousLine("0123456789");
-				prevTimestamp = Long.parseLong(prevLine.substring(0,
-								prevLine.indexOf(' ')));
-			} catch(Exception e) {
-				e.printStackTrace();
-			}
-			
-			//if it does, simply place it there
-			if(prevTimestamp < timestampInSeconds) {
-				//the pointer is already in the correct spot
-			}
-
-			//if not, search from the beginning
-			else {
-				try {
-					long nextTimestamp = 0;
-					logFile.seek(0);
-					String line;
-					
-					while(nextTimestamp < timestampInSeconds) {
-						line = logFile.readLine();
-						try {
-							nextTimestamp = Long.parseLong(line.substring(0,
-											line.indexOf(' ')));
-						} catch(NumberFormatException e) {}
-					}
-					
-					logFile.seekLineStart("0123456789");
-				} catch(IOException e) {
-					e.printStackTrace();
-				}
-			}
-			
-			//copy all data following the file pointer, so that the
-			//current data can be inserted without overwriting anything
-			try {
-				long insertionPosition = logFile.getFilePointer();
-				extraData = new StringBuffer();
-				String line;
-				
-				while((line = logFile.readLine()) != null) {
-					extraData.append(line);
-					extraData.append('\n');
-				}
-				
-				logFile.seek(insertionPosition);
-			} catch(IOException e) {
-				e.printStackTrace();
-				try {
-					logFile.seek(logFile.length());
-				} catch(IOException e1) {
-					e1.printStackTrace();
-				}
-			}
-		}
-		
-		//combine the timestamp and tags
-		String annotatedData = Long.toString(timestampInSeconds) + " " + data;
-		
-		//pad the string with spaces until it is 55 characters long
-		int paddingNeeded = 55 - annotatedData.length();
-		if(paddingNeeded > 0) {
-			annotatedData += String.format("%1$" + paddingNeeded + "c", ' ');
-		} else {
-			annotatedData += " ";
-		}
-		
-		//add a human-readable timestamp and end the line
-		annotatedData += "[" + DateFormat.getDateTimeInstance().format(timestamp) + "]\n";
-		
-		//write the data to the file
-		try {
-			logFile.writeBytes(annotatedData);
-			
-			//if the line needed to be inserted, re-write all following lines
-			if(extraData != null) {
-				logFile.writeBytes(extraData.toString());
-			}
-		} catch(IOException e) {
-			System.err.println("Unable to write this line to the log file:");
-			System.err.println(annotatedData);
-			e.printStackTrace();
-		}
-	}
-	
-	private void findLastEntry() {
-		try {
-			//get the final line with a digit on it
-			String lastLine = logFile.readLastLine("0123456789");
-			
-			if(lastLine == null) {
-				return;
-			}
-			
-			Matcher lineMatcher = LINE_PARSER.matcher(lastLine);
-			
-			if(lineMatcher.find()) {
-				lastTimestamp = Long.parseLong(lineMatcher.group(1));
-				lastTags = lineMatcher.group(2);
-				if(lastTags.indexOf(" RETRO ") != -1) {
-					lastTags = null;
-				}
-			}
-		} catch(Exception e) {}
-	}
-	
-	/**
-	 * @return The last recorded timestamp in the log file. Returns -1 if
-	 *         there are no recorded timestamps.
-	 */
-	public long getLastTimestamp() {
-		return lastTimestamp;
-	}
-	
-	public String getLastTags() {
-		return lastTags;
-	}
-	
-	/**
-	 * Logs all pings that were skipped since the latest entry in the log
-	 * file, marking them as "afk RETRO", optionally with more tags.
-	 * @param extraTags Additional tags to add between "afk" and "RETRO".
-	 *            This string does not need to start or end with a space.
-	 * @param until The time at which to stop logging missed pings.
-	 */
-	public void logMissedPings(String extraTags, long until) {
-		//determine the string to mark missed pings with
-		String tags = "afk";
-		
-		if(extraTags != null && !extraTags.equals("")) {
-			tags += " " + extraTags;
-		}
-		
-		RandomizedTrigger trigger = tagTimeInstance.trigger;
-		long lastPing = getLastTimestamp();
-		
-		if(lastPing != -1) {
-			//lastPing was rounded down when converted to seconds, so if
-			//we don't add 1, it will most likely (999/1000) repeat a ping
-			Date ping = new Date((lastPing + 1) * 1000);
-			
-			for(ping = trigger.getFireTimeAfter(ping, true); ping.getTime() < until; ping =
-						trigger.getFireTimeAfter(ping, true)) {
-				logRetro(ping.getTime(), tags);
-			}
-		}
-	}
-	
-	/**
-	 * Logs an automatically-generated message.
-	 * @param timestamp The time to record in the log file.
-	 * @param data The automatically-generated tags to log, not including
-	 *            the "RETRO" tag at the end.
-	 */
-	public void logRetro(long timestamp, String data) {
-		log(timestamp, data + " RETRO");
-	}
-}
+/*
+ * Copyright 2011-2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import tagtime.Main;
+import tagtime.TagTime;
+import tagtime.beeminder.DataPoint;
+import tagtime.quartz.RandomizedTrigger;
+import tagtime.settings.SettingType;
+import tagtime.util.BackwardsAccessFile;
+import tagtime.util.ITagMatcher;
+import tagtime.util.TagMatcher;
+
+/**
+ * Keeps a persistent log of all tag data, and (optionally) submits the
+ * data to Beeminder. It additionally tracks what data has and has not
+ * been submitted yet, so if the user is offline and Beeminder can't be
+ * reached, the data can be submitted later.
+ */
+public class Log {
+	public final TagTime tagTimeInstance;
+	
+	private final File logFilePath;
+	private final BackwardsAccessFile logFile;
+	
+	/**
+	 * The time logged per day for each combination of tags, kept in
+	 * sync with the log file.
+	 */
+	private final HoursRollup rollup;
+	
+	/**
+	 * Every ping in the log file, so that it only needs to be read once.
+	 */
+	private final IPingStore pings;
+	
+	/**
+	 * The pings that have each tag.
+	 */
+	private final TagIndex tagIndex;
+	
+	/**
+	 * Where to find each ping in the log file, so that pings logged out
+	 * of order can be inserted without reading the file from the start.
+	 */
+	private final LogOffsetIndex offsetIndex;
+	
+	private final List<LogListener> listeners = new CopyOnWriteArrayList<LogListener>();
+	
+	private long lastTimestamp = -1;
+	private String lastTags = null;
+	
+	public Log(TagTime tagTimeInstance) throws IOException {
+		this.tagTimeInstance = tagTimeInstance;
+		
+		logFilePath = new File(Main.getDataDirectory().getPath() + "/" +
+					tagTimeInstance.settings.username + ".log");
+		
+		//this will create the file if necessary
+		logFile = new BackwardsAccessFile(logFilePath, "rw");
+		
+		if(tagTimeInstance.settings.getBooleanValue(SettingType.OFF_HEAP_PING_STORE)) {
+			pings = new OffHeapPingStore();
+		} else {
+			pings = new PingStore();
+		}
+		pings.load(logFilePath);
+		
+		findLastEntry();
+		
+		//if the log file was edited or the rollup is missing, rebuild it
+		rollup = new HoursRollup(new File(Main.getDataDirectory().getPath() + "/" +
+					tagTimeInstance.settings.username + ".rollup"));
+		if(!rollup.isUpToDate(lastTimestamp, pings.snapshot().size())) {
+			rollup.rebuild(pings.snapshot());
+		}
+		
+		tagIndex = new TagIndex(new File(Main.getDataDirectory().getPath() + "/" +
+					tagTimeInstance.settings.username + ".tagindex"));
+		if(!tagIndex.isUpToDate(pings.snapshot())) {
+			tagIndex.rebuild(pings.snapshot());
+			tagIndex.flush();
+		}
+		
+		offsetIndex = new LogOffsetIndex(new File(Main.getDataDirectory().getPath() + "/" +
+					tagTimeInstance.settings.username + ".offsets"), logFilePath);
+		if(!offsetIndex.isUpToDate()) {
+			offsetIndex.rebuild();
+			offsetIndex.flush();
+		}
+	}
+	
+	/**
+	 * Records the given ping in the log.
+	 * @param timestamp The time, in milliseconds, corresponding to the
+	 *            data. Assuming this data was generated by a standard
+	 *            tag popup window, this should be the time the window
+	 *            was created.
+	 * @param data The data to log. This should include both
+	 *            user-generated tags and any automatically-generated
+	 *            data, but it does not need to include a timestamp.
+	 */
+	public synchronized void log(long timestamp, String data) {
+		//convert to Unix time (that is, use seconds, not milliseconds)
+		long timestampInSeconds = timestamp / 1000;
+		
+		//if the given value equals the final timestamp, increment it
+		if(timestampInSeconds == lastTimestamp) {
+			timestampInSeconds++;
+			timestamp += 1000;
+		}
+		
+		StringBuffer extraData = null;
+		
+		try {
+			logFile.seek(logFile.length());
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		
+		if(timestampInSeconds > lastTimestamp) {
+			lastTimestamp = timestampInSeconds;
+			
+			if(data.indexOf(" RETRO") == -1) {
+				lastTags = data;
+			}
+		} else {
+			//special case: check if this ping goes immediately before
+			//the final line of the file
+			long prevTimestamp = timestampInSeconds + 1;
+			long finalLineOffset = -1;
+			try {
+				for(BackwardsAccessFile.Line line : logFile.readLinesBackwards()) {
+					if(line.text.trim().length() == 0) {
+						continue;
+					}
+					
+					if(finalLineOffset < 0) {
+						finalLineOffset = line.offset;
+					} else if(Character.isDigit(line.text.charAt(0))) {
+						prevTimestamp = Long.parseLong(line.text.substring(0,
+										line.text.indexOf(' ')));
+						break;
+					}
+				}
+			} catch(Exception e) {
+				e.printStackTrace();
+			}
+			
+			//if it does, simply place it there
+			if(prevTimestamp < timestampInSeconds && finalLineOffset >= 0) {
+				try {
+					logFile.seek(finalLineOffset);
+				} catch(IOException e) {
+					e.printStackTrace();
+				}
+			}
+
+			//if not, look it up in the offset index, placing it after any
+			//pings with the same timestamp (as IPingStore.add() does)
+			else {
+				try {
+					logFile.seekTimestamp(timestampInSeconds + 1,
+								offsetIndex.findOffset(timestampInSeconds + 1));
+				} catch(IOException e) {
+					e.printStackTrace();
+				}
+			}
+			
+			//copy all data following the file pointer, so that the
+			//current data can be inserted without overwriting anything
+			try {
+				long insertionPosition = logFile.getFilePointer();
+				extraData = new StringBuffer();
+				String line;
+				
+				while((line = logFile.readLine()) != null) {
+					extraData.append(line);
+					extraData.append('\n');
+				}
+				
+				logFile.seek(insertionPosition);
+			} catch(IOException e) {
+				e.printStackTrace();
+				try {
+					logFile.seek(logFile.length());
+				} catch(IOException e1) {
+					e1.printStackTrace();
+				}
+			}
+		}
+		
+		//combine the timestamp and tags
+		String annotatedData = Long.toString(timestampInSeconds) + " " + data;
+		
+		//pad the string with spaces until it is 55 characters long
+		int paddingNeeded = 55 - annotatedData.length();
+		if(paddingNeeded > 0) {
+			annotatedData += String.format("%1$" + paddingNeeded + "c", ' ');
+		} else {
+			annotatedData += " ";
+		}
+		
+		//add a human-readable timestamp and end the line
+		annotatedData += "[" + DateFormat.getDateTimeInstance().format(timestamp) + "]\n";
+		
+		//write the data to the file
+		long lineOffset;
+		try {
+			lineOffset = logFile.getFilePointer();
+			logFile.writeBytes(annotatedData);
+			
+			//if the line needed to be inserted, re-write all following lines
+			if(extraData != null) {
+				logFile.writeBytes(extraData.toString());
+			}
+		} catch(IOException e) {
+			System.err.println("Unable to write this line to the log file:");
+			System.err.println(annotatedData);
+			e.printStackTrace();
+			return;
+		}
+		
+		if(extraData == null) {
+			offsetIndex.append(timestampInSeconds, lineOffset, annotatedData.length());
+		} else {
+			offsetIndex.insert(lineOffset, annotatedData.length());
+		}
+		
+		List<String> tags = LogParser.parseTags(data, new ArrayList<String>());
+		pings.add(timestampInSeconds, tags);
+		
+		//the rollup can only be updated in place if this ping went at
+		//the end; otherwise the time for the ping before it changes
+		IPingSnapshot snapshot = pings.snapshot();
+		if(extraData == null) {
+			rollup.record(timestampInSeconds, tags);
+			tagIndex.append(snapshot);
+		} else {
+			rollup.rebuild(snapshot);
+			tagIndex.rebuild(snapshot);
+		}
+		
+		for(LogListener listener : listeners) {
+			listener.pingLogged(timestampInSeconds, tags);
+		}
+		
+		//the previous ping is now credited with the time until this one,
+		//and if this one was inserted, it is credited with the time until
+		//the next
+		int ping = snapshot.findPing(timestampInSeconds + 1) - 1;
+		if(ping > 0) {
+			fireTimeChanged(snapshot, ping - 1);
+		}
+		if(extraData != null && ping < snapshot.size() - 1) {
+			fireTimeChanged(snapshot, ping);
+		}
+	}
+	
+	/**
+	 * Registers a listener to be notified whenever the time logged
+	 * changes.
+	 */
+	public void addListener(LogListener listener) {
+		listeners.add(listener);
+	}
+	
+	private void fireTimeChanged(IPingSnapshot snapshot, int ping) {
+		if(listeners.isEmpty()) {
+			return;
+		}
+		
+		long day = DataPoint.getStartOfDay(snapshot.getTimestamp(ping));
+		List<String> tags = snapshot.getTags(ping, new ArrayList<String>());
+		for(LogListener listener : listeners) {
+			listener.timeChanged(day, tags);
+		}
+	}
+	
+	private void findLastEntry() {
+		IPingSnapshot snapshot = pings.snapshot();
+		if(snapshot.size() == 0) {
+			return;
+		}
+		
+		int lastPing = snapshot.size() - 1;
+		lastTimestamp = snapshot.getTimestamp(lastPing);
+		
+		List<String> tags = snapshot.getTags(lastPing, new ArrayList<String>());
+		if(tags.contains("RETRO")) {
+			lastTags = null;
+		} else {
+			StringBuilder joinedTags = new StringBuilder();
+			for(String tag : tags) {
+				if(joinedTags.length() > 0) {
+					joinedTags.append(' ');
+				}
+				joinedTags.append(tag);
+			}
+			lastTags = joinedTags.toString();
+		}
+	}
+	
+	/**
+	 * Saves any index changes that are saved in batches.
+	 */
+	public synchronized void flush() {
+		tagIndex.flush();
+		offsetIndex.flush();
+	}
+	
+	/**
+	 * @return The last recorded timestamp in the log file. Returns -1 if
+	 *         there are no recorded timestamps.
+	 */
+	public long getLastTimestamp() {
+		return lastTimestamp;
+	}
+	
+	public String getLastTags() {
+		return lastTags;
+	}
+	
+	/**
+	 * @return The time logged on each day by pings accepted by the given
+	 *         ITagMatcher, sorted by timestamp, with one data point per
+	 *         day that has any time logged.
+	 */
+	public List<DataPoint> getDailyTotals(ITagMatcher tagMatcher) {
+		return rollup.getDailyTotals(tagMatcher);
+	}
+	
+	/**
+	 * @param days The Unix timestamps (in seconds) of the start of each
+	 *            day to include.
+	 * @return The time logged on the given days by pings accepted by the
+	 *         given ITagMatcher, sorted by timestamp. Days with no time
+	 *         are omitted.
+	 */
+	public List<DataPoint> getDailyTotals(ITagMatcher tagMatcher, SortedSet<Long> days) {
+		return rollup.getDailyTotals(tagMatcher, days);
+	}
+	
+	/**
+	 * @param day The Unix timestamp (in seconds) of the start of a day.
+	 * @return The hours logged on the given day with each tag, sorted by
+	 *         tag. Pings with several tags count towards each of them.
+	 */
+	public SortedMap<String, Double> getHoursByTag(long day) {
+		return rollup.getHoursByTag(day);
+	}
+	
+	/**
+	 * @return The hours logged with the given tag between the days
+	 *         containing the given Unix timestamps (in seconds),
+	 *         including both days.
+	 */
+	public double getHours(String tag, long from, long to) {
+		return rollup.getHours(tag, from, to);
+	}
+	
+	/**
+	 * @return The hours logged by pings accepted by the given
+	 *         ITagMatcher between the days containing the given Unix
+	 *         timestamps (in seconds), including both days.
+	 */
+	public double getHours(ITagMatcher tagMatcher, long from, long to) {
+		return rollup.getHours(tagMatcher, from, to);
+	}
+	
+	/**
+	 * Writes the pings in the given range that match the given tags, as
+	 * described in {@link PingExporter#export(long, long, ITagMatcher,
+	 * PingExporter.Format, WritableByteChannel)}. If the matcher requires
+	 * certain tags, only the pings with them are read, using the tag
+	 * index. The log is only locked while finding those pings, so pings
+	 * can be logged during a long export.
+	 * @return The number of pings written.
+	 */
+	public int export(long from, long to, ITagMatcher tagMatcher,
+				PingExporter.Format format, WritableByteChannel channel) throws IOException {
+		IPingSnapshot snapshot;
+		PostingList matchingPings = null;
+		
+		//the ping numbers in the index must match the snapshot's
+		synchronized(this) {
+			snapshot = pings.snapshot();
+			if(tagMatcher instanceof TagMatcher
+						&& (((TagMatcher) tagMatcher).requiresAcceptedTag()
+									|| ((TagMatcher) tagMatcher).hasRequiredTags())
+						&& tagIndex.isUpToDate(snapshot)) {
+				matchingPings = tagIndex.findPings((TagMatcher) tagMatcher);
+			}
+		}
+		
+		PingExporter exporter = new PingExporter(snapshot);
+		if(matchingPings != null) {
+			return exporter.export(from, to, matchingPings, format, channel);
+		}
+		return exporter.export(from, to, tagMatcher, format, channel);
+	}
+	
+	/**
+	 * @return A read-only view of every ping logged so far. Pings logged
+	 *         later will not be included.
+	 */
+	public IPingSnapshot getPings() {
+		return pings.snapshot();
+	}
+	
+	/**
+	 * Logs all pings that were skipped since the latest entry in the log
+	 * file, marking them as "afk RETRO", optionally with more tags.
+	 * @param extraTags Additional tags to add between "afk" and "RETRO".
+	 *            This string does not need to start or end with a space.
+	 * @param until The time at which to stop logging missed pings.
+	 */
+	public void logMissedPings(String extraTags, long until) {
+		//determine the string to mark missed pings with
+		String tags = "afk";
+		
+		if(extraTags != null && !extraTags.equals("")) {
+			tags += " " + extraTags;
+		}
+		
+		RandomizedTrigger trigger = tagTimeInstance.trigger;
+		long lastPing = getLastTimestamp();
+		
+		if(lastPing != -1) {
+			//lastPing was rounded down when converted to seconds, so if
+			//we don't add 1, it will most likely (999/1000) repeat a ping
+			Date ping = new Date((lastPing + 1) * 1000);
+			
+			for(ping = trigger.getFireTimeAfter(ping, true); ping.getTime() < until; ping =
+						trigger.getFireTimeAfter(ping, true)) {
+				logRetro(ping.getTime(), tags);
+			}
+		}
+	}
+	
+	/**
+	 * Logs an automatically-generated message.
+	 * @param timestamp The time to record in the log file.
+	 * @param data The automatically-generated tags to log, not including
+	 *            the "RETRO" tag at the end.
+	 */
+	public void logRetro(long timestamp, String data) {
+		log(timestamp, data + " RETRO");
+	}
+}
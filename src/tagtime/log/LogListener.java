@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import java.util.List;
+
+/**
+ * Receives notice of each change to the time logged, so that only the
+ * affected totals need to be recalculated. Register one with
+ * {@link Log#addListener(LogListener)}.
+ */
+public interface LogListener {
+	/**
+	 * Called when a ping is logged, before any calls to
+	 * {@link #timeChanged(long, List)} that result from it. This is
+	 * called while the log is locked, so it must return quickly and must
+	 * not log anything.
+	 * @param timestamp The ping's Unix timestamp, in seconds.
+	 * @param tags The ping's tags.
+	 */
+	public void pingLogged(long timestamp, List<String> tags);
+	
+	/**
+	 * Called when the time credited to a ping changes. This happens to
+	 * the previous ping whenever a ping is logged (since each ping is
+	 * credited with the time until the next one), and to the new ping as
+	 * well if it was inserted before others.
+	 * <p>
+	 * This is called while the log is locked, so it must return quickly
+	 * and must not log anything.
+	 * </p>
+	 * @param day The Unix timestamp (in seconds) of the start of the day
+	 *            the ping's time is credited to.
+	 * @param tags The ping's tags.
+	 */
+	public void timeChanged(long day, List<String> tags);
+}
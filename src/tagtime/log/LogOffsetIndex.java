@@ -0,0 +1,359 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import tagtime.util.AtomicFile;
+
+/**
+ * <p>
+ * A sparse index of the log file, recording the timestamp and byte
+ * offset of every {@value #LINES_PER_ENTRY}th ping, so that the line for
+ * a given time can be found without reading the file from the start.
+ * Use {@link #findOffset(long)} to find where to start, then
+ * {@link tagtime.util.BackwardsAccessFile#seekTimestamp(long, long)} to
+ * read the remaining few lines.
+ * </p>
+ * <p>
+ * The index is saved next to the log file every
+ * {@value #SAVE_INTERVAL} changes and by {@link #flush()}, along with
+ * the length of log file it covers and a checksum of the end of it, so
+ * that it can tell if the log file changed (or TagTime quit before
+ * saving) while TagTime wasn't running.
+ * </p>
+ */
+public class LogOffsetIndex {
+	private static final int FILE_VERSION = 2;
+	
+	/**
+	 * The number of changes to make before saving the index.
+	 */
+	private static final int SAVE_INTERVAL = 50;
+	
+	/**
+	 * The number of bytes at the end of the log file to include in the
+	 * checksum.
+	 */
+	private static final int CHECKSUM_LENGTH = 4096;
+	
+	/**
+	 * The number of lines between entries. At most this many lines need
+	 * to be read after looking up an offset.
+	 */
+	public static final int LINES_PER_ENTRY = 64;
+	
+	private final File indexFile;
+	private final File logFile;
+	
+	private int unsavedChanges = 0;
+	
+	/**
+	 * The entries, in file order. Only the first entryCount of each are
+	 * used.
+	 */
+	private long[] timestamps = new long[64];
+	private long[] offsets = new long[64];
+	private int entryCount = 0;
+	
+	/**
+	 * The number of lines after the last entry.
+	 */
+	private int linesSinceEntry = 0;
+	
+	/**
+	 * The length of the log file when this index was last updated.
+	 */
+	private long indexedLength = -1;
+	
+	/**
+	 * The checksum of the end of the log file, as of the last save.
+	 */
+	private long tailChecksum = -1;
+	
+	public LogOffsetIndex(File indexFile, File logFile) {
+		this.indexFile = indexFile;
+		this.logFile = logFile;
+		
+		load();
+	}
+	
+	/**
+	 * @return Whether this index covers the log file as it is now. This
+	 *         checks the file's length and the end of its contents, so
+	 *         an edit that keeps the same length is usually noticed too.
+	 */
+	public synchronized boolean isUpToDate() {
+		return indexedLength == logFile.length() && tailChecksum == getTailChecksum();
+	}
+	
+	/**
+	 * Records a line written at the end of the log file.
+	 * @param timestamp The line's timestamp.
+	 * @param offset The offset of the start of the line.
+	 * @param length The line's length in bytes, including the line
+	 *            break.
+	 */
+	public synchronized void append(long timestamp, long offset, int length) {
+		addLine(timestamp, offset);
+		indexedLength = offset + length;
+		
+		changed();
+	}
+	
+	/**
+	 * Records a line inserted before the end of the log file, moving the
+	 * lines after it.
+	 * @param offset The offset of the start of the new line.
+	 * @param length The new line's length in bytes, including the line
+	 *            break.
+	 */
+	public synchronized void insert(long offset, int length) {
+		//entries are in file order, so only the ones at the end move
+		int i = entryCount;
+		while(i > 0 && offsets[i - 1] >= offset) {
+			i--;
+			offsets[i] += length;
+		}
+		
+		indexedLength += length;
+		
+		changed();
+	}
+	
+	/**
+	 * Discards the index and rebuilds it by reading the log file. Use
+	 * this if the log file was edited outside of TagTime.
+	 */
+	public synchronized void rebuild() {
+		entryCount = 0;
+		linesSinceEntry = 0;
+		indexedLength = -1;
+		
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(logFile));
+			
+			try {
+				long offset = 0;
+				long lineStart = 0;
+				long timestamp = 0;
+				boolean readingTimestamp = true;
+				boolean hasTimestamp = false;
+				
+				int b;
+				while((b = in.read()) != -1) {
+					offset++;
+					
+					if(b == '\n') {
+						if(hasTimestamp) {
+							addLine(timestamp, lineStart);
+						}
+						
+						lineStart = offset;
+						timestamp = 0;
+						readingTimestamp = true;
+						hasTimestamp = false;
+					} else if(readingTimestamp && b >= '0' && b <= '9') {
+						timestamp = timestamp * 10 + (b - '0');
+						hasTimestamp = true;
+					} else {
+						readingTimestamp = false;
+					}
+				}
+				
+				//a final line with no line break isn't indexed, since the
+				//next ping will be written after it
+				indexedLength = offset;
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			e.printStackTrace();
+			entryCount = 0;
+			linesSinceEntry = 0;
+		}
+		
+		changed();
+	}
+	
+	/**
+	 * Saves any changes not yet saved.
+	 */
+	public synchronized void flush() {
+		if(unsavedChanges > 0) {
+			save();
+		}
+	}
+	
+	/**
+	 * @return The offset of a line before every line with the given
+	 *         timestamp or later, and at most about
+	 *         {@value #LINES_PER_ENTRY} lines before the first of them.
+	 *         This is 0 if the given timestamp is before every entry.
+	 */
+	public synchronized long findOffset(long timestamp) {
+		//find the last entry before the given timestamp
+		int low = 0;
+		int high = entryCount;
+		int mid;
+		while(low < high) {
+			mid = (low + high) >>> 1;
+			if(timestamps[mid] < timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		
+		return low > 0 ? offsets[low - 1] : 0;
+	}
+	
+	private void addLine(long timestamp, long offset) {
+		if(entryCount > 0 && linesSinceEntry < LINES_PER_ENTRY) {
+			linesSinceEntry++;
+			return;
+		}
+		
+		if(entryCount == timestamps.length) {
+			timestamps = Arrays.copyOf(timestamps, entryCount * 2);
+			offsets = Arrays.copyOf(offsets, entryCount * 2);
+		}
+		
+		timestamps[entryCount] = timestamp;
+		offsets[entryCount] = offset;
+		entryCount++;
+		linesSinceEntry = 1;
+	}
+	
+	private void changed() {
+		unsavedChanges++;
+		if(unsavedChanges >= SAVE_INTERVAL) {
+			save();
+		}
+	}
+	
+	/**
+	 * @return A checksum of the last {@value #CHECKSUM_LENGTH} bytes the
+	 *         index covers, or -1 if they can't be read.
+	 */
+	private long getTailChecksum() {
+		if(indexedLength < 0) {
+			return -1;
+		}
+		
+		try {
+			RandomAccessFile file = new RandomAccessFile(logFile, "r");
+			try {
+				long start = Math.max(0, indexedLength - CHECKSUM_LENGTH);
+				byte[] tail = new byte[(int) (indexedLength - start)];
+				file.seek(start);
+				file.readFully(tail);
+				
+				CRC32 checksum = new CRC32();
+				checksum.update(tail);
+				return checksum.getValue();
+			} finally {
+				file.close();
+			}
+		} catch(IOException e) {
+			return -1;
+		}
+	}
+	
+	private void load() {
+		if(!indexFile.exists()) {
+			return;
+		}
+		
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+						new FileInputStream(indexFile)));
+			
+			try {
+				if(in.readInt() != FILE_VERSION) {
+					return;
+				}
+				
+				long newIndexedLength = in.readLong();
+				long newTailChecksum = in.readLong();
+				int newLinesSinceEntry = in.readInt();
+				int newEntryCount = in.readInt();
+				
+				long[] newTimestamps = new long[Math.max(64, newEntryCount)];
+				long[] newOffsets = new long[newTimestamps.length];
+				for(int i = 0; i < newEntryCount; i++) {
+					newTimestamps[i] = in.readLong();
+					newOffsets[i] = in.readLong();
+				}
+				
+				timestamps = newTimestamps;
+				offsets = newOffsets;
+				entryCount = newEntryCount;
+				linesSinceEntry = newLinesSinceEntry;
+				indexedLength = newIndexedLength;
+				tailChecksum = newTailChecksum;
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			//the owner will rebuild the index once it sees that it is
+			//out of date
+			e.printStackTrace();
+		}
+	}
+	
+	private void save() {
+		tailChecksum = getTailChecksum();
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(28 + entryCount * 16);
+		DataOutputStream out = new DataOutputStream(bytes);
+		
+		try {
+			out.writeInt(FILE_VERSION);
+			out.writeLong(indexedLength);
+			out.writeLong(tailChecksum);
+			out.writeInt(linesSinceEntry);
+			out.writeInt(entryCount);
+			
+			for(int i = 0; i < entryCount; i++) {
+				out.writeLong(timestamps[i]);
+				out.writeLong(offsets[i]);
+			}
+		} catch(IOException e) {
+			System.err.println("Unable to update " + indexFile.getName() + ".");
+			e.printStackTrace();
+			return;
+		}
+		
+		if(AtomicFile.write(indexFile, bytes.toByteArray())) {
+			unsavedChanges = 0;
+		}
+	}
+}
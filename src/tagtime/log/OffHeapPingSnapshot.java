@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+package tagtime.log;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.List;
+
+/**
+ * A read-only view of the pings in an {@link OffHeapPingStore}.
+ */
+public class OffHeapPingSnapshot implements IPingSnapshot {
+	private final LongBuffer timestamps;
+	private final IntBuffer tagOffsets;
+	private final IntBuffer tagIDs;
+	private final int size;
+	
+	private final OffHeapTagDictionary.View tags;
+	
+	OffHeapPingSnapshot(LongBuffer timestamps, IntBuffer tagOffsets, IntBuffer tagIDs,
+				int size, OffHeapTagDictionary.View tags) {
+		this.timestamps = timestamps;
+		this.tagOffsets = tagOffsets;
+		this.tagIDs = tagIDs;
+		this.size = size;
+		this.tags = tags;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public long getTimestamp(int ping) {
+		checkIndex(ping);
+		return timestamps.get(ping);
+	}
+	
+	@Override
+	public int getTagCount(int ping) {
+		checkIndex(ping);
+		return tagOffsets.get(ping + 1) - tagOffsets.get(ping);
+	}
+	
+	@Override
+	public int getTagID(int ping, int index) {
+		checkIndex(ping);
+		int offset = tagOffsets.get(ping);
+		if(index < 0 || index >= tagOffsets.get(ping + 1) - offset) {
+			throw new IndexOutOfBoundsException("Ping " + ping + " has no tag " + index + ".");
+		}
+		
+		return tagIDs.get(offset + index);
+	}
+	
+	@Override
+	public List<String> getTags(int ping, List<String> list) {
+		checkIndex(ping);
+		int end = tagOffsets.get(ping + 1);
+		for(int i = tagOffsets.get(ping); i < end; i++) {
+			list.add(tags.getTag(tagIDs.get(i)));
+		}
+		
+		return list;
+	}
+	
+	@Override
+	public int getDistinctTagCount() {
+		return tags.size();
+	}
+	
+	@Override
+	public String getTag(int id) {
+		return tags.getTag(id);
+	}
+	
+	@Override
+	public int findTagID(String tag) {
+		return tags.findID(tag);
+	}
+	
+	@Override
+	public int findPing(long timestamp) {
+		int low = 0;
+		int high = size;
+		int mid;
+		
+		while(low < high) {
+			mid = (low + high) >>> 1;
+			if(timestamps.get(mid) < timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		
+		return low;
+	}
+	
+	private void checkIndex(int ping) {
+		if(ping < 0 || ping >= size) {
+			throw new IndexOutOfBoundsException("No ping at index " + ping + ".");
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+package tagtime.log;
+
+import java.io.File;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.List;
+
+/**
+ * An {@link IPingStore} that keeps pings and tag names in direct buffers
+ * outside the Java heap. The layout matches {@link PingStore}: parallel
+ * buffers of timestamps, tag offsets, and tag IDs.
+ * <p>
+ * This moves the largest structure off the heap, but not everything that
+ * grows with the log file: {@link HoursRollup} keeps a total per day and
+ * tag combination, {@link TagIndex} about a byte per tag per ping, and
+ * {@link LogOffsetIndex} one entry per
+ * {@value LogOffsetIndex#LINES_PER_ENTRY} lines. The first two are
+ * rebuilt with a {@link PingCursor} and tag IDs, so rebuilding them
+ * doesn't create a string per ping either.
+ * </p>
+ * <p>
+ * Buffers are only appended to in place; anything else replaces them, so
+ * existing snapshots never see changes.
+ * </p>
+ */
+public class OffHeapPingStore implements IPingStore {
+	private final OffHeapTagDictionary dictionary = new OffHeapTagDictionary();
+	
+	private LongBuffer timestamps;
+	private IntBuffer tagOffsets;
+	private IntBuffer tagIDs;
+	
+	private int size;
+	
+	public OffHeapPingStore() {
+		clear();
+	}
+	
+	@Override
+	public synchronized void load(File logFile) {
+		clear();
+		
+		LogParser.scan(logFile, new LogParser.PingVisitor() {
+			@Override
+			public void visitPing(long timestamp, List<String> tags) {
+				add(timestamp, tags);
+			}
+		});
+	}
+	
+	@Override
+	public synchronized void add(long timestamp, List<String> tags) {
+		int tagCount = tags.size();
+		int totalTags = tagOffsets.get(size);
+		
+		if(size == 0 || timestamps.get(size - 1) <= timestamp) {
+			//the usual case: append in place
+			ensureCapacity(size + 1, totalTags + tagCount);
+			
+			timestamps.put(size, timestamp);
+			int offset = totalTags;
+			for(String tag : tags) {
+				tagIDs.put(offset++, dictionary.getID(tag));
+			}
+			tagOffsets.put(size + 1, offset);
+			size++;
+			return;
+		}
+		
+		//find the insertion point
+		int index = snapshot().findPing(timestamp + 1);
+		int offset = tagOffsets.get(index);
+		
+		//copy everything into new buffers, leaving a gap for the new ping
+		LongBuffer newTimestamps = allocateLongs(Math.max(timestamps.capacity(), size + 1));
+		IntBuffer newTagOffsets = allocateInts(newTimestamps.capacity() + 1);
+		IntBuffer newTagIDs = allocateInts(Math.max(tagIDs.capacity(), totalTags + tagCount));
+		
+		copy(timestamps, 0, newTimestamps, 0, index);
+		copy(timestamps, index, newTimestamps, index + 1, size - index);
+		newTimestamps.put(index, timestamp);
+		
+		copy(tagIDs, 0, newTagIDs, 0, offset);
+		copy(tagIDs, offset, newTagIDs, offset + tagCount, totalTags - offset);
+		for(String tag : tags) {
+			newTagIDs.put(offset++, dictionary.getID(tag));
+		}
+		
+		copy(tagOffsets, 0, newTagOffsets, 0, index + 1);
+		for(int i = index; i <= size; i++) {
+			newTagOffsets.put(i + 1, tagOffsets.get(i) + tagCount);
+		}
+		
+		timestamps = newTimestamps;
+		tagOffsets = newTagOffsets;
+		tagIDs = newTagIDs;
+		size++;
+	}
+	
+	@Override
+	public synchronized OffHeapPingSnapshot snapshot() {
+		return new OffHeapPingSnapshot(timestamps, tagOffsets, tagIDs, size,
+					dictionary.view());
+	}
+	
+	private void clear() {
+		size = 0;
+		timestamps = allocateLongs(256);
+		tagOffsets = allocateInts(257);
+		tagIDs = allocateInts(512);
+	}
+	
+	private void ensureCapacity(int pings, int tags) {
+		if(pings > timestamps.capacity()) {
+			int newLength = Math.max(pings, timestamps.capacity() * 2);
+			
+			LongBuffer newTimestamps = allocateLongs(newLength);
+			copy(timestamps, 0, newTimestamps, 0, size);
+			timestamps = newTimestamps;
+			
+			IntBuffer newTagOffsets = allocateInts(newLength + 1);
+			copy(tagOffsets, 0, newTagOffsets, 0, size + 1);
+			tagOffsets = newTagOffsets;
+		}
+		
+		if(tags > tagIDs.capacity()) {
+			IntBuffer newTagIDs = allocateInts(Math.max(tags, tagIDs.capacity() * 2));
+			copy(tagIDs, 0, newTagIDs, 0, tagOffsets.get(size));
+			tagIDs = newTagIDs;
+		}
+	}
+	
+	private static LongBuffer allocateLongs(int count) {
+		return OffHeapTagDictionary.allocate(8 * count).asLongBuffer();
+	}
+	
+	private static IntBuffer allocateInts(int count) {
+		return OffHeapTagDictionary.allocate(4 * count).asIntBuffer();
+	}
+	
+	private static void copy(LongBuffer src, int srcPos, LongBuffer dest, int destPos,
+				int length) {
+		LongBuffer source = src.duplicate();
+		source.position(srcPos).limit(srcPos + length);
+		LongBuffer destination = dest.duplicate();
+		destination.position(destPos);
+		destination.put(source);
+	}
+	
+	private static void copy(IntBuffer src, int srcPos, IntBuffer dest, int destPos,
+				int length) {
+		IntBuffer source = src.duplicate();
+		source.position(srcPos).limit(srcPos + length);
+		IntBuffer destination = dest.duplicate();
+		destination.position(destPos);
+		destination.put(source);
+	}
+}
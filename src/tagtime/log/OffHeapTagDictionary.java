@@ -0,0 +1,256 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+package tagtime.log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Assigns each distinct tag a number, like {@link TagDictionary}, but
+ * keeps the tag names and the lookup table in direct buffers outside the
+ * Java heap. Tag names are stored as UTF-8, and looked up with an
+ * open-addressing hash table.
+ * <p>
+ * Buffers are replaced rather than modified when they run out of space,
+ * and existing names never change. The hash table is copied before it
+ * is modified if a {@link View} is using it, so views stay valid
+ * without locking.
+ * </p>
+ */
+public class OffHeapTagDictionary {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	/**
+	 * The tag names, one after another.
+	 */
+	private ByteBuffer names = allocate(1024);
+	
+	/**
+	 * The position of each tag's name in <code>names</code>, indexed by
+	 * ID. The entry after the final tag holds the end of the final name.
+	 */
+	private IntBuffer nameOffsets = allocate(4 * 65).asIntBuffer();
+	
+	/**
+	 * The hash table: each slot holds 1 + the ID of a tag, or 0 if the
+	 * slot is empty. The size is always a power of 2, and the table is
+	 * never more than half full.
+	 */
+	private IntBuffer table = allocate(4 * 128).asIntBuffer();
+	
+	/**
+	 * Whether a view holds the current table, in which case it must be
+	 * copied before it is modified.
+	 */
+	private boolean tableShared = false;
+	
+	private int size = 0;
+	
+	/**
+	 * @return The ID of the given tag, assigning a new one if needed.
+	 */
+	public synchronized int getID(String tag) {
+		byte[] name = tag.getBytes(UTF_8);
+		int slot = findSlot(table, names, nameOffsets, size, name);
+		
+		if(table.get(slot) != 0) {
+			return table.get(slot) - 1;
+		}
+		
+		int id = size;
+		int start = nameOffsets.get(id);
+		
+		//make room for the new tag
+		if(start + name.length > names.capacity()) {
+			ByteBuffer newNames = allocate(Math.max(start + name.length,
+						names.capacity() * 2));
+			ByteBuffer oldNames = names.duplicate();
+			oldNames.position(0).limit(start);
+			newNames.put(oldNames);
+			names = newNames;
+		}
+		if(id + 2 > nameOffsets.capacity()) {
+			IntBuffer newOffsets = allocate(8 * nameOffsets.capacity()).asIntBuffer();
+			IntBuffer oldOffsets = nameOffsets.duplicate();
+			oldOffsets.position(0).limit(id + 1);
+			newOffsets.put(oldOffsets);
+			nameOffsets = newOffsets;
+		}
+		
+		for(int i = 0; i < name.length; i++) {
+			names.put(start + i, name[i]);
+		}
+		nameOffsets.put(id + 1, start + name.length);
+		
+		if(2 * (size + 1) > table.capacity()) {
+			rehash(table.capacity() * 2);
+			slot = findSlot(table, names, nameOffsets, size, name);
+		} else if(tableShared) {
+			IntBuffer newTable = allocate(4 * table.capacity()).asIntBuffer();
+			IntBuffer oldTable = table.duplicate();
+			oldTable.clear();
+			newTable.put(oldTable);
+			table = newTable;
+		}
+		tableShared = false;
+		table.put(slot, id + 1);
+		size++;
+		
+		return id;
+	}
+	
+	public synchronized int size() {
+		return size;
+	}
+	
+	/**
+	 * @return A read-only view of the tags assigned so far.
+	 */
+	public synchronized View view() {
+		tableShared = true;
+		return new View(names, nameOffsets, table, size);
+	}
+	
+	private void rehash(int tableSize) {
+		IntBuffer newTable = allocate(4 * tableSize).asIntBuffer();
+		
+		int slot;
+		for(int id = 0; id < size; id++) {
+			slot = hash(names, nameOffsets.get(id), nameOffsets.get(id + 1))
+						& (tableSize - 1);
+			while(newTable.get(slot) != 0) {
+				slot = (slot + 1) & (tableSize - 1);
+			}
+			newTable.put(slot, id + 1);
+		}
+		
+		table = newTable;
+	}
+	
+	/**
+	 * @param size The number of tags whose names can be read. Entries
+	 *            for later tags are skipped.
+	 * @return The slot holding the given name, or the empty slot where
+	 *         it would go.
+	 */
+	private static int findSlot(IntBuffer table, ByteBuffer names,
+				IntBuffer nameOffsets, int size, byte[] name) {
+		int mask = table.capacity() - 1;
+		int slot = hash(name) & mask;
+		int entry;
+		
+		while((entry = table.get(slot)) != 0) {
+			if(entry <= size && nameEquals(names, nameOffsets.get(entry - 1),
+						nameOffsets.get(entry), name)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		return slot;
+	}
+	
+	private static boolean nameEquals(ByteBuffer names, int start, int end, byte[] name) {
+		if(end - start != name.length) {
+			return false;
+		}
+		
+		for(int i = 0; i < name.length; i++) {
+			if(names.get(start + i) != name[i]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * FNV-1a, which is simple and spreads short strings well.
+	 */
+	private static int hash(byte[] name) {
+		int hash = 0x811c9dc5;
+		for(byte b : name) {
+			hash = (hash ^ (b & 0xff)) * 0x01000193;
+		}
+		return hash;
+	}
+	
+	private static int hash(ByteBuffer names, int start, int end) {
+		int hash = 0x811c9dc5;
+		for(int i = start; i < end; i++) {
+			hash = (hash ^ (names.get(i) & 0xff)) * 0x01000193;
+		}
+		return hash;
+	}
+	
+	static ByteBuffer allocate(int bytes) {
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+	
+	/**
+	 * The tags in an {@link OffHeapTagDictionary} at a particular moment.
+	 */
+	public static class View {
+		private final ByteBuffer names;
+		private final IntBuffer nameOffsets;
+		private final IntBuffer table;
+		private final int size;
+		
+		View(ByteBuffer names, IntBuffer nameOffsets, IntBuffer table, int size) {
+			this.names = names;
+			this.nameOffsets = nameOffsets;
+			this.table = table;
+			this.size = size;
+		}
+		
+		public int size() {
+			return size;
+		}
+		
+		/**
+		 * @return The tag with the given ID. This creates a new string
+		 *         each time.
+		 */
+		public String getTag(int id) {
+			if(id < 0 || id >= size) {
+				throw new IndexOutOfBoundsException("No tag with ID " + id + ".");
+			}
+			
+			int start = nameOffsets.get(id);
+			byte[] name = new byte[nameOffsets.get(id + 1) - start];
+			for(int i = 0; i < name.length; i++) {
+				name[i] = names.get(start + i);
+			}
+			
+			return new String(name, UTF_8);
+		}
+		
+		/**
+		 * @return The ID of the given tag, or -1 if it isn't in this
+		 *         view.
+		 */
+		public int findID(String tag) {
+			int entry = table.get(findSlot(table, names, nameOffsets, size,
+						tag.getBytes(UTF_8)));
+			return entry != 0 ? entry - 1 : -1;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+package tagtime.log;
+
+/**
+ * A reusable pointer into an {@link IPingSnapshot}, for reading pings in
+ * order without creating an object per ping. Typical use:
+ * 
+ * <pre>
+ * PingCursor cursor = new PingCursor(snapshot);
+ * while(cursor.next()) {
+ * 	long timestamp = cursor.getTimestamp();
+ * 	...
+ * }
+ * </pre>
+ */
+public class PingCursor {
+	private final IPingSnapshot pings;
+	private int ping = -1;
+	
+	public PingCursor(IPingSnapshot pings) {
+		this.pings = pings;
+	}
+	
+	/**
+	 * Moves to the next ping.
+	 * @return False if there are no more pings.
+	 */
+	public boolean next() {
+		if(ping < pings.size()) {
+			ping++;
+		}
+		return ping < pings.size();
+	}
+	
+	/**
+	 * Moves to the given ping, so that it will be the current ping after
+	 * the next call to {@link #next()}.
+	 */
+	public void seek(int ping) {
+		this.ping = ping - 1;
+	}
+	
+	/**
+	 * @return The index of the current ping.
+	 */
+	public int getIndex() {
+		return ping;
+	}
+	
+	public long getTimestamp() {
+		return pings.getTimestamp(ping);
+	}
+	
+	/**
+	 * @return Whether there is a ping after this one.
+	 */
+	public boolean hasNext() {
+		return ping + 1 < pings.size();
+	}
+	
+	/**
+	 * @return The timestamp of the ping after this one.
+	 */
+	public long getNextTimestamp() {
+		return pings.getTimestamp(ping + 1);
+	}
+	
+	public int getTagCount() {
+		return pings.getTagCount(ping);
+	}
+	
+	public int getTagID(int index) {
+		return pings.getTagID(ping, index);
+	}
+	
+	/**
+	 * @return Whether the current ping has the tag with the given ID.
+	 */
+	public boolean hasTag(int id) {
+		int tagCount = pings.getTagCount(ping);
+		for(int i = 0; i < tagCount; i++) {
+			if(pings.getTagID(ping, i) == id) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+}
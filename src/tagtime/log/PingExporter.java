@@ -0,0 +1,375 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.json.simple.JSONValue;
+
+import tagtime.util.BackwardsAccessFile;
+import tagtime.util.ITagMatcher;
+import tagtime.util.TagMatcher;
+
+/**
+ * Writes the pings in a time range that match a set of tags, as CSV or
+ * JSON lines. The first ping is found by binary search in a snapshot
+ * (or, given the matching pings from a {@link TagIndex}, only those
+ * pings are read), or with a {@link LogOffsetIndex} when reading
+ * straight from the log file, and each ping is written as soon as it is read, so exporting a short
+ * range takes about the same time no matter how long the log is, and
+ * the output is never held in memory.
+ * <p>
+ * This can also be run from the command line; see {@link #main(String[])}.
+ * </p>
+ */
+public class PingExporter {
+	public enum Format {
+		/**
+		 * One row per ping, with the columns <code>timestamp,time,tags</code>.
+		 * The time is in local time, and the tags are separated by spaces.
+		 */
+		CSV,
+		
+		/**
+		 * One object per line, in the format
+		 * <code>{"timestamp":...,"tags":[...]}</code>.
+		 */
+		JSON_LINES
+	}
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final IPingSnapshot pings;
+	
+	/**
+	 * Each tag as it appears in the output, by ID, so that each is only
+	 * escaped once.
+	 */
+	private final String[] formattedTags;
+	
+	private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	
+	public PingExporter(IPingSnapshot pings) {
+		this.pings = pings;
+		
+		formattedTags = new String[pings.getDistinctTagCount()];
+	}
+	
+	/**
+	 * Creates an exporter for reading straight from the log file.
+	 */
+	private PingExporter() {
+		pings = null;
+		formattedTags = null;
+	}
+	
+	/**
+	 * Writes the matching pings to the given channel, in timestamp order.
+	 * The channel is not closed.
+	 * @param from The Unix timestamp (in seconds) of the start of the
+	 *            range, inclusive.
+	 * @param to The Unix timestamp (in seconds) of the end of the range,
+	 *            exclusive.
+	 * @param tagMatcher Which pings to export, or null to export all of
+	 *            them.
+	 * @return The number of pings written.
+	 */
+	public int export(long from, long to, ITagMatcher tagMatcher, Format format,
+				WritableByteChannel channel) throws IOException {
+		TagIDMatcher matcher = tagMatcher != null ? new TagIDMatcher(pings, tagMatcher) : null;
+		
+		Writer writer = startExport(format, channel);
+		
+		int count = 0;
+		int end = pings.findPing(to);
+		for(int ping = pings.findPing(from); ping < end; ping++) {
+			if(matcher != null && !matcher.matches(ping)) {
+				continue;
+			}
+			
+			write(writer, format, ping);
+			count++;
+		}
+		
+		writer.flush();
+		
+		return count;
+	}
+	
+	/**
+	 * The same as {@link #export(long, long, ITagMatcher, Format,
+	 * WritableByteChannel)}, but only reads the given pings, so a rarely
+	 * used tag can be exported without checking every ping in the range.
+	 * @param matchingPings The numbers of the pings to export, which
+	 *            must match this exporter's snapshot; see
+	 *            {@link TagIndex#findPings(TagMatcher)}.
+	 */
+	public int export(long from, long to, PostingList matchingPings, Format format,
+				WritableByteChannel channel) throws IOException {
+		Writer writer = startExport(format, channel);
+		
+		int count = 0;
+		int start = pings.findPing(from);
+		int end = pings.findPing(to);
+		PostingList.Cursor cursor = matchingPings.cursor();
+		for(int ping = cursor.next(); ping != -1 && ping < end; ping = cursor.next()) {
+			if(ping >= start) {
+				write(writer, format, ping);
+				count++;
+			}
+		}
+		
+		writer.flush();
+		
+		return count;
+	}
+	
+	/**
+	 * The same as {@link #export(long, long, ITagMatcher, Format,
+	 * WritableByteChannel)}, but reads the pings from the given log file
+	 * instead of a snapshot, starting at the given offset and stopping
+	 * at the end of the range. Only the lines in between are read.
+	 * @param offset The offset of the start of a line before the range;
+	 *            see {@link LogOffsetIndex#findOffset(long)}.
+	 */
+	public static int export(File logFile, long offset, final long from, long to,
+				ITagMatcher tagMatcher, final Format format, WritableByteChannel channel)
+				throws IOException {
+		final PingExporter exporter = new PingExporter();
+		final ITagMatcher matcher = tagMatcher;
+		final Writer writer = exporter.startExport(format, channel);
+		
+		//the visitor can't throw the exception itself
+		final IOException[] error = new IOException[1];
+		final int[] count = new int[1];
+		
+		boolean opened = LogParser.scan(logFile, offset, to, new LogParser.PingVisitor() {
+			@Override
+			public void visitPing(long timestamp, List<String> tags) {
+				if(error[0] != null || timestamp < from
+							|| matcher != null && !matcher.matchesTags(tags)) {
+					return;
+				}
+				
+				try {
+					exporter.write(writer, format, timestamp, tags);
+					count[0]++;
+				} catch(IOException e) {
+					error[0] = e;
+				}
+			}
+		});
+		
+		if(error[0] != null) {
+			throw error[0];
+		}
+		if(!opened) {
+			throw new IOException("Unable to read " + logFile.getName() + ".");
+		}
+		
+		writer.flush();
+		
+		return count[0];
+	}
+	
+	private Writer startExport(Format format, WritableByteChannel channel) throws IOException {
+		Writer writer = new BufferedWriter(Channels.newWriter(channel, "UTF-8"), BUFFER_SIZE);
+		
+		if(format == Format.CSV) {
+			writer.write("timestamp,time,tags\n");
+		}
+		
+		return writer;
+	}
+	
+	private void write(Writer writer, Format format, int ping) throws IOException {
+		if(format == Format.CSV) {
+			writeCSV(writer, ping);
+		} else {
+			writeJSON(writer, ping);
+		}
+	}
+	
+	private void write(Writer writer, Format format, long timestamp, List<String> tags)
+				throws IOException {
+		if(format == Format.CSV) {
+			StringBuilder joinedTags = new StringBuilder();
+			for(int i = 0; i < tags.size(); i++) {
+				if(i > 0) {
+					joinedTags.append(' ');
+				}
+				joinedTags.append(tags.get(i));
+			}
+			writeCSV(writer, timestamp, joinedTags);
+		} else {
+			writeJSONStart(writer, timestamp);
+			for(int i = 0; i < tags.size(); i++) {
+				if(i > 0) {
+					writer.write(',');
+				}
+				writer.write("\"" + JSONValue.escape(tags.get(i)) + "\"");
+			}
+			writer.write("]}\n");
+		}
+	}
+	
+	private void writeCSV(Writer writer, int ping) throws IOException {
+		//join the tags first, in case they need to be quoted together
+		StringBuilder tags = new StringBuilder();
+		int tagCount = pings.getTagCount(ping);
+		for(int i = 0; i < tagCount; i++) {
+			if(i > 0) {
+				tags.append(' ');
+			}
+			tags.append(pings.getTag(pings.getTagID(ping, i)));
+		}
+		
+		writeCSV(writer, pings.getTimestamp(ping), tags);
+	}
+	
+	private void writeCSV(Writer writer, long timestamp, StringBuilder tags) throws IOException {
+		writer.write(Long.toString(timestamp));
+		writer.write(',');
+		writer.write(timeFormat.format(new Date(timestamp * 1000)));
+		writer.write(',');
+		
+		if(tags.indexOf(",") >= 0 || tags.indexOf("\"") >= 0) {
+			writer.write('"');
+			writer.write(tags.toString().replace("\"", "\"\""));
+			writer.write('"');
+		} else {
+			writer.append(tags);
+		}
+		writer.write('\n');
+	}
+	
+	private void writeJSON(Writer writer, int ping) throws IOException {
+		writeJSONStart(writer, pings.getTimestamp(ping));
+		
+		int tagCount = pings.getTagCount(ping);
+		int id;
+		for(int i = 0; i < tagCount; i++) {
+			if(i > 0) {
+				writer.write(',');
+			}
+			
+			id = pings.getTagID(ping, i);
+			if(formattedTags[id] == null) {
+				formattedTags[id] = "\"" + JSONValue.escape(pings.getTag(id)) + "\"";
+			}
+			writer.write(formattedTags[id]);
+		}
+		writer.write("]}\n");
+	}
+	
+	private static void writeJSONStart(Writer writer, long timestamp) throws IOException {
+		writer.write("{\"timestamp\":");
+		writer.write(Long.toString(timestamp));
+		writer.write(",\"tags\":[");
+	}
+	
+	/**
+	 * Exports pings from a log file to standard output. Usage:
+	 * 
+	 * <pre>
+	 * PingExporter logfile csv|jsonl from to [tag ...]
+	 * </pre>
+	 * 
+	 * <code>from</code> and <code>to</code> are dates in the format
+	 * yyyy-MM-dd; the range includes both. Tags follow the same rules as
+	 * in SettingType.BEEMINDER_GRAPHS: a ping is exported if it has at
+	 * least one of the plain tags, every tag starting with +, and none of
+	 * the tags starting with -. If no tags are given, every ping in the
+	 * range is exported.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 4 || !args[1].equals("csv") && !args[1].equals("jsonl")) {
+			System.err.println("Usage: PingExporter logfile csv|jsonl from to [tag ...]");
+			System.err.println("Dates are in the format yyyy-MM-dd.");
+			System.exit(1);
+		}
+		
+		long from, to;
+		try {
+			SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+			from = dateFormat.parse(args[2]).getTime() / 1000;
+			
+			//include all of the last day
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTime(dateFormat.parse(args[3]));
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+			to = calendar.getTimeInMillis() / 1000;
+		} catch(ParseException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		
+		List<String> acceptedTags = new ArrayList<String>();
+		List<String> rejectedTags = new ArrayList<String>();
+		List<String> requiredTags = new ArrayList<String>();
+		for(int i = 4; i < args.length; i++) {
+			if(args[i].startsWith("-")) {
+				rejectedTags.add(args[i].substring(1).toLowerCase());
+			} else if(args[i].startsWith("+")) {
+				requiredTags.add(args[i].substring(1).toLowerCase());
+			} else {
+				acceptedTags.add(args[i].toLowerCase());
+			}
+		}
+		
+		File logFile = new File(args[0]);
+		
+		//if TagTime's offset index covers the log file as it is now, skip
+		//to shortly before the range; otherwise, read from the start
+		String path = logFile.getPath();
+		LogOffsetIndex offsetIndex = new LogOffsetIndex(new File((path.endsWith(".log")
+					? path.substring(0, path.length() - 4) : path) + ".offsets"), logFile);
+		long offset = offsetIndex.isUpToDate() ? offsetIndex.findOffset(from) : 0;
+		
+		BackwardsAccessFile file = new BackwardsAccessFile(logFile, "r");
+		try {
+			file.seekTimestamp(from, offset);
+			offset = file.getFilePointer();
+		} finally {
+			file.close();
+		}
+		
+		FileOutputStream out = new FileOutputStream(FileDescriptor.out);
+		export(logFile, offset, from, to,
+					args.length > 4 ? new TagMatcher(acceptedTags, rejectedTags, requiredTags) : null,
+					args[1].equals("csv") ? Format.CSV : Format.JSON_LINES,
+					out.getChannel());
+		out.close();
+	}
+}
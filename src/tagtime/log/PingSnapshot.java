@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import java.util.List;
+
+/**
+ * A read-only view of the pings in a {@link PingStore}.
+ */
+public class PingSnapshot implements IPingSnapshot {
+	private final long[] timestamps;
+	private final int[] tagOffsets;
+	private final int[] tagIDs;
+	private final int size;
+	
+	private final TagDictionary dictionary;
+	private final String[] tags;
+	private final int tagCount;
+	
+	PingSnapshot(long[] timestamps, int[] tagOffsets, int[] tagIDs, int size,
+				TagDictionary dictionary, String[] tags, int tagCount) {
+		this.timestamps = timestamps;
+		this.tagOffsets = tagOffsets;
+		this.tagIDs = tagIDs;
+		this.size = size;
+		this.dictionary = dictionary;
+		this.tags = tags;
+		this.tagCount = tagCount;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public long getTimestamp(int ping) {
+		checkIndex(ping);
+		return timestamps[ping];
+	}
+	
+	@Override
+	public int getTagCount(int ping) {
+		checkIndex(ping);
+		return tagOffsets[ping + 1] - tagOffsets[ping];
+	}
+	
+	@Override
+	public int getTagID(int ping, int index) {
+		checkIndex(ping);
+		if(index < 0 || index >= tagOffsets[ping + 1] - tagOffsets[ping]) {
+			throw new IndexOutOfBoundsException("Ping " + ping + " has no tag " + index + ".");
+		}
+		
+		return tagIDs[tagOffsets[ping] + index];
+	}
+	
+	@Override
+	public List<String> getTags(int ping, List<String> list) {
+		checkIndex(ping);
+		for(int i = tagOffsets[ping]; i < tagOffsets[ping + 1]; i++) {
+			list.add(tags[tagIDs[i]]);
+		}
+		
+		return list;
+	}
+	
+	@Override
+	public int getDistinctTagCount() {
+		return tagCount;
+	}
+	
+	@Override
+	public String getTag(int id) {
+		if(id < 0 || id >= tagCount) {
+			throw new IndexOutOfBoundsException("No tag with ID " + id + ".");
+		}
+		
+		return tags[id];
+	}
+	
+	@Override
+	public int findTagID(String tag) {
+		int id = dictionary.findID(tag);
+		return id < tagCount ? id : -1;
+	}
+	
+	@Override
+	public int findPing(long timestamp) {
+		int low = 0;
+		int high = size;
+		int mid;
+		
+		while(low < high) {
+			mid = (low + high) >>> 1;
+			if(timestamps[mid] < timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		
+		return low;
+	}
+	
+	private void checkIndex(int ping) {
+		if(ping < 0 || ping >= size) {
+			throw new IndexOutOfBoundsException("No ping at index " + ping + ".");
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * <p>
+ * An {@link IPingStore} that keeps pings on the heap. The pings are kept in timestamp order in
+ * parallel arrays: the timestamp of ping <code>i</code> is
+ * <code>timestamps[i]</code>, and its tags' IDs are
+ * <code>tagIDs[tagOffsets[i]]</code> up to (but not including)
+ * <code>tagIDs[tagOffsets[i + 1]]</code>.
+ * </p>
+ * <p>
+ * Use {@link #snapshot()} to read the pings. Arrays are only ever
+ * appended to in place; anything else replaces them, so existing
+ * snapshots never see changes.
+ * </p>
+ */
+public class PingStore implements IPingStore {
+	private final TagDictionary dictionary = new TagDictionary();
+	
+	private long[] timestamps = new long[256];
+	private int[] tagOffsets = new int[257];
+	private int[] tagIDs = new int[512];
+	
+	private int size = 0;
+	
+	@Override
+	public synchronized void load(File logFile) {
+		size = 0;
+		timestamps = new long[timestamps.length];
+		tagOffsets = new int[tagOffsets.length];
+		tagIDs = new int[tagIDs.length];
+		
+		LogParser.scan(logFile, new LogParser.PingVisitor() {
+			@Override
+			public void visitPing(long timestamp, List<String> tags) {
+				add(timestamp, tags);
+			}
+		});
+	}
+	
+	@Override
+	public synchronized void add(long timestamp, List<String> tags) {
+		int tagCount = tags.size();
+		
+		if(size == 0 || timestamps[size - 1] <= timestamp) {
+			//the usual case: append in place
+			ensureCapacity(size + 1, tagOffsets[size] + tagCount);
+			
+			timestamps[size] = timestamp;
+			int offset = tagOffsets[size];
+			for(String tag : tags) {
+				tagIDs[offset++] = dictionary.getID(tag);
+			}
+			tagOffsets[size + 1] = offset;
+			size++;
+			return;
+		}
+		
+		//find the insertion point
+		int index = snapshot().findPing(timestamp + 1);
+		int offset = tagOffsets[index];
+		
+		//copy everything into new arrays, leaving a gap for the new ping
+		long[] newTimestamps = new long[Math.max(timestamps.length, size + 1)];
+		int[] newTagOffsets = new int[newTimestamps.length + 1];
+		int[] newTagIDs = new int[Math.max(tagIDs.length, tagOffsets[size] + tagCount)];
+		
+		System.arraycopy(timestamps, 0, newTimestamps, 0, index);
+		System.arraycopy(timestamps, index, newTimestamps, index + 1, size - index);
+		newTimestamps[index] = timestamp;
+		
+		System.arraycopy(tagIDs, 0, newTagIDs, 0, offset);
+		System.arraycopy(tagIDs, offset, newTagIDs, offset + tagCount,
+					tagOffsets[size] - offset);
+		for(String tag : tags) {
+			newTagIDs[offset++] = dictionary.getID(tag);
+		}
+		
+		System.arraycopy(tagOffsets, 0, newTagOffsets, 0, index + 1);
+		for(int i = index; i <= size; i++) {
+			newTagOffsets[i + 1] = tagOffsets[i] + tagCount;
+		}
+		
+		timestamps = newTimestamps;
+		tagOffsets = newTagOffsets;
+		tagIDs = newTagIDs;
+		size++;
+	}
+	
+	@Override
+	public synchronized PingSnapshot snapshot() {
+		return new PingSnapshot(timestamps, tagOffsets, tagIDs, size,
+					dictionary, dictionary.getTagArray(), dictionary.size());
+	}
+	
+	private void ensureCapacity(int pings, int tags) {
+		if(pings > timestamps.length) {
+			int newLength = Math.max(pings, timestamps.length * 2);
+			
+			long[] newTimestamps = new long[newLength];
+			System.arraycopy(timestamps, 0, newTimestamps, 0, size);
+			timestamps = newTimestamps;
+			
+			int[] newTagOffsets = new int[newLength + 1];
+			System.arraycopy(tagOffsets, 0, newTagOffsets, 0, size + 1);
+			tagOffsets = newTagOffsets;
+		}
+		
+		if(tags > tagIDs.length) {
+			int[] newTagIDs = new int[Math.max(tags, tagIDs.length * 2)];
+			System.arraycopy(tagIDs, 0, newTagIDs, 0, tagOffsets[size]);
+			tagIDs = newTagIDs;
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+package tagtime.log;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * <p>
+ * A sorted list of ping numbers, compressed by storing the gap between
+ * each number and the one before it as a variable-length integer. Gaps
+ * under 128 (the usual case for common tags) take one byte each.
+ * </p>
+ * <p>
+ * Numbers can only be added in increasing order. Use
+ * {@link #intersection(PostingList, PostingList)},
+ * {@link #union(PostingList, PostingList)} and
+ * {@link #difference(PostingList, PostingList)} to combine lists; these
+ * run in time proportional to the sizes of the lists.
+ * </p>
+ */
+public class PostingList {
+	private byte[] data;
+	private int length = 0;
+	
+	private int size = 0;
+	private int last = -1;
+	
+	public PostingList() {
+		data = new byte[16];
+	}
+	
+	/**
+	 * @return A list containing every number from 0 to count - 1.
+	 */
+	public static PostingList range(int count) {
+		PostingList list = new PostingList();
+		list.data = new byte[Math.max(count, 16)];
+		for(int i = 0; i < count; i++) {
+			list.add(i);
+		}
+		return list;
+	}
+	
+	/**
+	 * Adds a number to the end of the list.
+	 * @throws IllegalArgumentException If the number is not greater
+	 *             than every number already in the list.
+	 */
+	public void add(int ping) {
+		if(ping <= last) {
+			throw new IllegalArgumentException("Ping " + ping
+						+ " must come after " + last + ".");
+		}
+		
+		//the gap is always at least 1, so store 1 less
+		int gap = ping - last - 1;
+		
+		if(length + 5 > data.length) {
+			byte[] newData = new byte[data.length * 2];
+			System.arraycopy(data, 0, newData, 0, length);
+			data = newData;
+		}
+		
+		while(gap >= 0x80) {
+			data[length++] = (byte) (gap | 0x80);
+			gap >>>= 7;
+		}
+		data[length++] = (byte) gap;
+		
+		last = ping;
+		size++;
+	}
+	
+	/**
+	 * @return The number of pings in the list.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return The final number in the list, or -1 if it is empty.
+	 */
+	public int getLast() {
+		return last;
+	}
+	
+	/**
+	 * @return The number of bytes used to store the list.
+	 */
+	public int getEncodedLength() {
+		return length;
+	}
+	
+	/**
+	 * @return A copy of this list, which will not change if this one
+	 *         does.
+	 */
+	public PostingList copy() {
+		PostingList list = new PostingList();
+		list.data = new byte[Math.max(length, 16)];
+		System.arraycopy(data, 0, list.data, 0, length);
+		list.length = length;
+		list.size = size;
+		list.last = last;
+		return list;
+	}
+	
+	public Cursor cursor() {
+		return new Cursor();
+	}
+	
+	public int[] toArray() {
+		int[] pings = new int[size];
+		Cursor cursor = cursor();
+		for(int i = 0; i < size; i++) {
+			pings[i] = cursor.next();
+		}
+		return pings;
+	}
+	
+	/**
+	 * @return A list of the numbers found in both lists.
+	 */
+	public static PostingList intersection(PostingList a, PostingList b) {
+		PostingList result = new PostingList();
+		Cursor cursorA = a.cursor();
+		Cursor cursorB = b.cursor();
+		int pingA = cursorA.next();
+		int pingB = cursorB.next();
+		
+		while(pingA != -1 && pingB != -1) {
+			if(pingA < pingB) {
+				pingA = cursorA.next();
+			} else if(pingB < pingA) {
+				pingB = cursorB.next();
+			} else {
+				result.add(pingA);
+				pingA = cursorA.next();
+				pingB = cursorB.next();
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @return A list of the numbers found in either list.
+	 */
+	public static PostingList union(PostingList a, PostingList b) {
+		PostingList result = new PostingList();
+		Cursor cursorA = a.cursor();
+		Cursor cursorB = b.cursor();
+		int pingA = cursorA.next();
+		int pingB = cursorB.next();
+		
+		while(pingA != -1 || pingB != -1) {
+			if(pingB == -1 || (pingA != -1 && pingA < pingB)) {
+				result.add(pingA);
+				pingA = cursorA.next();
+			} else if(pingA == -1 || pingB < pingA) {
+				result.add(pingB);
+				pingB = cursorB.next();
+			} else {
+				result.add(pingA);
+				pingA = cursorA.next();
+				pingB = cursorB.next();
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @return A list of the numbers found in the first list but not the
+	 *         second.
+	 */
+	public static PostingList difference(PostingList a, PostingList b) {
+		PostingList result = new PostingList();
+		Cursor cursorA = a.cursor();
+		Cursor cursorB = b.cursor();
+		int pingA = cursorA.next();
+		int pingB = cursorB.next();
+		
+		while(pingA != -1) {
+			if(pingB == -1 || pingA < pingB) {
+				result.add(pingA);
+				pingA = cursorA.next();
+			} else if(pingB < pingA) {
+				pingB = cursorB.next();
+			} else {
+				pingA = cursorA.next();
+				pingB = cursorB.next();
+			}
+		}
+		
+		return result;
+	}
+	
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.writeInt(last);
+		out.writeInt(length);
+		out.write(data, 0, length);
+	}
+	
+	public static PostingList read(DataInput in) throws IOException {
+		PostingList list = new PostingList();
+		list.size = in.readInt();
+		list.last = in.readInt();
+		list.length = in.readInt();
+		if(list.size < 0 || list.length < 0) {
+			throw new IOException("Invalid posting list.");
+		}
+		
+		list.data = new byte[Math.max(list.length, 16)];
+		in.readFully(list.data, 0, list.length);
+		return list;
+	}
+	
+	/**
+	 * Reads the numbers in a list in order. Numbers added to the list
+	 * after this cursor was created may or may not be included.
+	 */
+	public class Cursor {
+		private int position = 0;
+		private int ping = -1;
+		
+		/**
+		 * @return The next number in the list, or -1 if there are no
+		 *         more.
+		 */
+		public int next() {
+			if(position >= length) {
+				return -1;
+			}
+			
+			int gap = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data[position++];
+				gap |= (b & 0x7f) << shift;
+				shift += 7;
+			} while((b & 0x80) != 0);
+			
+			ping += gap + 1;
+			return ping;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import java.util.HashMap;
+
+/**
+ * Assigns each distinct tag a number, so that pings can store their tags
+ * as arrays of ints. IDs are assigned in order starting from 0, and
+ * never change once assigned.
+ */
+public class TagDictionary {
+	private final HashMap<String, Integer> tagIDs = new HashMap<String, Integer>();
+	
+	/**
+	 * The tags, indexed by ID. Only the first <code>size</code> entries
+	 * are used. This array is replaced rather than modified when it runs
+	 * out of space, so that snapshots can keep using the old one.
+	 */
+	private String[] tags = new String[64];
+	private int size = 0;
+	
+	/**
+	 * @return The ID of the given tag, assigning a new one if needed.
+	 */
+	public synchronized int getID(String tag) {
+		Integer id = tagIDs.get(tag);
+		
+		if(id == null) {
+			if(size == tags.length) {
+				String[] newTags = new String[tags.length * 2];
+				System.arraycopy(tags, 0, newTags, 0, size);
+				tags = newTags;
+			}
+			
+			id = size;
+			tags[size++] = tag;
+			tagIDs.put(tag, id);
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * @return The ID of the given tag, or -1 if it has never been used.
+	 */
+	public synchronized int findID(String tag) {
+		Integer id = tagIDs.get(tag);
+		return id != null ? id : -1;
+	}
+	
+	public synchronized String getTag(int id) {
+		if(id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("No tag with ID " + id + ".");
+		}
+		
+		return tags[id];
+	}
+	
+	public synchronized int size() {
+		return size;
+	}
+	
+	/**
+	 * @return The array of tags currently in use. Entries past
+	 *         {@link #size()} may be filled in later, but existing
+	 *         entries will never change.
+	 */
+	synchronized String[] getTagArray() {
+		return tags;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+package tagtime.log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tagtime.util.ITagMatcher;
+import tagtime.util.TagMatcher;
+
+/**
+ * Applies an {@link ITagMatcher} to the pings in an
+ * {@link IPingSnapshot}. If the matcher is a {@link TagMatcher} without
+ * required tags, each tag is only checked once, and pings are matched by
+ * tag ID without looking up any strings.
+ */
+public class TagIDMatcher {
+	private final IPingSnapshot pings;
+	private final ITagMatcher tagMatcher;
+	
+	private final boolean[] accepted;
+	private final boolean[] rejected;
+	private final boolean requiresAcceptedTag;
+	private final boolean hasRejectedTags;
+	
+	/**
+	 * Only used when matching by tag name.
+	 */
+	private final List<String> tags;
+	
+	public TagIDMatcher(IPingSnapshot pings, ITagMatcher tagMatcher) {
+		this.pings = pings;
+		this.tagMatcher = tagMatcher;
+		
+		if(tagMatcher instanceof TagMatcher
+					&& !((TagMatcher) tagMatcher).hasRequiredTags()) {
+			TagMatcher matcher = (TagMatcher) tagMatcher;
+			
+			int tagCount = pings.getDistinctTagCount();
+			accepted = new boolean[tagCount];
+			rejected = new boolean[tagCount];
+			
+			String tag;
+			for(int id = 0; id < tagCount; id++) {
+				tag = pings.getTag(id);
+				accepted[id] = matcher.isAccepted(tag);
+				rejected[id] = matcher.isRejected(tag);
+			}
+			
+			requiresAcceptedTag = matcher.requiresAcceptedTag();
+			hasRejectedTags = matcher.hasRejectedTags();
+			tags = null;
+		} else {
+			accepted = null;
+			rejected = null;
+			requiresAcceptedTag = false;
+			hasRejectedTags = false;
+			tags = new ArrayList<String>();
+		}
+	}
+	
+	/**
+	 * @return Whether the given ping's tags are accepted.
+	 */
+	public boolean matches(int ping) {
+		if(accepted == null) {
+			tags.clear();
+			return tagMatcher.matchesTags(pings.getTags(ping, tags));
+		}
+		
+		//this follows the same steps as TagMatcher.matchesTags()
+		boolean matches = !requiresAcceptedTag;
+		
+		int tagCount = pings.getTagCount(ping);
+		int id;
+		for(int i = 0; i < tagCount; i++) {
+			id = pings.getTagID(ping, i);
+			
+			if(!matches && accepted[id]) {
+				matches = true;
+				
+				if(!hasRejectedTags) {
+					return true;
+				}
+			} else if(rejected[id]) {
+				return false;
+			}
+		}
+		
+		return matches;
+	}
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+package tagtime.log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import tagtime.util.AtomicFile;
+import tagtime.util.TagMatcher;
+
+/**
+ * <p>
+ * An inverted index listing, for each tag, the numbers of the pings
+ * (their positions in an {@link IPingSnapshot}) that have that tag.
+ * Tags are converted to lower case, because tag matching is case
+ * insensitive.
+ * </p>
+ * <p>
+ * The index is saved next to the log file every
+ * {@value #SAVE_INTERVAL} changes and by {@link #flush()}, along with
+ * the number of pings and the final timestamp it covers, so that it can
+ * tell if the log file changed (or TagTime quit before saving) while
+ * TagTime wasn't running.
+ * </p>
+ */
+public class TagIndex {
+	private static final int FILE_VERSION = 1;
+	
+	/**
+	 * The number of changes to make before saving the index. Saving
+	 * rewrites the whole file, so this keeps a run of missed pings from
+	 * rewriting it once per ping.
+	 */
+	private static final int SAVE_INTERVAL = 50;
+	
+	private final File indexFile;
+	
+	private int unsavedChanges = 0;
+	
+	private final Map<String, PostingList> postings = new TreeMap<String, PostingList>();
+	
+	private int pingCount = 0;
+	private long lastTimestamp = -1;
+	
+	public TagIndex(File indexFile) {
+		this.indexFile = indexFile;
+		
+		load();
+	}
+	
+	/**
+	 * @return Whether this index covers exactly the given pings.
+	 */
+	public synchronized boolean isUpToDate(IPingSnapshot pings) {
+		if(pings.size() == 0) {
+			return pingCount == 0;
+		}
+		
+		return pingCount == pings.size()
+					&& lastTimestamp == pings.getTimestamp(pings.size() - 1);
+	}
+	
+	/**
+	 * Adds the final ping in the given snapshot, which must be the only
+	 * ping not yet in the index.
+	 */
+	public synchronized void append(IPingSnapshot pings) {
+		if(pings.size() != pingCount + 1) {
+			rebuild(pings);
+			return;
+		}
+		
+		add(pings, pingCount);
+		changed();
+	}
+	
+	/**
+	 * Discards the index and rebuilds it from the given pings. Use this
+	 * if a ping was inserted out of order, as that changes the numbers
+	 * of all the pings after it.
+	 */
+	public synchronized void rebuild(IPingSnapshot pings) {
+		postings.clear();
+		
+		//look up each tag by name only once, rather than once per ping
+		PostingList[] listsByID = new PostingList[pings.getDistinctTagCount()];
+		
+		PingCursor cursor = new PingCursor(pings);
+		int tagID;
+		PostingList list;
+		while(cursor.next()) {
+			for(int i = 0; i < cursor.getTagCount(); i++) {
+				tagID = cursor.getTagID(i);
+				list = listsByID[tagID];
+				if(list == null) {
+					list = getList(pings.getTag(tagID));
+					listsByID[tagID] = list;
+				}
+				
+				//the same tag may appear twice on one ping
+				if(list.getLast() != cursor.getIndex()) {
+					list.add(cursor.getIndex());
+				}
+			}
+		}
+		
+		pingCount = pings.size();
+		lastTimestamp = pingCount > 0 ? pings.getTimestamp(pingCount - 1) : -1;
+		
+		changed();
+	}
+	
+	/**
+	 * Saves any changes not yet saved.
+	 */
+	public synchronized void flush() {
+		if(unsavedChanges > 0) {
+			save();
+		}
+	}
+	
+	/**
+	 * @return The pings with the given tag.
+	 */
+	public synchronized PostingList getPings(String tag) {
+		PostingList list = postings.get(tag.toLowerCase());
+		return list != null ? list.copy() : new PostingList();
+	}
+	
+	/**
+	 * @return The pings accepted by the given TagMatcher: those with all
+	 *         of its required tags and any of its accepted tags (or all
+	 *         pings, if it doesn't require either) minus those with any
+	 *         of its rejected tags.
+	 */
+	public synchronized PostingList findPings(TagMatcher tagMatcher) {
+		PostingList accepted = null;
+		
+		//start with the shortest list, so that each intersection is as
+		//short as possible
+		if(tagMatcher.hasRequiredTags()) {
+			List<PostingList> required = new ArrayList<PostingList>();
+			PostingList list;
+			for(String tag : tagMatcher.getRequiredTags()) {
+				list = postings.get(tag.toLowerCase());
+				if(list == null) {
+					return new PostingList();
+				}
+				required.add(list);
+			}
+			Collections.sort(required, new Comparator<PostingList>() {
+				@Override
+				public int compare(PostingList a, PostingList b) {
+					return a.size() - b.size();
+				}
+			});
+			
+			accepted = required.get(0);
+			for(int i = 1; i < required.size(); i++) {
+				accepted = PostingList.intersection(accepted, required.get(i));
+			}
+		}
+		
+		PostingList anyAccepted = tagMatcher.requiresAcceptedTag() ? new PostingList() : null;
+		PostingList rejected = new PostingList();
+		
+		for(Map.Entry<String, PostingList> entry : postings.entrySet()) {
+			if(tagMatcher.isRejected(entry.getKey())) {
+				rejected = PostingList.union(rejected, entry.getValue());
+			} else if(anyAccepted != null && tagMatcher.isAccepted(entry.getKey())) {
+				anyAccepted = PostingList.union(anyAccepted, entry.getValue());
+			}
+		}
+		
+		if(anyAccepted != null) {
+			accepted = accepted != null ? PostingList.intersection(accepted, anyAccepted)
+						: anyAccepted;
+		} else if(accepted == null) {
+			accepted = PostingList.range(pingCount);
+		}
+		
+		return PostingList.difference(accepted, rejected);
+	}
+	
+	private void add(IPingSnapshot pings, int ping) {
+		PostingList list;
+		
+		int tagCount = pings.getTagCount(ping);
+		for(int i = 0; i < tagCount; i++) {
+			list = getList(pings.getTag(pings.getTagID(ping, i)));
+			
+			//the same tag may appear twice on one ping
+			if(list.getLast() != ping) {
+				list.add(ping);
+			}
+		}
+		
+		pingCount = ping + 1;
+		lastTimestamp = pings.getTimestamp(ping);
+	}
+	
+	/**
+	 * @return The list for the given tag, which is created if necessary.
+	 */
+	private PostingList getList(String tag) {
+		tag = tag.toLowerCase();
+		
+		PostingList list = postings.get(tag);
+		if(list == null) {
+			list = new PostingList();
+			postings.put(tag, list);
+		}
+		return list;
+	}
+	
+	private void changed() {
+		unsavedChanges++;
+		if(unsavedChanges >= SAVE_INTERVAL) {
+			save();
+		}
+	}
+	
+	private void load() {
+		if(!indexFile.exists()) {
+			return;
+		}
+		
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+						new FileInputStream(indexFile)));
+			
+			try {
+				if(in.readInt() != FILE_VERSION) {
+					return;
+				}
+				
+				int newPingCount = in.readInt();
+				long newLastTimestamp = in.readLong();
+				int tagCount = in.readInt();
+				
+				for(int i = 0; i < tagCount; i++) {
+					String tag = in.readUTF();
+					postings.put(tag, PostingList.read(in));
+				}
+				
+				pingCount = newPingCount;
+				lastTimestamp = newLastTimestamp;
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			//the owner will rebuild the index once it sees that it is
+			//out of date
+			e.printStackTrace();
+			postings.clear();
+		}
+	}
+	
+	private void save() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		
+		try {
+			out.writeInt(FILE_VERSION);
+			out.writeInt(pingCount);
+			out.writeLong(lastTimestamp);
+			out.writeInt(postings.size());
+			
+			for(Map.Entry<String, PostingList> entry : postings.entrySet()) {
+				out.writeUTF(entry.getKey());
+				entry.getValue().write(out);
+			}
+		} catch(IOException e) {
+			System.err.println("Unable to update " + indexFile.getName() + ".");
+			e.printStackTrace();
+			return;
+		}
+		
+		if(AtomicFile.write(indexFile, bytes.toByteArray())) {
+			unsavedChanges = 0;
+		}
+	}
+}
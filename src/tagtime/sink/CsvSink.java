@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.sink;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.SortedMap;
+
+/**
+ * Writes each ping to a CSV file, one row per ping, with the columns
+ * <code>timestamp,time,tags</code>. The time is in local time, and the
+ * tags are separated by spaces.
+ */
+public class CsvSink extends RollingFileSink {
+	private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	
+	public CsvSink(String username) {
+		super(username, "csv");
+	}
+	
+	@Override
+	protected String getHeader() {
+		return "timestamp,time,tags";
+	}
+	
+	@Override
+	protected String formatPing(SinkBatch.Ping ping) {
+		StringBuilder tags = new StringBuilder();
+		for(String tag : ping.tags) {
+			if(tags.length() > 0) {
+				tags.append(' ');
+			}
+			tags.append(tag);
+		}
+		
+		return ping.timestamp + "," + timeFormat.format(new Date(ping.timestamp * 1000))
+					+ "," + escape(tags.toString());
+	}
+	
+	/**
+	 * Daily totals don't fit the same columns, so only pings are written.
+	 */
+	@Override
+	protected String formatDay(long day, SortedMap<String, Double> hoursByTag) {
+		return null;
+	}
+	
+	private static String escape(String value) {
+		if(value.indexOf(',') < 0 && value.indexOf('"') < 0
+					&& value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
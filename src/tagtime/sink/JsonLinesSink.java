@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.sink;
+
+import java.util.SortedMap;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Writes one JSON object per line: <code>{"timestamp":...,"tags":[...]}</code>
+ * for each ping, and <code>{"day":...,"hours":{"tag":...}}</code> each
+ * time a day's totals change. Since totals are written again whenever
+ * they change, the last line for each day is the current one.
+ */
+public class JsonLinesSink extends RollingFileSink {
+	public JsonLinesSink(String username) {
+		super(username, "jsonl");
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	protected String formatPing(SinkBatch.Ping ping) {
+		JSONArray tags = new JSONArray();
+		tags.addAll(ping.tags);
+		
+		JSONObject record = new JSONObject();
+		record.put("timestamp", ping.timestamp);
+		record.put("tags", tags);
+		
+		return record.toJSONString();
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	protected String formatDay(long day, SortedMap<String, Double> hoursByTag) {
+		JSONObject hours = new JSONObject();
+		hours.putAll(hoursByTag);
+		
+		JSONObject record = new JSONObject();
+		record.put("day", day);
+		record.put("hours", hours);
+		
+		return record.toJSONString();
+	}
+}
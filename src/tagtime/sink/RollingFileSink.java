@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.sink;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.SortedMap;
+
+import tagtime.Main;
+
+/**
+ * A sink that appends to a file in the data directory, starting a new
+ * file each month (<code>username_pings_yyyy-MM.extension</code>), so
+ * that no one file grows without limit. Each record goes in the file
+ * for the month it describes.
+ */
+public abstract class RollingFileSink implements Sink {
+	private final SimpleDateFormat monthFormat = new SimpleDateFormat("yyyy-MM");
+	
+	private final String username;
+	private final String extension;
+	
+	/**
+	 * The file currently open, if any, and the month it belongs to.
+	 */
+	private String currentMonth = null;
+	private Writer writer = null;
+	
+	/**
+	 * @param extension The file extension, without the dot.
+	 */
+	protected RollingFileSink(String username, String extension) {
+		this.username = username;
+		this.extension = extension;
+	}
+	
+	@Override
+	public synchronized void write(SinkBatch batch) {
+		try {
+			String line;
+			for(SinkBatch.Ping ping : batch.getPings()) {
+				line = formatPing(ping);
+				if(line != null) {
+					getWriter(ping.timestamp).write(line + "\n");
+				}
+			}
+			
+			for(long day : batch.getChangedDays()) {
+				line = formatDay(day, batch.getHoursByTag(day));
+				if(line != null) {
+					getWriter(day).write(line + "\n");
+				}
+			}
+			
+			if(writer != null) {
+				writer.flush();
+			}
+		} catch(IOException e) {
+			System.err.println("Unable to write to " + getFile(currentMonth).getName() + ".");
+			e.printStackTrace();
+			closeWriter();
+		}
+	}
+	
+	@Override
+	public synchronized void close() {
+		closeWriter();
+	}
+	
+	/**
+	 * @return The line to write for the given ping, without a line
+	 *         break, or null to skip it.
+	 */
+	protected abstract String formatPing(SinkBatch.Ping ping);
+	
+	/**
+	 * @param day The Unix timestamp (in seconds) of the start of the day.
+	 * @param hoursByTag The hours now logged on that day with each tag.
+	 * @return The line to write for the given day's totals, without a
+	 *         line break, or null to skip it.
+	 */
+	protected abstract String formatDay(long day, SortedMap<String, Double> hoursByTag);
+	
+	/**
+	 * @return The first line of each new file, or null if there isn't
+	 *         one.
+	 */
+	protected String getHeader() {
+		return null;
+	}
+	
+	/**
+	 * @return A writer for the file for the month containing the given
+	 *         Unix timestamp (in seconds).
+	 */
+	private Writer getWriter(long timestamp) throws IOException {
+		String month = monthFormat.format(new Date(timestamp * 1000));
+		if(writer != null && month.equals(currentMonth)) {
+			return writer;
+		}
+		
+		closeWriter();
+		
+		currentMonth = month;
+		File file = getFile(month);
+		boolean newFile = !file.exists() || file.length() == 0;
+		writer = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(file, true), "UTF-8"));
+		
+		String header = getHeader();
+		if(newFile && header != null) {
+			writer.write(header + "\n");
+		}
+		
+		return writer;
+	}
+	
+	private File getFile(String month) {
+		return new File(Main.getDataDirectory(), username + "_pings_" + month + "." + extension);
+	}
+	
+	private void closeWriter() {
+		if(writer == null) {
+			return;
+		}
+		
+		try {
+			writer.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		writer = null;
+	}
+}
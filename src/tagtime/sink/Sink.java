@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.sink;
+
+/**
+ * Somewhere to send the time logged, such as Beeminder or a local file.
+ * Register one with {@link SinkPipeline#addSink(Sink)}.
+ */
+public interface Sink {
+	/**
+	 * Sends the given changes. This is called on the pipeline's thread,
+	 * one batch at a time, so a sink that takes a while should do its
+	 * work in the background.
+	 */
+	public void write(SinkBatch batch);
+	
+	/**
+	 * Sends anything still buffered and releases any resources. No
+	 * batches will be written after this.
+	 */
+	public void close();
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.sink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import tagtime.beeminder.DataPoint;
+import tagtime.log.Log;
+import tagtime.util.ITagMatcher;
+
+/**
+ * The changes made to the log over a short period: the pings logged,
+ * and the days whose totals changed as a result. A batch can't be
+ * modified once created. Totals are read from the log when asked for,
+ * so they include any pings logged since.
+ */
+public class SinkBatch {
+	/**
+	 * A single ping, as logged.
+	 */
+	public static class Ping {
+		/**
+		 * The ping's Unix timestamp, in seconds.
+		 */
+		public final long timestamp;
+		public final List<String> tags;
+		
+		public Ping(long timestamp, List<String> tags) {
+			this.timestamp = timestamp;
+			this.tags = Collections.unmodifiableList(new ArrayList<String>(tags));
+		}
+	}
+	
+	private final Log log;
+	
+	private final List<Ping> pings;
+	private final SortedSet<Long> changedDays;
+	private final Map<Long, Set<List<String>>> changedTagSets;
+	
+	private final Map<Long, SortedMap<String, Double>> hoursByTag =
+				new HashMap<Long, SortedMap<String, Double>>();
+	
+	/**
+	 * @param pings The pings logged, in the order they were logged.
+	 * @param changedTagSets The tags of each ping whose time changed,
+	 *            grouped by the day that time is credited to.
+	 */
+	public SinkBatch(Log log, List<Ping> pings, Map<Long, Set<List<String>>> changedTagSets) {
+		this.log = log;
+		this.pings = Collections.unmodifiableList(new ArrayList<Ping>(pings));
+		
+		this.changedTagSets = new HashMap<Long, Set<List<String>>>();
+		for(Map.Entry<Long, Set<List<String>>> day : changedTagSets.entrySet()) {
+			this.changedTagSets.put(day.getKey(), Collections.unmodifiableSet(
+						new LinkedHashSet<List<String>>(day.getValue())));
+		}
+		changedDays = Collections.unmodifiableSortedSet(
+					new TreeSet<Long>(changedTagSets.keySet()));
+	}
+	
+	/**
+	 * @return The pings logged, in the order they were logged (which is
+	 *         not always chronological order).
+	 */
+	public List<Ping> getPings() {
+		return pings;
+	}
+	
+	/**
+	 * @return The Unix timestamps (in seconds) of the start of each day
+	 *         whose totals changed, in order.
+	 */
+	public SortedSet<Long> getChangedDays() {
+		return changedDays;
+	}
+	
+	/**
+	 * @return The distinct tag sets whose time changed on the given day.
+	 *         A total that doesn't match any of these is unchanged.
+	 */
+	public Set<List<String>> getChangedTagSets(long day) {
+		Set<List<String>> tagSets = changedTagSets.get(day);
+		return tagSets != null ? tagSets : Collections.<List<String>>emptySet();
+	}
+	
+	/**
+	 * @return Whether any of the time that changed matches the given
+	 *         matcher.
+	 */
+	public boolean matchesTags(ITagMatcher tagMatcher) {
+		for(Set<List<String>> tagSets : changedTagSets.values()) {
+			for(List<String> tags : tagSets) {
+				if(tagMatcher.matchesTags(tags)) {
+					return true;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @return The current total for each changed day, with one data point
+	 *         for each day that has any time logged.
+	 */
+	public List<DataPoint> getDailyTotals(ITagMatcher tagMatcher) {
+		return log.getDailyTotals(tagMatcher, changedDays);
+	}
+	
+	/**
+	 * @return The hours currently logged on the given day with each tag,
+	 *         sorted by tag. This is only calculated once per batch, so
+	 *         several sinks can ask for the same day.
+	 */
+	public synchronized SortedMap<String, Double> getHoursByTag(long day) {
+		SortedMap<String, Double> hours = hoursByTag.get(day);
+		if(hours == null) {
+			hours = Collections.unmodifiableSortedMap(log.getHoursByTag(day));
+			hoursByTag.put(day, hours);
+		}
+		
+		return hours;
+	}
+}
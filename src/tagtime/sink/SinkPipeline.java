@@ -0,0 +1,177 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.sink;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import tagtime.TagTime;
+import tagtime.log.Log;
+import tagtime.log.LogListener;
+import tagtime.settings.SettingType;
+import tagtime.util.DaemonThreadFactory;
+
+/**
+ * Collects the changes made to the log into batches, and passes each
+ * batch to every registered {@link Sink}. A batch is sent once
+ * SettingType.SUBMIT_DELAY seconds have passed without any more pings
+ * being logged, so that several pings logged at once (such as missed
+ * pings) are only sent once.
+ */
+public class SinkPipeline implements LogListener {
+	/**
+	 * How long to wait for the last batch to be written when closing, in
+	 * milliseconds.
+	 */
+	private static final long CLOSE_TIMEOUT = 10000;
+	
+	private final TagTime tagTimeInstance;
+	private final Log log;
+	
+	private final List<Sink> sinks = new CopyOnWriteArrayList<Sink>();
+	
+	/**
+	 * Writes batches in the background, one at a time.
+	 */
+	private final ScheduledThreadPoolExecutor executor;
+	
+	/**
+	 * The changes not yet sent, and the task that will send them. These
+	 * are guarded by this object.
+	 */
+	private List<SinkBatch.Ping> pendingPings = new ArrayList<SinkBatch.Ping>();
+	private Map<Long, Set<List<String>>> pendingTagSets = new HashMap<Long, Set<List<String>>>();
+	private ScheduledFuture<?> pendingFlush = null;
+	
+	public SinkPipeline(TagTime tagTimeInstance) {
+		this.tagTimeInstance = tagTimeInstance;
+		log = tagTimeInstance.log;
+		
+		executor = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("Sink pipeline"));
+		
+		//close() sends whatever is pending itself
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+	
+	public void addSink(Sink sink) {
+		sinks.add(sink);
+	}
+	
+	@Override
+	public synchronized void pingLogged(long timestamp, List<String> tags) {
+		if(executor.isShutdown()) {
+			return;
+		}
+		
+		pendingPings.add(new SinkBatch.Ping(timestamp, tags));
+		
+		//start the delay over
+		if(pendingFlush != null) {
+			pendingFlush.cancel(false);
+		}
+		
+		pendingFlush = executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, Math.max(0, tagTimeInstance.settings.getIntValue(SettingType.SUBMIT_DELAY)),
+					TimeUnit.SECONDS);
+	}
+	
+	@Override
+	public synchronized void timeChanged(long day, List<String> tags) {
+		Set<List<String>> tagSets = pendingTagSets.get(day);
+		if(tagSets == null) {
+			tagSets = new HashSet<List<String>>();
+			pendingTagSets.put(day, tagSets);
+		}
+		tagSets.add(new ArrayList<String>(tags));
+	}
+	
+	/**
+	 * Sends the pending changes to each sink. A sink that throws an
+	 * exception doesn't stop the others from receiving the batch.
+	 */
+	private void flush() {
+		SinkBatch batch;
+		synchronized(this) {
+			if(pendingPings.isEmpty() && pendingTagSets.isEmpty()) {
+				return;
+			}
+			
+			batch = new SinkBatch(log, pendingPings, pendingTagSets);
+			pendingPings = new ArrayList<SinkBatch.Ping>();
+			pendingTagSets = new HashMap<Long, Set<List<String>>>();
+		}
+		
+		for(Sink sink : sinks) {
+			try {
+				sink.write(batch);
+			} catch(RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Sends any pending changes right away, then closes every sink. No
+	 * more changes will be sent after this.
+	 */
+	public void close() {
+		synchronized(this) {
+			if(executor.isShutdown()) {
+				return;
+			}
+			
+			if(pendingFlush != null) {
+				pendingFlush.cancel(false);
+			}
+			executor.shutdown();
+		}
+		
+		//let a batch that is already being written finish first
+		try {
+			if(!executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				System.err.println("Timed out while writing changes.");
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		flush();
+		
+		for(Sink sink : sinks) {
+			try {
+				sink.close();
+			} catch(RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.sink;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * POSTs each batch as JSON to a URL of the user's choice, such as a
+ * local script. The body has the format
+ * <code>{"pings":[{"timestamp":...,"tags":[...]}],"days":[{"day":...,"hours":{"tag":...}}]}</code>.
+ * A batch that can't be delivered is not retried.
+ */
+public class WebhookSink implements Sink {
+	/**
+	 * How long to wait for a connection, and then for a response, in
+	 * milliseconds. These are short, since batches are written one at a
+	 * time.
+	 */
+	private static final int CONNECT_TIMEOUT = 5000;
+	private static final int READ_TIMEOUT = 10000;
+	
+	private final String url;
+	private final DefaultHttpClient client;
+	
+	public WebhookSink(String url) {
+		this.url = url;
+		
+		client = new DefaultHttpClient();
+		HttpParams params = client.getParams();
+		HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT);
+		HttpConnectionParams.setSoTimeout(params, READ_TIMEOUT);
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public void write(SinkBatch batch) {
+		JSONArray pings = new JSONArray();
+		for(SinkBatch.Ping ping : batch.getPings()) {
+			JSONArray tags = new JSONArray();
+			tags.addAll(ping.tags);
+			
+			JSONObject record = new JSONObject();
+			record.put("timestamp", ping.timestamp);
+			record.put("tags", tags);
+			pings.add(record);
+		}
+		
+		JSONArray days = new JSONArray();
+		for(long day : batch.getChangedDays()) {
+			JSONObject hours = new JSONObject();
+			hours.putAll(batch.getHoursByTag(day));
+			
+			JSONObject record = new JSONObject();
+			record.put("day", day);
+			record.put("hours", hours);
+			days.add(record);
+		}
+		
+		JSONObject body = new JSONObject();
+		body.put("pings", pings);
+		body.put("days", days);
+		
+		HttpPost post = new HttpPost(url);
+		try {
+			StringEntity entity = new StringEntity(body.toJSONString(), "UTF-8");
+			entity.setContentType("application/json; charset=UTF-8");
+			post.setEntity(entity);
+		} catch(UnsupportedEncodingException e) {
+			e.printStackTrace();
+			return;
+		}
+		
+		try {
+			HttpResponse response = client.execute(post);
+			EntityUtils.consume(response.getEntity());
+			
+			int statusCode = response.getStatusLine().getStatusCode();
+			if(statusCode / 100 != 2) {
+				System.err.println("Webhook " + url + " returned " + response.getStatusLine());
+			}
+		} catch(IOException e) {
+			System.err.println("Unable to reach webhook " + url + ": " + e.getMessage());
+			post.abort();
+		}
+	}
+	
+	@Override
+	public void close() {
+		client.getConnectionManager().shutdown();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Replaces the contents of files next to the log file, such as indexes
+ * and caches, so that a crash can't leave one half-written: the new
+ * contents are written to a temporary file first, which is then renamed
+ * over the original.
+ */
+public class AtomicFile {
+	private AtomicFile() {
+	}
+	
+	/**
+	 * Replaces the given file's contents with the given text, in the
+	 * platform's default encoding (as used by FileReader).
+	 * @return Whether the file was replaced. If not, the error has been
+	 *         printed, and the old file (if any) is usually left as it
+	 *         was.
+	 */
+	public static boolean write(File file, String contents) {
+		return write(file, contents.getBytes());
+	}
+	
+	/**
+	 * Replaces the given file's contents with the given bytes.
+	 * @return Whether the file was replaced. If not, the error has been
+	 *         printed, and the old file (if any) is usually left as it
+	 *         was.
+	 */
+	public static boolean write(File file, byte[] contents) {
+		File tempFile = new File(file.getPath() + ".tmp");
+		
+		try {
+			FileOutputStream out = new FileOutputStream(tempFile);
+			try {
+				out.write(contents);
+			} finally {
+				out.close();
+			}
+		} catch(IOException e) {
+			System.err.println("Unable to update " + file.getName() + ".");
+			e.printStackTrace();
+			return false;
+		}
+		
+		//File.renameTo() won't replace an existing file on all platforms
+		if(!tempFile.renameTo(file)) {
+			file.delete();
+			if(!tempFile.renameTo(file)) {
+				System.err.println("Unable to update " + file.getName() + ".");
+				return false;
+			}
+		}
+		
+		return true;
+	}
+}
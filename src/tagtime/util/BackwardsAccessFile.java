@@ -1,187 +1,421 @@
-/*
- * Copyright 2011-2012 Joseph Cloutier
- * 
- * This file is part of TagTime.
- * 
- * TagTime is free software: you can redistribute it and/or modify it
- * under the terms of the GNU General Public License as published by the
- * Free Software Foundation, either version 3 of the License, or (at your
- * option) any later version.
- * 
- * TagTime is distributed in the hope that it will be useful, but WITHOUT
- * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
- * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
- * for more details.
- * 
- * You should have received a copy of the GNU General Public License
- * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
- */
-
-package tagtime.util;
-
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.RandomAccessFile;
-
-/**
- * An extension of {@link RandomAccessFile} with methods for finding the
- * last instance of certain types of data.
- */
-public class BackwardsAccessFile extends RandomAccessFile {
-	public BackwardsAccessFile(String name, String mode) throws FileNotFoundException {
-		super(name, mode);
-	}
-	
-	public BackwardsAccessFile(File file, String mode) throws FileNotFoundException {
-		super(file, mode);
-	}
-	
-	/**
-	 * Sets this file's read/write index to the position before the first
-	 * character of the final line.
-	 * @param requiredCharacters See
-	 *            {@link BackwardsAccessFile#seekLineStart(String)} for a
-	 *            description of this parameter.
-	 * @throws IOException if an I/O error occurs.
-	 */
-	public void seekLastLine(String requiredCharacters) throws IOException {
-		seek(length());
-		seekLineStart(requiredCharacters);
-	}
-	
-	/**
-	 * Finds the first line before this one containing at least one of
-	 * the given characters, then sets this file's read index to the
-	 * position before the first character of that line.
-	 * @param requiredCharacters A set of characters to look for before
-	 *            returning - at least one of these must be found on a
-	 *            line for that line to be considered valid (for the
-	 *            current line, one of these must be found
-	 *            <em>before</em> the current read index). If this is
-	 *            null, the function will stop at the first line it
-	 *            finds. If this is empty, the function will stop at the
-	 *            first line with any non-newline characters.
-	 * @throws IOException If an I/O error occurs.
-	 */
-	public void seekLineStart(String requiredCharacters) throws IOException {
-		//using a buffer because directly iterating backwards would
-		//probably be inefficient
-		int bufferSize = 64;
-		byte[] buffer = new byte[bufferSize];
-		
-		char character;
-		
-		//if there are no required characters, none need to be found
-		boolean requiredCharacterFound = requiredCharacters == null;
-		
-		//iterate backwards to find the final occurrence of the string
-		long index;
-		for(index = getFilePointer() - bufferSize; index > -bufferSize; index -= bufferSize) {
-			if(index >= 0) {
-				seek(index);
-				readFully(buffer);
-			} else {
-				//the first few bytes will most likely be enough to
-				//entirely fill the buffer, so handle them separately
-				seek(0);
-				
-				//hack: because this is the final iteration, it is safe
-				//to modify bufferSize
-				//(index is negative, so this actually reduces it)
-				bufferSize += index;
-				readFully(buffer, 0, bufferSize);
-			}
-			
-			for(int offset = bufferSize - 1; offset >= 0; offset--) {
-				character = (char) buffer[offset];
-				
-				//if the character is a new line
-				if(character == '\n' || character == '\r') {
-					if(requiredCharacterFound) {
-						seek(index + offset + 1);
-						return;
-					}
-				}
-
-				else if(!requiredCharacterFound && requiredCharacters != null) {
-					if(requiredCharacters.length() == 0
-								|| requiredCharacters.indexOf(character) != -1) {
-						requiredCharacterFound = true;
-					}
-				}
-			}
-		}
-		
-		//if no appropriate lines were found, go to the start of the file
-		seek(0);
-	}
-	
-	/**
-	 * Sets this file's read/write index to the position before the first
-	 * character of the line containing the given index.
-	 * @throws IOException If pos is less than 0 or an I/O error occurs.
-	 */
-	public void seekLineStart(long pos) throws IOException {
-		seek(pos);
-		seekLineStart(null);
-	}
-	
-	/**
-	 * Returns the final line of the file containing at least one of the
-	 * given characters.
-	 * @param requiredCharacters See
-	 *            {@link BackwardsAccessFile#seekLineStart(String)} for a
-	 *            description of this parameter.
-	 * @return The line that was found.
-	 * @throws IOException if an I/O error occurs.
-	 */
-	public String readLastLine(String requiredCharacters) throws IOException {
-		seekLastLine(requiredCharacters);
-		
-		return readLine();
-	}
-	
-	/**
-	 * Finds the start of the current line, then reads the entire thing.
-	 * @return The line that was found.
-	 * @throws IOException if an I/O error occurs.
-	 */
-	public String readFullLine() throws IOException {
-		seekLineStart(null);
-		
-		return readLine();
-	}
-	
-	/**
-	 * Reads the last non-empty line before the current line.
-	 * @param requiredCharacters See
-	 *            {@link BackwardsAccessFile#seekLineStart(String)} for a
-	 *            description of this parameter.
-	 * @return The entire line before the line that the pointer is on.
-	 * @throws IOException if an I/O error occurs.
-	 */
-	public String readPreviousLine(String requiredCharacters) throws IOException {
-		seekPreviousLine(requiredCharacters);
-		return readLine();
-	}
-	
-	/**
-	 * Moves the pointer to the start of the last non-empty line before
-	 * the current line.
-	 * @param requiredCharacters See
-	 *            {@link BackwardsAccessFile#seekLineStart(String)} for a
-	 *            description of this parameter.
-	 * @throws IOException if an I/O error occurs.
-	 */
-	public void seekPreviousLine(String requiredCharacters) throws IOException {
-		seekLineStart(null);
-		
-		if(getFilePointer() > 0) {
-			if(requiredCharacters == null) {
-				seek(getFilePointer() - 1);
-			}
-			seekLineStart(requiredCharacters);
-		}
-	}
-}
+/*
+ * Copyright 2011-2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An extension of {@link RandomAccessFile} with methods for finding the
+ * last instance of certain types of data.
+ */
+public class BackwardsAccessFile extends RandomAccessFile {
+	/**
+	 * The size of the blocks read by {@link #readLinesBackwards()}. Reads
+	 * start at multiples of this, to line up with the file system's
+	 * pages.
+	 */
+	private static final int BLOCK_SIZE = 8192;
+	
+	/**
+	 * A line returned by {@link BackwardsAccessFile#readLinesBackwards()}.
+	 */
+	public static class Line {
+		/**
+		 * The position of the line's first byte.
+		 */
+		public final long offset;
+		
+		/**
+		 * The line's text, without the line break.
+		 */
+		public final String text;
+		
+		public Line(long offset, String text) {
+			this.offset = offset;
+			this.text = text;
+		}
+	}
+	
+	public BackwardsAccessFile(String name, String mode) throws FileNotFoundException {
+		super(name, mode);
+	}
+	
+	public BackwardsAccessFile(File file, String mode) throws FileNotFoundException {
+		super(file, mode);
+	}
+	
+	/**
+	 * Sets this file's read/write index to the position before the first
+	 * character of the final line.
+	 * @param requiredCharacters See
+	 *            {@link BackwardsAccessFile#seekLineStart(String)} for a
+	 *            description of this parameter.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void seekLastLine(String requiredCharacters) throws IOException {
+		seek(length());
+		seekLineStart(requiredCharacters);
+	}
+	
+	/**
+	 * Finds the first line before this one containing at least one of
+	 * the given characters, then sets this file's read index to the
+	 * position before the first character of that line.
+	 * @param requiredCharacters A set of characters to look for before
+	 *            returning - at least one of these must be found on a
+	 *            line for that line to be considered valid (for the
+	 *            current line, one of these must be found
+	 *            <em>before</em> the current read index). If this is
+	 *            null, the function will stop at the first line it
+	 *            finds. If this is empty, the function will stop at the
+	 *            first line with any non-newline characters.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void seekLineStart(String requiredCharacters) throws IOException {
+		//using a buffer because directly iterating backwards would
+		//probably be inefficient
+		int bufferSize = 64;
+		byte[] buffer = new byte[bufferSize];
+		
+		char character;
+		
+		//if there are no required characters, none need to be found
+		boolean requiredCharacterFound = requiredCharacters == null;
+		
+		//iterate backwards to find the final occurrence of the string
+		long index;
+		for(index = getFilePointer() - bufferSize; index > -bufferSize; index -= bufferSize) {
+			if(index >= 0) {
+				seek(index);
+				readFully(buffer);
+			} else {
+				//the first few bytes will most likely be enough to
+				//entirely fill the buffer, so handle them separately
+				seek(0);
+				
+				//hack: because this is the final iteration, it is safe
+				//to modify bufferSize
+				//(index is negative, so this actually reduces it)
+				bufferSize += index;
+				readFully(buffer, 0, bufferSize);
+			}
+			
+			for(int offset = bufferSize - 1; offset >= 0; offset--) {
+				character = (char) buffer[offset];
+				
+				//if the character is a new line
+				if(character == '\n' || character == '\r') {
+					if(requiredCharacterFound) {
+						seek(index + offset + 1);
+						return;
+					}
+				}
+
+				else if(!requiredCharacterFound && requiredCharacters != null) {
+					if(requiredCharacters.length() == 0
+								|| requiredCharacters.indexOf(character) != -1) {
+						requiredCharacterFound = true;
+					}
+				}
+			}
+		}
+		
+		//if no appropriate lines were found, go to the start of the file
+		seek(0);
+	}
+	
+	/**
+	 * Sets this file's read/write index to the position before the first
+	 * character of the line containing the given index.
+	 * @throws IOException If pos is less than 0 or an I/O error occurs.
+	 */
+	public void seekLineStart(long pos) throws IOException {
+		seek(pos);
+		seekLineStart(null);
+	}
+	
+	/**
+	 * Reads forwards from the given position to find the first line that
+	 * starts with a Unix timestamp at or after the given one, then sets
+	 * this file's read index to the position before the first character
+	 * of that line. Lines that don't start with a number are skipped. If
+	 * no such line is found, the read index is set to the end of the
+	 * file.
+	 * @param from The position of the start of a line, before the line
+	 *            to be found.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void seekTimestamp(long timestamp, long from) throws IOException {
+		seek(from);
+		
+		long lineStart;
+		String line;
+		int end;
+		while(true) {
+			lineStart = getFilePointer();
+			line = readLine();
+			if(line == null) {
+				return;
+			}
+			
+			end = 0;
+			while(end < line.length() && Character.isDigit(line.charAt(end))) {
+				end++;
+			}
+			
+			try {
+				if(end > 0 && Long.parseLong(line.substring(0, end)) >= timestamp) {
+					seek(lineStart);
+					return;
+				}
+			} catch(NumberFormatException e) {}
+		}
+	}
+	
+	/**
+	 * @return The lines in this file, starting with the last one. This
+	 *         doesn't move the read index.
+	 * @see #readLinesBackwards(long)
+	 */
+	public Iterable<Line> readLinesBackwards() throws IOException {
+		return readLinesBackwards(length());
+	}
+	
+	/**
+	 * Reads the lines before the given position, starting with the one
+	 * ending there. Lines are read from the file in large blocks and
+	 * decoded as UTF-8, so reading the last few lines usually takes a
+	 * single read. This doesn't move the read index, but the file
+	 * shouldn't be written to while reading.
+	 * <p>
+	 * If there is an I/O error, it is printed, and no more lines are
+	 * returned.
+	 * </p>
+	 * @param end The position just after the last line to read. A line
+	 *            break just before this position ends that line, rather
+	 *            than starting an empty one.
+	 */
+	public Iterable<Line> readLinesBackwards(final long end) {
+		return new Iterable<Line>() {
+			@Override
+			public Iterator<Line> iterator() {
+				return new ReverseLineIterator(end);
+			}
+		};
+	}
+	
+	/**
+	 * Returns the final line of the file containing at least one of the
+	 * given characters.
+	 * @param requiredCharacters See
+	 *            {@link BackwardsAccessFile#seekLineStart(String)} for a
+	 *            description of this parameter.
+	 * @return The line that was found.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public String readLastLine(String requiredCharacters) throws IOException {
+		seekLastLine(requiredCharacters);
+		
+		return readLine();
+	}
+	
+	/**
+	 * Finds the start of the current line, then reads the entire thing.
+	 * @return The line that was found.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public String readFullLine() throws IOException {
+		seekLineStart(null);
+		
+		return readLine();
+	}
+	
+	/**
+	 * Reads the last non-empty line before the current line.
+	 * @param requiredCharacters See
+	 *            {@link BackwardsAccessFile#seekLineStart(String)} for a
+	 *            description of this parameter.
+	 * @return The entire line before the line that the pointer is on.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public String readPreviousLine(String requiredCharacters) throws IOException {
+		seekPreviousLine(requiredCharacters);
+		return readLine();
+	}
+	
+	/**
+	 * Moves the pointer to the start of the last non-empty line before
+	 * the current line.
+	 * @param requiredCharacters See
+	 *            {@link BackwardsAccessFile#seekLineStart(String)} for a
+	 *            description of this parameter.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void seekPreviousLine(String requiredCharacters) throws IOException {
+		seekLineStart(null);
+		
+		if(getFilePointer() > 0) {
+			if(requiredCharacters == null) {
+				seek(getFilePointer() - 1);
+			}
+			seekLineStart(requiredCharacters);
+		}
+	}
+	
+	private class ReverseLineIterator implements Iterator<Line> {
+		private final FileChannel channel = getChannel();
+		
+		/**
+		 * The block currently being read, and the position of its first
+		 * byte.
+		 */
+		private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+		private long blockStart;
+		
+		/**
+		 * The index in the block of the byte before the next line's
+		 * line break, or -1 if the next line starts in an earlier block.
+		 */
+		private int index;
+		
+		/**
+		 * The bytes of the next line that were in later blocks.
+		 */
+		private byte[] carry = new byte[0];
+		
+		private boolean finished = false;
+		private Line next = null;
+		
+		public ReverseLineIterator(long end) {
+			try {
+				if(end <= 0 || !readBlock(end - 1)) {
+					finished = true;
+				} else if(block.get(index) == '\n') {
+					//a line break at the end ends the last line
+					index--;
+				}
+			} catch(IOException e) {
+				e.printStackTrace();
+				finished = true;
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if(next == null && !finished) {
+				try {
+					next = readLine();
+				} catch(IOException e) {
+					e.printStackTrace();
+					finished = true;
+				}
+			}
+			
+			return next != null;
+		}
+		
+		@Override
+		public Line next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			
+			Line line = next;
+			next = null;
+			return line;
+		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		/**
+		 * Reads the block containing the given position, and points to
+		 * that position within it.
+		 * @return False if nothing could be read.
+		 */
+		private boolean readBlock(long position) throws IOException {
+			blockStart = position - position % BLOCK_SIZE;
+			
+			block.clear();
+			while(block.hasRemaining()) {
+				if(channel.read(block, blockStart + block.position()) < 0) {
+					break;
+				}
+			}
+			block.flip();
+			
+			index = (int) (position - blockStart);
+			return index < block.limit();
+		}
+		
+		private Line readLine() throws IOException {
+			while(true) {
+				//look for the line break before the line
+				int lineBreak = index;
+				while(lineBreak >= 0 && block.get(lineBreak) != '\n') {
+					lineBreak--;
+				}
+				
+				if(lineBreak >= 0 || blockStart == 0) {
+					int length = index - lineBreak;
+					byte[] bytes = new byte[length + carry.length];
+					for(int i = 0; i < length; i++) {
+						bytes[i] = block.get(lineBreak + 1 + i);
+					}
+					System.arraycopy(carry, 0, bytes, length, carry.length);
+					carry = new byte[0];
+					
+					long offset = blockStart + lineBreak + 1;
+					index = lineBreak - 1;
+					finished = offset == 0;
+					
+					int textLength = bytes.length;
+					if(textLength > 0 && bytes[textLength - 1] == '\r') {
+						textLength--;
+					}
+					
+					return new Line(offset, new String(bytes, 0, textLength, "UTF-8"));
+				}
+				
+				//the line starts in an earlier block
+				byte[] newCarry = new byte[index + 1 + carry.length];
+				for(int i = 0; i <= index; i++) {
+					newCarry[i] = block.get(i);
+				}
+				System.arraycopy(carry, 0, newCarry, index + 1, carry.length);
+				carry = newCarry;
+				
+				if(!readBlock(blockStart - 1)) {
+					throw new IOException("Unable to read " + BLOCK_SIZE + " bytes at "
+								+ blockStart + ".");
+				}
+			}
+		}
+	}
+}
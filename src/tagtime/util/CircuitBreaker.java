@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.util;
+
+/**
+ * <p>
+ * Stops sending requests to a server that keeps failing, so that each
+ * request doesn't have to time out on its own. Safe to share between
+ * threads.
+ * </p>
+ * <p>
+ * The circuit starts out closed, allowing all requests. After
+ * <code>failureThreshold</code> failures in a row, it opens, and no
+ * requests are allowed until the open time passes. Then a single
+ * request is allowed through as a probe: if it succeeds, the circuit
+ * closes again, and if it fails, the circuit stays open for twice as
+ * long (up to the maximum). While the circuit is open, only the probe's
+ * result counts; requests that started before it opened are ignored.
+ * </p>
+ */
+public class CircuitBreaker {
+	private final int failureThreshold;
+	private final long minOpenTime;
+	private final long maxOpenTime;
+	
+	private int failures = 0;
+	
+	/**
+	 * How long the circuit stays open next time, in milliseconds.
+	 */
+	private long openTime;
+	
+	/**
+	 * When the circuit opened, in milliseconds, or -1 if it is closed.
+	 */
+	private long openedAt = -1;
+	
+	/**
+	 * When the probe request was allowed through, in milliseconds, or -1
+	 * if there is no probe.
+	 */
+	private long probeStartedAt = -1;
+	
+	/**
+	 * The thread sending the probe request, or null if there is no
+	 * probe.
+	 */
+	private Thread probeThread = null;
+	
+	/**
+	 * @param minOpenTime How long to stop requests for the first time
+	 *            the circuit opens, in milliseconds.
+	 * @param maxOpenTime The longest to stop requests for, in
+	 *            milliseconds.
+	 */
+	public CircuitBreaker(int failureThreshold, long minOpenTime, long maxOpenTime) {
+		if(failureThreshold < 1 || minOpenTime < 0 || maxOpenTime < minOpenTime) {
+			throw new IllegalArgumentException("Invalid circuit breaker settings.");
+		}
+		
+		this.failureThreshold = failureThreshold;
+		this.minOpenTime = minOpenTime;
+		this.maxOpenTime = maxOpenTime;
+		openTime = minOpenTime;
+	}
+	
+	/**
+	 * Checks whether a request may be sent. If this returns true, call
+	 * {@link #recordSuccess()} or {@link #recordFailure()} on the same
+	 * thread once the request finishes.
+	 */
+	public synchronized boolean allowRequest() {
+		if(openedAt < 0) {
+			return true;
+		}
+		
+		long now = System.currentTimeMillis();
+		if(now - openedAt < openTime) {
+			return false;
+		}
+		
+		//only one probe at a time, unless the last one never finished
+		if(probeStartedAt >= 0 && now - probeStartedAt < openTime) {
+			return false;
+		}
+		
+		probeStartedAt = now;
+		probeThread = Thread.currentThread();
+		return true;
+	}
+	
+	/**
+	 * Records that a request succeeded, closing the circuit.
+	 */
+	public synchronized void recordSuccess() {
+		if(openedAt >= 0 && probeThread != Thread.currentThread()) {
+			//a request that started before the circuit opened
+			return;
+		}
+		
+		failures = 0;
+		openTime = minOpenTime;
+		openedAt = -1;
+		probeStartedAt = -1;
+		probeThread = null;
+	}
+	
+	/**
+	 * Records that a request failed.
+	 * @return Whether the circuit just opened (or, after a failed probe,
+	 *         re-opened).
+	 */
+	public synchronized boolean recordFailure() {
+		if(openedAt >= 0) {
+			if(probeThread != Thread.currentThread()) {
+				//a request that started before the circuit opened, or a
+				//probe that took so long it was replaced
+				return false;
+			}
+			
+			openTime = Math.min(openTime * 2, maxOpenTime);
+			openedAt = System.currentTimeMillis();
+			probeStartedAt = -1;
+			probeThread = null;
+			return true;
+		}
+		
+		failures++;
+		if(failures >= failureThreshold) {
+			openedAt = System.currentTimeMillis();
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @return Whether requests are currently being stopped.
+	 */
+	public synchronized boolean isOpen() {
+		return openedAt >= 0;
+	}
+	
+	/**
+	 * @return How long until a probe request will be allowed, in
+	 *         milliseconds, or 0 if the circuit is closed.
+	 */
+	public synchronized long getRemainingOpenTime() {
+		if(openedAt < 0) {
+			return 0;
+		}
+		
+		return Math.max(0, openedAt + openTime - System.currentTimeMillis());
+	}
+}
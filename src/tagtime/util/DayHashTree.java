@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.util;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * A value for each day, along with a hash of each month, of each week
+ * within each month, and of everything. Two trees can be compared by
+ * checking the hashes from the top down, only looking at the months and
+ * weeks whose hashes differ, so finding the few days that differ out of
+ * several years takes a handful of comparisons.
+ * </p>
+ * <p>
+ * "Weeks" here are days 1-7, 8-14, 15-21, 22-28, and 29 onward of each
+ * month, so that each one falls within a single month. Hashes are sums
+ * of a hash of each day and its value, so each change only updates
+ * three of them.
+ * </p>
+ */
+public class DayHashTree {
+	private final Calendar calendar = new GregorianCalendar();
+	
+	/**
+	 * The value for each day, keyed by the Unix timestamp (in seconds)
+	 * of the start of the day.
+	 */
+	private final TreeMap<Long, Long> dayValues = new TreeMap<Long, Long>();
+	
+	/**
+	 * The hashes of each week and month with at least one value. Missing
+	 * entries count as 0.
+	 */
+	private final Map<Long, Long> weekHashes = new HashMap<Long, Long>();
+	private final Map<Long, Long> monthHashes = new HashMap<Long, Long>();
+	
+	private long rootHash = 0;
+	
+	/**
+	 * Sets the value for the given day.
+	 * @param day The Unix timestamp (in seconds) of the start of the day.
+	 */
+	public void put(long day, long value) {
+		Long oldValue = dayValues.put(day, value);
+		if(oldValue != null) {
+			if(oldValue == value) {
+				return;
+			}
+			addHash(day, -hash(day, oldValue));
+		}
+		addHash(day, hash(day, value));
+	}
+	
+	/**
+	 * Removes the given day's value, if it has one.
+	 */
+	public void remove(long day) {
+		Long oldValue = dayValues.remove(day);
+		if(oldValue != null) {
+			addHash(day, -hash(day, oldValue));
+		}
+	}
+	
+	public void clear() {
+		dayValues.clear();
+		weekHashes.clear();
+		monthHashes.clear();
+		rootHash = 0;
+	}
+	
+	/**
+	 * @return A hash of every day's value.
+	 */
+	public long getRootHash() {
+		return rootHash;
+	}
+	
+	/**
+	 * @return The days whose values differ between the two trees,
+	 *         including days that only have a value in one of them.
+	 */
+	public SortedSet<Long> findDifferences(DayHashTree other) {
+		SortedSet<Long> differences = new TreeSet<Long>();
+		if(rootHash == other.rootHash) {
+			return differences;
+		}
+		
+		SortedSet<Long> months = new TreeSet<Long>(monthHashes.keySet());
+		months.addAll(other.monthHashes.keySet());
+		
+		long[] range = new long[2];
+		for(Long month : months) {
+			if(get(monthHashes, month) == get(other.monthHashes, month)) {
+				continue;
+			}
+			
+			for(long week = month * 8; week < month * 8 + 5; week++) {
+				if(get(weekHashes, week) == get(other.weekHashes, week)) {
+					continue;
+				}
+				
+				getWeekRange(week, range);
+				addDifferences(dayValues.subMap(range[0], range[1]),
+							other.dayValues, differences);
+				addDifferences(other.dayValues.subMap(range[0], range[1]),
+							dayValues, differences);
+			}
+		}
+		
+		return differences;
+	}
+	
+	private static void addDifferences(Map<Long, Long> days, Map<Long, Long> otherDays,
+				SortedSet<Long> differences) {
+		for(Map.Entry<Long, Long> day : days.entrySet()) {
+			if(!day.getValue().equals(otherDays.get(day.getKey()))) {
+				differences.add(day.getKey());
+			}
+		}
+	}
+	
+	private void addHash(long day, long amount) {
+		long week = getWeek(day);
+		add(weekHashes, week, amount);
+		add(monthHashes, week / 8, amount);
+		rootHash += amount;
+	}
+	
+	private static void add(Map<Long, Long> hashes, long key, long amount) {
+		long hash = get(hashes, key) + amount;
+		if(hash == 0) {
+			hashes.remove(key);
+		} else {
+			hashes.put(key, hash);
+		}
+	}
+	
+	private static long get(Map<Long, Long> hashes, long key) {
+		Long hash = hashes.get(key);
+		return hash != null ? hash : 0;
+	}
+	
+	/**
+	 * @return The given day's week, numbered so that dividing by 8 gives
+	 *         the month, and months are numbered consecutively.
+	 */
+	private long getWeek(long day) {
+		calendar.setTimeInMillis(day * 1000);
+		long month = calendar.get(Calendar.YEAR) * 12L + calendar.get(Calendar.MONTH);
+		return month * 8 + (calendar.get(Calendar.DAY_OF_MONTH) - 1) / 7;
+	}
+	
+	/**
+	 * Finds the Unix timestamps (in seconds) of the start of the given
+	 * week and of the start of the following one.
+	 */
+	private void getWeekRange(long week, long[] range) {
+		long month = week / 8;
+		int firstDay = (int) (week % 8) * 7 + 1;
+		
+		calendar.clear();
+		calendar.set((int) (month / 12), (int) (month % 12), firstDay);
+		range[0] = calendar.getTimeInMillis() / 1000;
+		
+		if(firstDay + 7 > 29) {
+			calendar.set((int) (month / 12), (int) (month % 12) + 1, 1);
+		} else {
+			calendar.set(Calendar.DAY_OF_MONTH, firstDay + 7);
+		}
+		range[1] = calendar.getTimeInMillis() / 1000;
+	}
+	
+	/**
+	 * Mixes the day and value thoroughly, so that the sums of different
+	 * sets of days are unlikely to match.
+	 */
+	private static long hash(long day, long value) {
+		long hash = day * 0x9E3779B97F4A7C15L + value;
+		hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+		hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+		return hash ^ (hash >>> 31);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+package tagtime.util;
+
+/**
+ * A list of numbers supporting both updates and sums over any range of
+ * the list in O(log n) time. (Also known as a binary indexed tree.) The
+ * list grows automatically when a value past the end is updated.
+ */
+public class FenwickTree {
+	/**
+	 * The values themselves, used when the tree needs to be rebuilt.
+	 */
+	private double[] values;
+	
+	/**
+	 * The tree, which is 1-indexed: entry i holds the sum of the
+	 * (i &amp; -i) values ending at values[i - 1].
+	 */
+	private double[] tree;
+	
+	public FenwickTree(int size) {
+		values = new double[Math.max(size, 1)];
+		tree = new double[values.length + 1];
+	}
+	
+	/**
+	 * @return The number of values in the list, including those that
+	 *         were never set.
+	 */
+	public int size() {
+		return values.length;
+	}
+	
+	/**
+	 * Adds the given amount to the value at the given index.
+	 */
+	public void add(int index, double amount) {
+		if(index < 0) {
+			throw new IndexOutOfBoundsException("Negative index: " + index);
+		}
+		
+		if(index >= values.length) {
+			grow(Math.max(index + 1, values.length * 2));
+		}
+		
+		values[index] += amount;
+		for(int i = index + 1; i < tree.length; i += i & -i) {
+			tree[i] += amount;
+		}
+	}
+	
+	public double get(int index) {
+		return index >= 0 && index < values.length ? values[index] : 0;
+	}
+	
+	/**
+	 * @return The sum of the values before the given index.
+	 */
+	public double sum(int end) {
+		end = Math.min(end, values.length);
+		
+		double sum = 0;
+		for(int i = end; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+	
+	/**
+	 * @return The sum of the values from <code>start</code> (inclusive)
+	 *         to <code>end</code> (exclusive).
+	 */
+	public double sum(int start, int end) {
+		if(end <= start) {
+			return 0;
+		}
+		
+		return sum(end) - sum(Math.max(start, 0));
+	}
+	
+	private void grow(int size) {
+		double[] newValues = new double[size];
+		System.arraycopy(values, 0, newValues, 0, values.length);
+		values = newValues;
+		
+		//rebuild the tree in linear time by pushing each node's total up
+		//to its parent
+		tree = new double[size + 1];
+		int parent;
+		for(int i = 1; i <= size; i++) {
+			tree[i] += values[i - 1];
+			parent = i + (i & -i);
+			if(parent <= size) {
+				tree[parent] += tree[i];
+			}
+		}
+	}
+}
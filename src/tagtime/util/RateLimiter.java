@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.util;
+
+/**
+ * A token bucket: allows short bursts of up to <code>capacity</code>
+ * operations, but no more than <code>ratePerSecond</code> operations per
+ * second over time. Safe to share between threads.
+ */
+public class RateLimiter {
+	private final double capacity;
+	private final double tokensPerMilli;
+	
+	private double tokens;
+	private long lastRefill;
+	
+	/**
+	 * No operations are allowed before this time, in milliseconds.
+	 */
+	private long pausedUntil = 0;
+	
+	public RateLimiter(int capacity, double ratePerSecond) {
+		if(capacity < 1 || ratePerSecond <= 0) {
+			throw new IllegalArgumentException("The rate limiter must allow " +
+						"at least one operation.");
+		}
+		
+		this.capacity = capacity;
+		tokensPerMilli = ratePerSecond / 1000;
+		
+		tokens = capacity;
+		lastRefill = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Waits until an operation is allowed, then counts it.
+	 * @throws InterruptedException If the thread is interrupted while
+	 *             waiting. The operation is not counted.
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		long now;
+		while(true) {
+			now = System.currentTimeMillis();
+			
+			if(now < pausedUntil) {
+				wait(pausedUntil - now);
+				continue;
+			}
+			
+			tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMilli);
+			lastRefill = now;
+			
+			if(tokens >= 1) {
+				tokens--;
+				return;
+			}
+			
+			wait(Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerMilli)));
+		}
+	}
+	
+	/**
+	 * Stops all operations for the given number of milliseconds, for
+	 * example because the server asked for that.
+	 */
+	public synchronized void pause(long millis) {
+		pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + millis);
+	}
+}
@@ -1,73 +1,143 @@
-/*
- * Copyright 2012 Joseph Cloutier
- * 
- * This file is part of TagTime.
- * 
- * TagTime is free software: you can redistribute it and/or modify it
- * under the terms of the GNU General Public License as published by the
- * Free Software Foundation, either version 3 of the License, or (at your
- * option) any later version.
- * 
- * TagTime is distributed in the hope that it will be useful, but WITHOUT
- * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
- * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
- * for more details.
- * 
- * You should have received a copy of the GNU General Public License
- * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
- */
-
-package tagtime.util;
-
-import java.util.Collection;
-
-public class TagMatcher implements ITagMatcher {
-	/**
-	 * The tags that are accepted. At least one of these must be present
-	 * for a given set of tags to be accepted. Exception: if this list is
-	 * empty, no tags are required.
-	 */
-	protected final Collection<String> tagsToAccept;
-	
-	/**
-	 * Tags that are explicitly disallowed. If any of these are present,
-	 * a given set of tags will be rejected entirely. This may be null.
-	 */
-	protected final Collection<String> tagsToReject;
-	
-	public TagMatcher(Collection<String> tagsToAccept, Collection<String> tagsToReject) {
-		this.tagsToAccept = tagsToAccept;
-		this.tagsToReject = tagsToReject;
-	}
-	
-	@Override
-	public boolean matchesTags(Iterable<String> tags) {
-		//the tags are accepted by default if no matches are required
-		//(the tag group just has to be checked for rejected tags)
-		boolean matches = tagsToAccept.size() == 0;
-		
-		//iterate through all the tags, checking for matches
-		for(String tag : tags) {
-			tag = tag.toLowerCase();
-			
-			//once a tag as been accepted, there is no further need to
-			//check acceptance
-			if(!matches && tagsToAccept.contains(tag)) {
-				matches = true;
-				
-				//if tagsToReject is empty, stop searching once any tag
-				//is accepted
-				if(tagsToReject == null || tagsToReject.size() == 0) {
-					return true;
-				}
-			}
-
-			//if any tag is rejected, the entire group is rejected
-			else if(tagsToReject != null && tagsToReject.contains(tag)) {
-				return false;
-			}
-		}
-		
-		return matches;
-	}
-}
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+public class TagMatcher implements ITagMatcher {
+	/**
+	 * The tags that are accepted. At least one of these must be present
+	 * for a given set of tags to be accepted. Exception: if this list is
+	 * empty, no tags are required.
+	 */
+	protected final Collection<String> tagsToAccept;
+	
+	/**
+	 * Tags that are explicitly disallowed. If any of these are present,
+	 * a given set of tags will be rejected entirely. This may be null.
+	 */
+	protected final Collection<String> tagsToReject;
+	
+	/**
+	 * Tags that must all be present for a given set of tags to be
+	 * accepted, in addition to one of the accepted tags (if there are
+	 * any). This may be null.
+	 */
+	protected final Collection<String> tagsToRequire;
+	
+	public TagMatcher(Collection<String> tagsToAccept, Collection<String> tagsToReject) {
+		this(tagsToAccept, tagsToReject, null);
+	}
+	
+	public TagMatcher(Collection<String> tagsToAccept, Collection<String> tagsToReject,
+				Collection<String> tagsToRequire) {
+		this.tagsToAccept = tagsToAccept;
+		this.tagsToReject = tagsToReject;
+		this.tagsToRequire = tagsToRequire;
+	}
+	
+	/**
+	 * @return Whether the given tag is one of the tags to accept.
+	 */
+	public boolean isAccepted(String tag) {
+		return tagsToAccept.contains(tag.toLowerCase());
+	}
+	
+	/**
+	 * @return Whether the given tag is one of the tags to reject.
+	 */
+	public boolean isRejected(String tag) {
+		return tagsToReject != null && tagsToReject.contains(tag.toLowerCase());
+	}
+	
+	/**
+	 * @return Whether at least one tag must be accepted for a group of
+	 *         tags to match.
+	 */
+	public boolean requiresAcceptedTag() {
+		return tagsToAccept.size() > 0;
+	}
+	
+	/**
+	 * @return Whether any tags are explicitly disallowed.
+	 */
+	public boolean hasRejectedTags() {
+		return tagsToReject != null && tagsToReject.size() > 0;
+	}
+	
+	/**
+	 * @return Whether any tags must all be present.
+	 */
+	public boolean hasRequiredTags() {
+		return tagsToRequire != null && tagsToRequire.size() > 0;
+	}
+	
+	/**
+	 * @return The tags that must all be present, or an empty collection
+	 *         if there are none.
+	 */
+	public Collection<String> getRequiredTags() {
+		return tagsToRequire != null ? tagsToRequire : Collections.<String> emptyList();
+	}
+	
+	@Override
+	public boolean matchesTags(Iterable<String> tags) {
+		if(hasRequiredTags()) {
+			List<String> lowercaseTags = new ArrayList<String>();
+			for(String tag : tags) {
+				lowercaseTags.add(tag.toLowerCase());
+			}
+			if(!lowercaseTags.containsAll(tagsToRequire)) {
+				return false;
+			}
+		}
+		
+		//the tags are accepted by default if no matches are required
+		//(the tag group just has to be checked for rejected tags)
+		boolean matches = tagsToAccept.size() == 0;
+		
+		//iterate through all the tags, checking for matches
+		for(String tag : tags) {
+			tag = tag.toLowerCase();
+			
+			//once a tag as been accepted, there is no further need to
+			//check acceptance
+			if(!matches && tagsToAccept.contains(tag)) {
+				matches = true;
+				
+				//if tagsToReject is empty, stop searching once any tag
+				//is accepted
+				if(tagsToReject == null || tagsToReject.size() == 0) {
+					return true;
+				}
+			}
+
+			//if any tag is rejected, the entire group is rejected
+			else if(tagsToReject != null && tagsToReject.contains(tag)) {
+				return false;
+			}
+		}
+		
+		return matches;
+	}
+}
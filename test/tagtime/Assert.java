@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime;
+
+/**
+ * Checks used by the tests. A failed check throws an AssertionError,
+ * which {@link TestRunner} reports.
+ */
+public class Assert {
+	public static void assertTrue(String message, boolean condition) {
+		if(!condition) {
+			throw new AssertionError(message);
+		}
+	}
+	
+	public static void assertEquals(Object expected, Object actual) {
+		if(expected == null ? actual != null : !expected.equals(actual)) {
+			throw new AssertionError("Expected " + expected + " but got " + actual + ".");
+		}
+	}
+	
+	public static void assertEquals(long expected, long actual) {
+		if(expected != actual) {
+			throw new AssertionError("Expected " + expected + " but got " + actual + ".");
+		}
+	}
+	
+	public static void assertEquals(double expected, double actual, double delta) {
+		if(Math.abs(expected - actual) > delta) {
+			throw new AssertionError("Expected " + expected + " but got " + actual + ".");
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import tagtime.beeminder.BeeminderGraphTest;
+import tagtime.beeminder.ChangeSetPlannerTest;
+import tagtime.log.LogTest;
+import tagtime.log.PostingListTest;
+import tagtime.util.BackwardsAccessFileTest;
+
+/**
+ * Runs every public static method whose name starts with "test" in each
+ * test class, and exits with status 1 if any of them fail. From the
+ * project directory, compile the source and tests into one directory,
+ * then run this class:
+ * <p>
+ * <code>javac -cp "lib/*" -d bin $(find src test -name "*.java")</code>
+ * <br>
+ * <code>java -cp "bin:lib/*" tagtime.TestRunner</code>
+ * </p>
+ */
+public class TestRunner {
+	private static final Class<?>[] TEST_CLASSES = {
+				BackwardsAccessFileTest.class,
+				PostingListTest.class,
+				LogTest.class,
+				ChangeSetPlannerTest.class,
+				BeeminderGraphTest.class
+	};
+	
+	public static void main(String[] args) {
+		int passed = 0;
+		int failed = 0;
+		
+		for(Class<?> testClass : TEST_CLASSES) {
+			//run the tests in a predictable order
+			Method[] methods = testClass.getDeclaredMethods();
+			Arrays.sort(methods, new Comparator<Method>() {
+				@Override
+				public int compare(Method a, Method b) {
+					return a.getName().compareTo(b.getName());
+				}
+			});
+			
+			for(Method method : methods) {
+				if(!method.getName().startsWith("test")
+							|| !Modifier.isStatic(method.getModifiers())
+							|| !Modifier.isPublic(method.getModifiers())
+							|| method.getParameterTypes().length > 0) {
+					continue;
+				}
+				
+				String name = testClass.getSimpleName() + "." + method.getName();
+				try {
+					method.invoke(null);
+					System.out.println("PASS " + name);
+					passed++;
+				} catch(InvocationTargetException e) {
+					System.out.println("FAIL " + name);
+					e.getCause().printStackTrace(System.out);
+					failed++;
+				} catch(IllegalAccessException e) {
+					System.out.println("FAIL " + name);
+					e.printStackTrace(System.out);
+					failed++;
+				}
+			}
+		}
+		
+		System.out.println(passed + " passed, " + failed + " failed.");
+		System.exit(failed > 0 ? 1 : 0);
+	}
+}
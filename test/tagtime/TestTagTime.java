@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+import tagtime.log.Log;
+import tagtime.settings.Settings;
+
+/**
+ * Creates TagTime instances for tests. The real constructor needs a
+ * system tray and starts a scheduler, so this skips it and fills in only
+ * the user's settings and log, which is enough for the log and the
+ * Beeminder classes.
+ */
+public class TestTagTime {
+	/**
+	 * Creates an empty temporary directory, and uses it as the data
+	 * directory from now on.
+	 */
+	public static File createDataDirectory() throws Exception {
+		File directory = File.createTempFile("tagtime", "");
+		if(!directory.delete() || !directory.mkdir()) {
+			throw new IOException("Unable to create " + directory + ".");
+		}
+		
+		setField(Main.class, null, "dataDirectory", directory);
+		return directory;
+	}
+	
+	/**
+	 * @return An instance for the given user, with settings but no log.
+	 *         Change the settings and write the log file as needed, then
+	 *         call {@link #openLog(TagTime)}.
+	 */
+	public static TagTime create(String username) throws Exception {
+		Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+		Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+		unsafeField.setAccessible(true);
+		TagTime tagTime = (TagTime) unsafeClass.getMethod("allocateInstance", Class.class)
+					.invoke(unsafeField.get(null), TagTime.class);
+		
+		setField(TagTime.class, tagTime, "username", username);
+		setField(TagTime.class, tagTime, "settings", Settings.getInstance(username));
+		return tagTime;
+	}
+	
+	/**
+	 * Loads the user's log file.
+	 */
+	public static void openLog(TagTime tagTime) throws Exception {
+		setField(TagTime.class, tagTime, "log", new Log(tagTime));
+	}
+	
+	private static void setField(Class<?> owner, Object instance, String name, Object value)
+				throws Exception {
+		Field field = owner.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(instance, value);
+	}
+}
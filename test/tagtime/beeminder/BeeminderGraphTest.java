@@ -0,0 +1,206 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.beeminder;
+
+import static tagtime.Assert.assertEquals;
+import static tagtime.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.List;
+
+import org.apache.http.impl.client.DefaultHttpClient;
+
+import tagtime.Main;
+import tagtime.TagTime;
+import tagtime.TestTagTime;
+import tagtime.settings.SettingType;
+
+/**
+ * Submits pings from a log file to a {@link FakeBeeminderServer}.
+ */
+public class BeeminderGraphTest {
+	private static final String GOAL = "work";
+	
+	/**
+	 * Noon on a day in 2012; see {@link #day(int)}.
+	 */
+	private static final long NOON = 1350000000L - 1350000000L % 86400 + 12 * 3600;
+	
+	public static void testSubmitPings() throws Exception {
+		FakeBeeminderServer server = new FakeBeeminderServer(0);
+		server.start();
+		DefaultHttpClient client = new DefaultHttpClient();
+		try {
+			TagTime tagTime = createTagTime("submitpings", server);
+			BeeminderGraph graph = new BeeminderGraph(tagTime, tagTime.username,
+						GOAL + "|work");
+			
+			//day 0 is wrong, day 1 is right, day 2 is missing, and day 3
+			//has no time logged
+			String wrongID = server.addDataPoint(tagTime.username, GOAL, day(0), 5, "");
+			String rightID = server.addDataPoint(tagTime.username, GOAL, day(1),
+						graph.getHours(day(1), day(1)), "");
+			String extraID = server.addDataPoint(tagTime.username, GOAL, day(3), 1, "");
+			
+			//the goal request is throttled once, and should be retried
+			server.throttleNext(1);
+			
+			assertTrue("Submission failed.", graph.submitPings(client, false));
+			
+			//one throttled GET, one GET, one DELETE, one PUT, and one POST
+			//to create the missing data point
+			assertEquals(5, server.getRequestCount());
+			
+			List<DataPoint> dataPoints = server.getDataPoints(tagTime.username, GOAL);
+			assertEquals(3, dataPoints.size());
+			check(graph, dataPoints.get(0), day(0));
+			assertEquals(wrongID, dataPoints.get(0).id);
+			check(graph, dataPoints.get(1), day(1));
+			assertEquals(rightID, dataPoints.get(1).id);
+			check(graph, dataPoints.get(2), day(2));
+			for(DataPoint dataPoint : dataPoints) {
+				assertTrue("Not deleted", !extraID.equals(dataPoint.id));
+			}
+			
+			//nothing changed, and the goal was fetched recently
+			assertTrue("Submission failed.", graph.submitPings(client, false));
+			assertEquals(5, server.getRequestCount());
+			assertTrue("Changes left over", !graph.hasPendingChanges());
+		} finally {
+			client.getConnectionManager().shutdown();
+			server.stop();
+		}
+	}
+	
+	public static void testSubmitChangedDay() throws Exception {
+		FakeBeeminderServer server = new FakeBeeminderServer(0);
+		server.start();
+		DefaultHttpClient client = new DefaultHttpClient();
+		try {
+			TagTime tagTime = createTagTime("changedday", server);
+			BeeminderGraph graph = new BeeminderGraph(tagTime, tagTime.username,
+						GOAL + "|work");
+			
+			assertTrue("Submission failed.", graph.submitPings(client, false));
+			assertEquals(3, server.getDataPointCount(tagTime.username, GOAL));
+			int requests = server.getRequestCount();
+			
+			//a ping inserted between two others changes the time on its
+			//day, and only that day's data point should be updated
+			tagTime.log.log((day(2) + 11 * 3600 + 1800) * 1000, "work");
+			graph.markChanged(day(2));
+			
+			assertTrue("Submission failed.", graph.submitPings(client, false));
+			assertEquals(requests + 1, server.getRequestCount());
+			
+			List<DataPoint> dataPoints = server.getDataPoints(tagTime.username, GOAL);
+			assertEquals(3, dataPoints.size());
+			check(graph, dataPoints.get(2), day(2));
+		} finally {
+			client.getConnectionManager().shutdown();
+			server.stop();
+		}
+	}
+	
+	public static void testEmptyGoal() throws Exception {
+		FakeBeeminderServer server = new FakeBeeminderServer(0);
+		server.start();
+		DefaultHttpClient client = new DefaultHttpClient();
+		try {
+			TagTime tagTime = createTagTime("emptygoal", server);
+			BeeminderGraph graph = new BeeminderGraph(tagTime, tagTime.username,
+						GOAL + "|work");
+			
+			long start = System.currentTimeMillis() / 1000;
+			assertTrue("Submission failed.", graph.submitPings(client, false));
+			
+			//with no data points to take an update time from, later
+			//downloads should ask for changes since this one
+			BufferedReader in = new BufferedReader(new FileReader(new File(
+						Main.getDataDirectory(), tagTime.username + "_" + GOAL + ".mirror")));
+			try {
+				String line = in.readLine();
+				assertTrue("Wrong update time: " + line, line.startsWith("U ")
+							&& Long.parseLong(line.substring(2)) >= start);
+			} finally {
+				in.close();
+			}
+		} finally {
+			client.getConnectionManager().shutdown();
+			server.stop();
+		}
+	}
+	
+	/**
+	 * Creates a user whose log has two hours of work at the start of each
+	 * of days 0 to 2, with the rest of each day marked "afk".
+	 */
+	private static TagTime createTagTime(String username, FakeBeeminderServer server)
+				throws Exception {
+		File dataDirectory = TestTagTime.createDataDirectory();
+		
+		TagTime tagTime = TestTagTime.create(username);
+		tagTime.settings.setValue(SettingType.API_URL, server.getBaseURL());
+		tagTime.settings.setValue(SettingType.AUTH_TOKEN, "token");
+		
+		FileWriter log = new FileWriter(new File(dataDirectory, username + ".log"));
+		try {
+			for(int i = 0; i < 3; i++) {
+				writePing(log, day(i) + 9 * 3600, "work");
+				writePing(log, day(i) + 10 * 3600, "work");
+				writePing(log, day(i) + 11 * 3600, "afk");
+			}
+			writePing(log, day(3) + 9 * 3600, "afk");
+		} finally {
+			log.close();
+		}
+		
+		TestTagTime.openLog(tagTime);
+		return tagTime;
+	}
+	
+	private static void writePing(FileWriter log, long timestamp, String tags)
+				throws IOException {
+		log.write(timestamp + " " + tags + " ["
+					+ DateFormat.getDateTimeInstance().format(timestamp * 1000) + "]\n");
+	}
+	
+	/**
+	 * @return The start of the day the given number of days after
+	 *         {@link #NOON}.
+	 */
+	private static long day(int days) {
+		return DataPoint.getStartOfDay(NOON + days * 86400L);
+	}
+	
+	/**
+	 * Checks that the given data point is on the given day, with the
+	 * time logged on that day.
+	 */
+	private static void check(BeeminderGraph graph, DataPoint dataPoint, long day) {
+		assertEquals(day, dataPoint.timestamp);
+		assertEquals(graph.getHours(day, day), dataPoint.hours, 0.005);
+	}
+}
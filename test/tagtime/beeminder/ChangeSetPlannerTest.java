@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.beeminder;
+
+import static tagtime.Assert.assertEquals;
+import static tagtime.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class ChangeSetPlannerTest {
+	/**
+	 * Noon on a day in 2012; see {@link #day(int)}.
+	 */
+	private static final long NOON = 1350000000L - 1350000000L % 86400 + 12 * 3600;
+	
+	private static final List<DataPoint> NONE = Collections.emptyList();
+	
+	public static void testCreatesUpdatesAndDeletes() {
+		List<DataPoint> remote = Arrays.asList(
+					new DataPoint("a", day(0), 1.0, ""),
+					new DataPoint("b", day(1), 2.0, ""),
+					new DataPoint("c", day(3), 1.0, ""));
+		List<DataPoint> local = Arrays.asList(
+					new DataPoint(day(0), 1.0),
+					new DataPoint(day(1), 2.5),
+					new DataPoint(day(2), 3.0));
+		
+		ChangeSet changes = ChangeSetPlanner.plan(remote, local, 0, 100);
+		
+		assertEquals(1, changes.getCreates().size());
+		check(changes.getCreates().get(0), null, day(2), 3.0);
+		
+		assertEquals(1, changes.getUpdates().size());
+		check(changes.getUpdates().get(0), "b", day(1), 2.5);
+		
+		assertEquals(1, changes.getDeletes().size());
+		assertEquals("c", changes.getDeletes().get(0).id);
+	}
+	
+	public static void testRounding() {
+		List<DataPoint> remote = Arrays.asList(new DataPoint("a", day(0), 1.001, ""));
+		
+		assertTrue("Equal after rounding", ChangeSetPlanner.plan(remote,
+					Arrays.asList(new DataPoint(day(0), 1.004)), 0, 100).isEmpty());
+		
+		ChangeSet changes = ChangeSetPlanner.plan(remote,
+					Arrays.asList(new DataPoint(day(0), 1.004)), 0, 1000);
+		assertEquals(1, changes.getUpdates().size());
+	}
+	
+	public static void testMergesDataPointsOnOneDay() {
+		List<DataPoint> remote = Arrays.asList(
+					new DataPoint("a", day(1), 1.0, "first"),
+					new DataPoint("b", day(1), 2.0, "second"));
+		
+		//the total already matches, but there should only be one data
+		//point
+		ChangeSet changes = ChangeSetPlanner.plan(remote,
+					Arrays.asList(new DataPoint(day(1), 3.0)), 0, 100);
+		
+		assertEquals(0, changes.getCreates().size());
+		assertEquals(1, changes.getDeletes().size());
+		assertEquals("a", changes.getDeletes().get(0).id);
+		assertEquals(1, changes.getUpdates().size());
+		check(changes.getUpdates().get(0), "b", day(1), 3.0);
+		assertEquals("first; second", changes.getUpdates().get(0).comment);
+	}
+	
+	public static void testNothingCreatedBeforeResetDate() {
+		List<DataPoint> local = Arrays.asList(
+					new DataPoint(day(0), 1.0),
+					new DataPoint(day(1), 1.0),
+					new DataPoint(day(2), 1.0));
+		
+		//the reset date may be any time during the day
+		ChangeSet changes = ChangeSetPlanner.plan(NONE, local, day(1) + 3600, 100);
+		assertEquals(2, changes.getCreates().size());
+		assertEquals(day(1), changes.getCreates().get(0).timestamp);
+		
+		//nor before the first data point on Beeminder
+		changes = ChangeSetPlanner.plan(Arrays.asList(new DataPoint("a", day(2), 1.0, "")),
+					local, 0, 100);
+		assertTrue("Unexpected changes: " + changes, changes.isEmpty());
+	}
+	
+	public static void testResetDataPoints() {
+		List<DataPoint> remote = Arrays.asList(
+					new DataPoint("a", day(0), 1.0, ""),
+					new DataPoint("r", day(2), 0.5, "Reset today"));
+		List<DataPoint> local = Arrays.asList(
+					new DataPoint(day(0), 1.0),
+					new DataPoint(day(1), 1.0),
+					new DataPoint(day(3), 1.0));
+		
+		ChangeSet changes = ChangeSetPlanner.plan(remote, local, 0, 100);
+		
+		//the reset data point loses its time but isn't deleted, and
+		//nothing is created before it
+		assertEquals(1, changes.getUpdates().size());
+		check(changes.getUpdates().get(0), "r", day(2), 0);
+		assertEquals(0, changes.getDeletes().size());
+		assertEquals(1, changes.getCreates().size());
+		assertEquals(day(3), changes.getCreates().get(0).timestamp);
+		
+		assertEquals(day(2), ChangeSetPlanner.getResetDay(remote, 0));
+	}
+	
+	public static void testOnlyGivenDays() {
+		List<DataPoint> remote = Arrays.asList(
+					new DataPoint("a", day(0), 1.0, ""),
+					new DataPoint("b", day(1), 1.0, ""),
+					new DataPoint("c", day(2), 1.0, ""));
+		List<DataPoint> local = Arrays.asList(
+					new DataPoint(day(0), 2.0),
+					new DataPoint(day(2), 2.0),
+					new DataPoint(day(3), 2.0));
+		
+		Set<Long> days = new TreeSet<Long>(Arrays.asList(day(1), day(2)));
+		ChangeSet changes = ChangeSetPlanner.plan(remote, local, 0, 100, days);
+		
+		assertEquals(0, changes.getCreates().size());
+		assertEquals(1, changes.getUpdates().size());
+		assertEquals("c", changes.getUpdates().get(0).id);
+		assertEquals(1, changes.getDeletes().size());
+		assertEquals("b", changes.getDeletes().get(0).id);
+	}
+	
+	public static void testInputNotModified() {
+		List<DataPoint> remote = new ArrayList<DataPoint>(Arrays.asList(
+					new DataPoint("a", day(0), 1.0, "x"),
+					new DataPoint("b", day(0), 2.0, "y")));
+		ChangeSetPlanner.plan(remote, Arrays.asList(new DataPoint(day(0), 5.0)), 0, 100);
+		
+		check(remote.get(0), "a", day(0), 1.0);
+		check(remote.get(1), "b", day(0), 2.0);
+		assertEquals("y", remote.get(1).comment);
+	}
+	
+	/**
+	 * @return The start of the day the given number of days after
+	 *         {@link #NOON}.
+	 */
+	private static long day(int days) {
+		return DataPoint.getStartOfDay(NOON + days * 86400L);
+	}
+	
+	private static void check(DataPoint dataPoint, String id, long timestamp, double hours) {
+		assertEquals(id, dataPoint.id);
+		assertEquals(timestamp, dataPoint.timestamp);
+		assertEquals(hours, dataPoint.hours, 1e-9);
+	}
+}
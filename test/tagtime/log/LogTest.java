@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import static tagtime.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import tagtime.TagTime;
+import tagtime.TestTagTime;
+import tagtime.settings.SettingType;
+
+public class LogTest {
+	private static final long START = 1350000000L;
+	
+	public static void testEqualTimestamps() throws Exception {
+		checkEqualTimestamps("equaltimestamps", false);
+	}
+	
+	public static void testEqualTimestampsOffHeap() throws Exception {
+		checkEqualTimestamps("equaloffheap", true);
+	}
+	
+	/**
+	 * Inserts a ping with the same timestamp as an earlier one, and
+	 * checks that the log file and the pings in memory agree on the
+	 * order, both right away and after reloading.
+	 */
+	private static void checkEqualTimestamps(String username, boolean offHeap)
+				throws Exception {
+		File dataDirectory = TestTagTime.createDataDirectory();
+		TagTime tagTime = TestTagTime.create(username);
+		tagTime.settings.setValue(SettingType.OFF_HEAP_PING_STORE, offHeap);
+		
+		File logFile = new File(dataDirectory, username + ".log");
+		FileWriter out = new FileWriter(logFile);
+		try {
+			out.write(line(START, "one"));
+			out.write(line(START + 100, "two"));
+			out.write(line(START + 200, "three"));
+		} finally {
+			out.close();
+		}
+		
+		TestTagTime.openLog(tagTime);
+		tagTime.log.log((START + 100) * 1000, "four");
+		tagTime.log.log(START * 1000, "five");
+		
+		String expected = "one five two four three";
+		assertEquals(expected, readTags(logFile));
+		assertEquals(expected, getTags(tagTime.log.getPings()));
+		
+		TestTagTime.openLog(tagTime);
+		assertEquals(expected, getTags(tagTime.log.getPings()));
+	}
+	
+	private static String line(long timestamp, String tags) {
+		return timestamp + " " + tags + " ["
+					+ DateFormat.getDateTimeInstance().format(timestamp * 1000) + "]\n";
+	}
+	
+	/**
+	 * @return The first tag on each line of the log file, separated by
+	 *         spaces.
+	 */
+	private static String readTags(File logFile) throws Exception {
+		StringBuilder tags = new StringBuilder();
+		BufferedReader in = new BufferedReader(new FileReader(logFile));
+		try {
+			for(String line = in.readLine(); line != null; line = in.readLine()) {
+				if(tags.length() > 0) {
+					tags.append(' ');
+				}
+				tags.append(line.split("\\s+")[1]);
+			}
+		} finally {
+			in.close();
+		}
+		return tags.toString();
+	}
+	
+	/**
+	 * @return The first tag of each ping, separated by spaces.
+	 */
+	private static String getTags(IPingSnapshot pings) {
+		StringBuilder tags = new StringBuilder();
+		List<String> list = new ArrayList<String>();
+		for(int i = 0; i < pings.size(); i++) {
+			if(tags.length() > 0) {
+				tags.append(' ');
+			}
+			list.clear();
+			tags.append(pings.getTags(i, list).get(0));
+		}
+		return tags.toString();
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.log;
+
+import static tagtime.Assert.assertEquals;
+import static tagtime.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public class PostingListTest {
+	public static void testAddAndRead() {
+		//gaps that take one to five bytes
+		int[] pings = {0, 1, 129, 130, 16515, 2113668, 270549124, Integer.MAX_VALUE};
+		
+		PostingList list = new PostingList();
+		for(int ping : pings) {
+			list.add(ping);
+		}
+		
+		assertEquals(pings.length, list.size());
+		assertEquals(Integer.MAX_VALUE, list.getLast());
+		assertTrue("Wrong numbers: " + Arrays.toString(list.toArray()),
+					Arrays.equals(pings, list.toArray()));
+		
+		PostingList.Cursor cursor = list.cursor();
+		for(int ping : pings) {
+			assertEquals(ping, cursor.next());
+		}
+		assertEquals(-1, cursor.next());
+	}
+	
+	public static void testEmpty() {
+		PostingList list = new PostingList();
+		assertEquals(0, list.size());
+		assertEquals(-1, list.getLast());
+		assertEquals(-1, list.cursor().next());
+	}
+	
+	public static void testAddOutOfOrder() {
+		PostingList list = new PostingList();
+		list.add(5);
+		try {
+			list.add(5);
+			throw new AssertionError("Adding a repeated number should fail.");
+		} catch(IllegalArgumentException e) {}
+		assertEquals(1, list.size());
+	}
+	
+	public static void testRange() {
+		PostingList list = PostingList.range(300);
+		assertEquals(300, list.size());
+		assertEquals(299, list.getLast());
+		
+		//each gap of 1 is stored as a single 0 byte
+		assertEquals(300, list.getEncodedLength());
+		
+		assertEquals(0, PostingList.range(0).size());
+	}
+	
+	public static void testCopy() {
+		PostingList list = toList(new int[] {1, 2, 3});
+		PostingList copy = list.copy();
+		list.add(4);
+		
+		assertEquals(3, copy.size());
+		assertEquals(3, copy.getLast());
+		copy.add(10);
+		assertTrue("The original changed.", Arrays.equals(new int[] {1, 2, 3, 4},
+					list.toArray()));
+	}
+	
+	public static void testSetOperations() {
+		Random random = new Random(1);
+		for(int trial = 0; trial < 200; trial++) {
+			SortedSet<Integer> a = randomSet(random);
+			SortedSet<Integer> b = randomSet(random);
+			PostingList listA = toList(a);
+			PostingList listB = toList(b);
+			
+			SortedSet<Integer> expected = new TreeSet<Integer>(a);
+			expected.retainAll(b);
+			check(expected, PostingList.intersection(listA, listB));
+			
+			expected = new TreeSet<Integer>(a);
+			expected.addAll(b);
+			check(expected, PostingList.union(listA, listB));
+			
+			expected = new TreeSet<Integer>(a);
+			expected.removeAll(b);
+			check(expected, PostingList.difference(listA, listB));
+		}
+	}
+	
+	public static void testWriteAndRead() throws IOException {
+		PostingList list = toList(new int[] {3, 200, 70000, 70001});
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		list.write(out);
+		new PostingList().write(out);
+		out.close();
+		
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		PostingList read = PostingList.read(in);
+		assertTrue("Wrong numbers: " + Arrays.toString(read.toArray()),
+					Arrays.equals(list.toArray(), read.toArray()));
+		assertEquals(70001, read.getLast());
+		
+		//numbers can still be added after reading
+		read.add(70005);
+		assertEquals(5, read.size());
+		
+		assertEquals(0, PostingList.read(in).size());
+	}
+	
+	/**
+	 * @return A set of numbers that are sometimes close together and
+	 *         sometimes far apart, and sometimes empty.
+	 */
+	private static SortedSet<Integer> randomSet(Random random) {
+		SortedSet<Integer> set = new TreeSet<Integer>();
+		int count = random.nextInt(4) == 0 ? 0 : random.nextInt(100);
+		int range = random.nextBoolean() ? 200 : 1000000;
+		for(int i = 0; i < count; i++) {
+			set.add(random.nextInt(range));
+		}
+		return set;
+	}
+	
+	private static PostingList toList(int[] pings) {
+		PostingList list = new PostingList();
+		for(int ping : pings) {
+			list.add(ping);
+		}
+		return list;
+	}
+	
+	private static PostingList toList(SortedSet<Integer> pings) {
+		PostingList list = new PostingList();
+		for(int ping : pings) {
+			list.add(ping);
+		}
+		return list;
+	}
+	
+	private static void check(SortedSet<Integer> expected, PostingList actual) {
+		int[] expectedArray = new int[expected.size()];
+		int i = 0;
+		for(int ping : expected) {
+			expectedArray[i++] = ping;
+		}
+		
+		assertTrue("Expected " + Arrays.toString(expectedArray) + " but got "
+					+ Arrays.toString(actual.toArray()) + ".",
+					Arrays.equals(expectedArray, actual.toArray()));
+		assertEquals(expected.isEmpty() ? -1 : expected.last(), actual.getLast());
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012 Joseph Cloutier
+ * 
+ * This file is part of TagTime.
+ * 
+ * TagTime is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * 
+ * TagTime is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with TagTime. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tagtime.util;
+
+import static tagtime.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BackwardsAccessFileTest {
+	private static final int BLOCK_SIZE = 8192;
+	
+	/**
+	 * Characters that take 2, 3 and 4 bytes in UTF-8.
+	 */
+	private static final String MULTI_BYTE = "\u00e9\u20ac\ud834\udd1e";
+	
+	public static void testMultiByteCharactersAcrossBlockBoundary() throws IOException {
+		String first = "1262305430 first";
+		
+		//move the multi-byte characters (18 bytes in all) across the
+		//boundary one byte at a time, so that each one is split in every
+		//possible place
+		for(int shift = 0; shift <= 18; shift++) {
+			StringBuilder second = new StringBuilder("1262309566 ");
+			int padding = BLOCK_SIZE - 18 - (first.length() + 1) - second.length() + shift;
+			for(int i = 0; i < padding; i++) {
+				second.append('x');
+			}
+			second.append(MULTI_BYTE).append(MULTI_BYTE).append(" end");
+			
+			String third = "1262310716 \u00fcber " + MULTI_BYTE;
+			
+			checkLines(new String[] {first, second.toString(), third}, "\n", true);
+		}
+	}
+	
+	public static void testLineLongerThanTwoBlocks() throws IOException {
+		StringBuilder longLine = new StringBuilder("1262309566 ");
+		while(longLine.length() < BLOCK_SIZE * 3) {
+			longLine.append(MULTI_BYTE).append(' ');
+		}
+		
+		checkLines(new String[] {"1262305430 a", longLine.toString(), "1262310716 b"},
+					"\n", false);
+	}
+	
+	public static void testCarriageReturns() throws IOException {
+		checkLines(new String[] {"1262305430 a", "1262309566 " + MULTI_BYTE, "1262310716 b"},
+					"\r\n", true);
+	}
+	
+	public static void testEndPosition() throws IOException {
+		File file = write(new String[] {"one", "two", "three"}, "\n", true);
+		BackwardsAccessFile in = new BackwardsAccessFile(file, "r");
+		try {
+			//end just after "two\n"
+			List<BackwardsAccessFile.Line> lines = readAll(in.readLinesBackwards(8));
+			assertEquals(2, lines.size());
+			assertEquals("two", lines.get(0).text);
+			assertEquals(4, lines.get(0).offset);
+			assertEquals("one", lines.get(1).text);
+			assertEquals(0, lines.get(1).offset);
+			
+			assertEquals(0, readAll(in.readLinesBackwards(0)).size());
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Writes the given lines, then checks that reading them backwards
+	 * gives the same text and offsets.
+	 */
+	private static void checkLines(String[] lines, String lineBreak, boolean finalLineBreak)
+				throws IOException {
+		File file = write(lines, lineBreak, finalLineBreak);
+		
+		BackwardsAccessFile in = new BackwardsAccessFile(file, "r");
+		try {
+			List<BackwardsAccessFile.Line> read = readAll(in.readLinesBackwards());
+			assertEquals(lines.length, read.size());
+			
+			long offset = 0;
+			for(int i = 0; i < lines.length; i++) {
+				BackwardsAccessFile.Line line = read.get(lines.length - 1 - i);
+				assertEquals(lines[i], line.text);
+				assertEquals(offset, line.offset);
+				offset += (lines[i] + lineBreak).getBytes("UTF-8").length;
+			}
+		} finally {
+			in.close();
+			file.delete();
+		}
+	}
+	
+	private static File write(String[] lines, String lineBreak, boolean finalLineBreak)
+				throws IOException {
+		File file = File.createTempFile("tagtime", ".log");
+		file.deleteOnExit();
+		
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < lines.length; i++) {
+			text.append(lines[i]);
+			if(finalLineBreak || i < lines.length - 1) {
+				text.append(lineBreak);
+			}
+		}
+		
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.toString().getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		
+		return file;
+	}
+	
+	private static List<BackwardsAccessFile.Line> readAll(Iterable<BackwardsAccessFile.Line> lines) {
+		List<BackwardsAccessFile.Line> list = new ArrayList<BackwardsAccessFile.Line>();
+		for(BackwardsAccessFile.Line line : lines) {
+			list.add(line);
+		}
+		return list;
+	}
+}